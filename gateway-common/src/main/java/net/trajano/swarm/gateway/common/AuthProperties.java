@@ -9,6 +9,43 @@ import org.springframework.context.annotation.Configuration;
 @Data
 public class AuthProperties {
 
+  /**
+   * Failures from a remote address within {@link #abuseShieldWindowInMillis} after which its
+   * protected resource and refresh requests are shed without verifying the token.
+   */
+  private int abuseShieldAddressFailureThreshold = 50;
+
+  /**
+   * Failures from a client within {@link #abuseShieldWindowInMillis} after which its refresh
+   * requests are shed. This is higher than the address threshold as a client ID is shared by all
+   * the users of an application.
+   */
+  private int abuseShieldClientFailureThreshold = 1000;
+
+  /** If true, sources that keep presenting bad tokens are shed before the token is verified. */
+  private boolean abuseShieldEnabled = false;
+
+  /**
+   * If true, the abuse shield failures are also counted in Redis so sources spreading their
+   * requests across gateways are shed.
+   */
+  private boolean abuseShieldRedisEnabled = false;
+
+  /** Number of slots per row the abuse shield counts failures in, rounded down to a power of 2. */
+  private int abuseShieldSlots = 65536;
+
+  /**
+   * Number of proxies in front of the gateway that append the address they received the request
+   * from to {@code X-Forwarded-For}. The abuse shield counts the address seen by the outermost of
+   * them. If zero, the address of the connection is used. Raise this when running behind an
+   * ingress, without one the client controls the header and could evade the shield or have
+   * another address shed.
+   */
+  private int abuseShieldTrustedProxies = 0;
+
+  /** Window the abuse shield counts failures over. */
+  private long abuseShieldWindowInMillis = 60 * 1000L;
+
   /** Access token time expires in seconds. This is kept low to make it easier to test. */
   private int accessTokenExpiresInSeconds = 120;
 
@@ -20,6 +57,22 @@ public class AuthProperties {
   /** If true, the JWT is compressed when placed in the access token. */
   private boolean compressClaims = true;
 
+  /** Deflate level from 0 to 9 used when {@link #compressClaims} is set. */
+  private int compressClaimsLevel = 9;
+
+  /**
+   * If true, the access token is compressed with a preset dictionary of the JWS header and claim
+   * names. Tokens compressed with or without it can be read, but gateways that predate the setting
+   * cannot read tokens compressed with it.
+   */
+  private boolean compressClaimsWithDictionary = false;
+
+  /**
+   * If true, user sessions are saved as a single compact binary value rather than a hash of
+   * strings. Sessions saved in either form can be read.
+   */
+  private boolean compactUserSessions = false;
+
   private DataSource dataSource = DataSource.REDIS;
 
   private String issuer = "http://localhost";
@@ -29,6 +82,12 @@ public class AuthProperties {
 
   private int maximumNumberOfSigningKeys = 10;
 
+  /**
+   * Maximum number of penalty and minimum operation time delays pending. Requests that would add
+   * another have their connection dropped.
+   */
+  private long maximumPendingPenalties = 100000;
+
   private int maximumNumberOfSigningKeysToPresent = 3;
 
   /**
@@ -45,17 +104,39 @@ public class AuthProperties {
 
   private int penaltyDelayInMillis = 1000;
 
+  /** Precision of the penalty and minimum operation time delays. */
+  private long penaltyTimerTickInMillis = 10;
+
+  /**
+   * If true, protected resource requests are moved to a dedicated bounded elastic scheduler. This
+   * is not needed as nothing in the filter blocks and only adds a thread hop.
+   */
+  private boolean protectedResourceSchedulerEnabled = false;
+
   private String realm = "JWT";
 
   /** Prefix for keys. */
   private String redisPrefix = "gateway";
 
+  /**
+   * If true, concurrent refreshes of the same user session are coordinated across gateways with a
+   * Redis lock so only one of them calls the identity service. Refreshes on the same gateway are
+   * always coalesced. The lock expires after {@link #refreshProcessingTimeoutInMillis}.
+   */
+  private boolean refreshLockEnabled = false;
+
   /** Number of milliseconds a refresh should be allowed take. */
   private int refreshProcessingTimeoutInMillis = 3000;
 
   /** Refresh token time expires in seconds. This is kept low to make it easier to test. */
   private int refreshTokenExpiresInSeconds = 1200;
 
+  /**
+   * Maximum time a verified access token is trusted without checking the user session again. This
+   * bounds how long a revocation can be missed if the revocation notification is lost.
+   */
+  private long revocationCheckIntervalInMillis = 30 * 1000L;
+
   /** Number of milliseconds a revoke should be allowed take. */
   private int revokeProcessingTimeoutInMillis = 3000;
 
@@ -74,6 +155,22 @@ public class AuthProperties {
 
   private int signingKeysPerBlock = 3;
 
+  /**
+   * JCA provider used to sign and verify the tokens, for example {@code SunEC} or {@code BC} for
+   * BouncyCastle. The default provider is used if not set.
+   */
+  private String signatureProvider;
+
+  /** Maximum number of verified access tokens kept in memory. Zero disables the cache. */
+  private long verifiedTokenCacheMaximumSize = 10000;
+
+  /**
+   * Maximum number of user sessions kept in memory. Entries are invalidated by Redis client side
+   * caching when the session changes and are kept no longer than {@link
+   * #revocationCheckIntervalInMillis}. Zero disables the cache.
+   */
+  private long userSessionCacheMaximumSize = 10000;
+
   /**
    * If disabled, {@link java.util.concurrent.ThreadLocalRandom} would be used to generate the UUIDs
    * which is more performant, but may cause delays when there isn't enough entropy generated.
@@ -12,6 +12,12 @@ public class RedisKeyBlocks {
 
   public static final String ACCESS_TOKEN_JTI_DATA_KEY_FORMAT = "%s:::access-token-jti:::%s";
 
+  private static final String ABUSE_WINDOW_KEY_FORMAT = "%s:abuse:%s:%d";
+
+  private static final String REFRESH_LOCK_KEY_FORMAT = "%s:refresh-lock:%s";
+
+  private static final String REVOKED_USER_SESSIONS_CHANNEL_FORMAT = "%s:revoked-user-sessions";
+
   private static final String SIGNING_KEYS_FORMAT = "%s:signing-keys:%d";
 
   private static final String USER_SESSION_KEY_FORMAT = "%s:user-sessions:%s";
@@ -23,6 +29,18 @@ public class RedisKeyBlocks {
     return (current / blockSize + offset) * blockSize;
   }
 
+  /**
+   * Failures of a source counted by the abuse shield in a window.
+   *
+   * @param source source key
+   * @param window window number
+   * @return key
+   */
+  public String abuseWindow(String source, long window) {
+
+    return ABUSE_WINDOW_KEY_FORMAT.formatted(authProperties.getRedisPrefix(), source, window);
+  }
+
   public String accessTokenJtiKey(String jwtId) {
 
     return ACCESS_TOKEN_JTI_DATA_KEY_FORMAT.formatted(authProperties.getRedisPrefix(), jwtId);
@@ -46,6 +64,27 @@ public class RedisKeyBlocks {
     return USER_SESSION_KEY_FORMAT.formatted(authProperties.getRedisPrefix(), "*");
   }
 
+  /**
+   * Lock held by the gateway refreshing the user session.
+   *
+   * @param jwtId JWT ID of the user session
+   * @return key
+   */
+  public String refreshLock(String jwtId) {
+
+    return REFRESH_LOCK_KEY_FORMAT.formatted(authProperties.getRedisPrefix(), jwtId);
+  }
+
+  /**
+   * Pub/sub channel the JWT IDs of deleted user sessions are published to.
+   *
+   * @return channel name
+   */
+  public String revokedUserSessionsChannel() {
+
+    return REVOKED_USER_SESSIONS_CHANNEL_FORMAT.formatted(authProperties.getRedisPrefix());
+  }
+
   public String forUserSession(UUID jwtId) {
 
     return USER_SESSION_KEY_FORMAT.formatted(authProperties.getRedisPrefix(), jwtId);
@@ -53,9 +92,17 @@ public class RedisKeyBlocks {
 
   public UUID forUserSessionRedisKey(String redisKey) {
 
-    return UUID.fromString(
-        redisKey.substring(
-            USER_SESSION_KEY_FORMAT.formatted(authProperties.getRedisPrefix(), "").length()));
+    return UUID.fromString(redisKey.substring(userSessionKeyPrefix().length()));
+  }
+
+  /**
+   * Prefix shared by all user session keys.
+   *
+   * @return key prefix
+   */
+  public String userSessionKeyPrefix() {
+
+    return USER_SESSION_KEY_FORMAT.formatted(authProperties.getRedisPrefix(), "");
   }
 
   public String nextSigningRedisKey() {
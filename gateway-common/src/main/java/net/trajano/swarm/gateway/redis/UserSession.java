@@ -2,12 +2,14 @@ package net.trajano.swarm.gateway.redis;
 
 import java.time.Instant;
 import java.util.UUID;
+import java.util.function.Supplier;
 import lombok.Builder;
 import lombok.Data;
 import lombok.With;
 import org.jose4j.jwk.JsonWebKey;
 import org.jose4j.jwt.JwtClaims;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Transient;
 import org.springframework.data.redis.core.RedisHash;
 import org.springframework.data.redis.core.TimeToLive;
 
@@ -42,6 +44,9 @@ public class UserSession {
 
   private JwtClaims secretClaims;
 
+  /** Decodes {@link #secretClaims} on first access if they were not set. */
+  @Transient private Supplier<JwtClaims> secretClaimsDecoder;
+
   /**
    * Client ID associated with the session. This will be used to verify that the client can access
    * via the {@code aud} claim.
@@ -51,4 +56,23 @@ public class UserSession {
   @TimeToLive private Long ttl;
 
   private JsonWebKey verificationJwk;
+
+  /** Decodes {@link #verificationJwk} on first access if it was not set. */
+  @Transient private Supplier<JsonWebKey> verificationJwkDecoder;
+
+  public JwtClaims getSecretClaims() {
+
+    if (secretClaims == null && secretClaimsDecoder != null) {
+      secretClaims = secretClaimsDecoder.get();
+    }
+    return secretClaims;
+  }
+
+  public JsonWebKey getVerificationJwk() {
+
+    if (verificationJwk == null && verificationJwkDecoder != null) {
+      verificationJwk = verificationJwkDecoder.get();
+    }
+    return verificationJwk;
+  }
 }
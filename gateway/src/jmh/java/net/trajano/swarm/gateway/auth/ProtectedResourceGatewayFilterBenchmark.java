@@ -0,0 +1,204 @@
+package net.trajano.swarm.gateway.auth;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import net.trajano.swarm.gateway.auth.claims.ClaimsService;
+import net.trajano.swarm.gateway.common.AuthProperties;
+import net.trajano.swarm.gateway.redis.RedisKeyBlocks;
+import net.trajano.swarm.gateway.web.EncodedGatewayResponses;
+import net.trajano.swarm.gateway.web.GatewayResponse;
+import org.jose4j.jwt.JwtClaims;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.ReactiveDiscoveryClient;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Samples the latency of the protected resource filter in isolation with the claims already
+ * verified. The lookup variant reads the {@code protected} metadata from the discovery client on
+ * every request which is what is done when the route does not provide it, the scheduler variant
+ * adds the thread hop to the protected resource scheduler.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(4)
+public class ProtectedResourceGatewayFilterBenchmark {
+
+  private static final GatewayFilterChain CHAIN = exchange -> Mono.empty();
+
+  private static final String SERVICE_ID = "whoami";
+
+  @Param({"false", "true"})
+  private boolean lookup;
+
+  @Param({"false", "true"})
+  private boolean scheduler;
+
+  private GatewayFilter filter;
+
+  @Benchmark
+  public Void missingToken() {
+
+    return filter
+        .filter(MockServerWebExchange.from(MockServerHttpRequest.get("/whoami")), CHAIN)
+        .block();
+  }
+
+  @Benchmark
+  public Void validToken() {
+
+    return filter
+        .filter(
+            MockServerWebExchange.from(
+                MockServerHttpRequest.get("/whoami")
+                    .header(HttpHeaders.AUTHORIZATION, "Bearer valid")),
+            CHAIN)
+        .block();
+  }
+
+  @Setup(Level.Trial)
+  public void setup() {
+
+    final var claims = new JwtClaims();
+    claims.setSubject("benchmark");
+
+    final var discoveryClient =
+        new ReactiveDiscoveryClient() {
+
+          private final ServiceInstance instance =
+              new DefaultServiceInstance(
+                  SERVICE_ID, SERVICE_ID, "localhost", 8080, false, Map.of("protected", "true"));
+
+          @Override
+          public String description() {
+
+            return "benchmark";
+          }
+
+          @Override
+          public Flux<ServiceInstance> getInstances(String serviceId) {
+
+            return Flux.just(instance);
+          }
+
+          @Override
+          public Flux<String> getServices() {
+
+            return Flux.just(SERVICE_ID);
+          }
+        };
+
+    final var claimsService =
+        new ClaimsService() {
+
+          @Override
+          public Mono<JwtClaims> getClaims(String bearerToken) {
+
+            return Mono.just(claims);
+          }
+
+          @Override
+          public JwtClaims getVerifiedClaims(String bearerToken) {
+
+            return null;
+          }
+
+          @Override
+          public Mono<AuthServiceResponse<GatewayResponse>> refresh(
+              String refreshToken, HttpHeaders headers, String clientId) {
+
+            return Mono.empty();
+          }
+
+          @Override
+          public Mono<AuthServiceResponse<GatewayResponse>> revoke(
+              String refreshToken, HttpHeaders headers, String clientId) {
+
+            return Mono.empty();
+          }
+
+          @Override
+          public Mono<GatewayResponse> storeAndSignIdentityServiceResponse(
+              IdentityServiceResponse identityServiceResponse, String jwtId, String clientId) {
+
+            return Mono.empty();
+          }
+        };
+
+    final var identityService =
+        new IdentityService<Object, Object>() {
+
+          @Override
+          public Mono<IdentityServiceResponse> authenticate(
+              Object authenticationRequest, HttpHeaders headers) {
+
+            return Mono.empty();
+          }
+
+          @Override
+          public Mono<IdentityServiceResponse> refresh(
+              JwtClaims secretClaims, Instant issuedOn, HttpHeaders headers) {
+
+            return Mono.empty();
+          }
+
+          @Override
+          public Mono<Object> getProfile(String accessToken) {
+
+            return Mono.empty();
+          }
+        };
+
+    final var authProperties = new AuthProperties();
+    authProperties.setProtectedResourceSchedulerEnabled(scheduler);
+
+    final var config = new ProtectedResourceGatewayFilterFactory.Config();
+    config.setServiceId(SERVICE_ID);
+    if (!lookup) {
+      config.setServiceProtected(true);
+    }
+
+    final var meterRegistry = new SimpleMeterRegistry();
+    final var abuseShield =
+        new AbuseShield(
+            authProperties,
+            new RedisKeyBlocks(authProperties),
+            new StaticListableBeanFactory().getBeanProvider(ReactiveStringRedisTemplate.class),
+            meterRegistry);
+
+    filter =
+        new ProtectedResourceGatewayFilterFactory(
+                discoveryClient,
+                authProperties,
+                claimsService,
+                identityService,
+                meterRegistry.counter("succeeded"),
+                new EncodedGatewayResponses(new ObjectMapper()),
+                abuseShield,
+                Schedulers.parallel())
+            .apply(config);
+  }
+}
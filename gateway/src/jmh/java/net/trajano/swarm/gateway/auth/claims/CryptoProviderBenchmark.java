@@ -0,0 +1,172 @@
+package net.trajano.swarm.gateway.auth.claims;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.interfaces.ECPrivateKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.crypto.params.ECDomainParameters;
+import org.bouncycastle.crypto.params.ECPrivateKeyParameters;
+import org.bouncycastle.crypto.params.ECPublicKeyParameters;
+import org.bouncycastle.crypto.signers.ECDSASigner;
+import org.bouncycastle.jce.ECNamedCurveTable;
+import org.bouncycastle.util.BigIntegers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * ES256 sign and verify operations per second for each signature provider. Run with {@code -prof
+ * gc}, which the build enables, for the allocation per operation. {@code BC-precomputed} uses the
+ * BouncyCastle lightweight API directly with the public key point kept between calls, so the
+ * window tables precomputed for the key point and the generator are reused. That path cannot be
+ * selected through {@link CryptoProvider} as jose4j only accepts JCA providers.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class CryptoProviderBenchmark {
+
+  private static final int COORDINATE_LENGTH = 32;
+
+  private Es256 es256;
+
+  private byte[] signature;
+
+  private byte[] signingInput;
+
+  /** Signature provider, {@code default} is the first provider supporting the algorithm. */
+  @Param({"default", "SunEC", "BC", "BC-precomputed"})
+  private String provider;
+
+  @Benchmark
+  public byte[] sign() throws Exception {
+
+    return es256.sign(signingInput);
+  }
+
+  @Benchmark
+  public boolean verify() throws Exception {
+
+    return es256.verify(signingInput, signature);
+  }
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+
+    final var keyPairGenerator = KeyPairGenerator.getInstance(JwtFunctions.ALGORITHM_EC);
+    keyPairGenerator.initialize(new ECGenParameterSpec("secp256r1"));
+    final var keyPair = keyPairGenerator.generateKeyPair();
+    signingInput =
+        "eyJraWQiOiJiZW5jaG1hcmsiLCJhbGciOiJFUzI1NiJ9.eyJzdWIiOiJiZW5jaG1hcmsifQ"
+            .getBytes(StandardCharsets.US_ASCII);
+
+    if ("BC-precomputed".equals(provider)) {
+      es256 =
+          new PrecomputedEs256(
+              (ECPrivateKey) keyPair.getPrivate(), (ECPublicKey) keyPair.getPublic());
+    } else {
+      final var cryptoProvider = new CryptoProvider("default".equals(provider) ? null : provider);
+      final var keyFactory = cryptoProvider.keyFactory(JwtFunctions.ALGORITHM_EC);
+      es256 =
+          new JcaEs256(
+              cryptoProvider,
+              keyFactory.generatePrivate(
+                  new PKCS8EncodedKeySpec(keyPair.getPrivate().getEncoded())),
+              keyFactory.generatePublic(new X509EncodedKeySpec(keyPair.getPublic().getEncoded())));
+    }
+    signature = es256.sign(signingInput);
+  }
+
+  private interface Es256 {
+
+    byte[] sign(byte[] input) throws GeneralSecurityException;
+
+    boolean verify(byte[] input, byte[] signature) throws GeneralSecurityException;
+  }
+
+  private record JcaEs256(CryptoProvider cryptoProvider, PrivateKey privateKey, PublicKey publicKey)
+      implements Es256 {
+
+    @Override
+    public byte[] sign(byte[] input) throws GeneralSecurityException {
+
+      final var jca = cryptoProvider.es256Signature();
+      jca.initSign(privateKey);
+      jca.update(input);
+      return jca.sign();
+    }
+
+    @Override
+    public boolean verify(byte[] input, byte[] signature) throws GeneralSecurityException {
+
+      final var jca = cryptoProvider.es256Signature();
+      jca.initVerify(publicKey);
+      jca.update(input);
+      return jca.verify(signature);
+    }
+  }
+
+  private static final class PrecomputedEs256 implements Es256 {
+
+    private final ECDSASigner signer = new ECDSASigner();
+
+    private final ECDSASigner verifier = new ECDSASigner();
+
+    PrecomputedEs256(ECPrivateKey privateKey, ECPublicKey publicKey) {
+
+      final var spec = ECNamedCurveTable.getParameterSpec("P-256");
+      final var domain = new ECDomainParameters(spec.getCurve(), spec.getG(), spec.getN());
+      signer.init(true, new ECPrivateKeyParameters(privateKey.getS(), domain));
+      verifier.init(
+          false,
+          new ECPublicKeyParameters(
+              spec.getCurve()
+                  .createPoint(publicKey.getW().getAffineX(), publicKey.getW().getAffineY()),
+              domain));
+    }
+
+    private static byte[] digest(byte[] input) {
+
+      final var digest = new SHA256Digest();
+      final var hash = new byte[digest.getDigestSize()];
+      digest.update(input, 0, input.length);
+      digest.doFinal(hash, 0);
+      return hash;
+    }
+
+    @Override
+    public byte[] sign(byte[] input) {
+
+      final var rs = signer.generateSignature(digest(input));
+      final var concatenated = new byte[COORDINATE_LENGTH * 2];
+      BigIntegers.asUnsignedByteArray(rs[0], concatenated, 0, COORDINATE_LENGTH);
+      BigIntegers.asUnsignedByteArray(rs[1], concatenated, COORDINATE_LENGTH, COORDINATE_LENGTH);
+      return concatenated;
+    }
+
+    @Override
+    public boolean verify(byte[] input, byte[] signature) {
+
+      return verifier.verifySignature(
+          digest(input),
+          new BigInteger(1, Arrays.copyOfRange(signature, 0, COORDINATE_LENGTH)),
+          new BigInteger(1, Arrays.copyOfRange(signature, COORDINATE_LENGTH, signature.length)));
+    }
+  }
+}
@@ -0,0 +1,106 @@
+package net.trajano.swarm.gateway.auth.claims;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.jose4j.jwa.AlgorithmConstraints;
+import org.jose4j.jwk.EcJwkGenerator;
+import org.jose4j.jwk.EllipticCurveJsonWebKey;
+import org.jose4j.jwk.JsonWebKey;
+import org.jose4j.jwk.JsonWebKeySet;
+import org.jose4j.jws.AlgorithmIdentifiers;
+import org.jose4j.jws.JsonWebSignature;
+import org.jose4j.jwt.JwtClaims;
+import org.jose4j.jwt.consumer.JwtConsumer;
+import org.jose4j.jwt.consumer.JwtConsumerBuilder;
+import org.jose4j.keys.EllipticCurves;
+import org.jose4j.keys.resolvers.JwksVerificationKeyResolver;
+import org.jose4j.keys.resolvers.VerificationKeyResolver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares building a {@link JwtConsumer} with a {@link JwksVerificationKeyResolver} for every
+ * access token against reusing one built for the key set with a {@link
+ * KeyIdVerificationKeyResolver}. Both include the ES256 verification of the token.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JwtConsumerBenchmark {
+
+  private static final String ISSUER = "http://localhost";
+
+  private String accessToken;
+
+  private JsonWebKeySet jsonWebKeySet;
+
+  /** Number of verification keys in the set, two signing blocks worth by default. */
+  @Param({"6", "20"})
+  private int keyCount;
+
+  private JwtConsumer reusedJwtConsumer;
+
+  private static JwtConsumer buildJwtConsumer(VerificationKeyResolver verificationKeyResolver) {
+
+    return new JwtConsumerBuilder()
+        .setVerificationKeyResolver(verificationKeyResolver)
+        .setRequireSubject()
+        .setRequireExpirationTime()
+        .setRequireJwtId()
+        .setExpectedAudience(true, ISSUER)
+        .setJwsAlgorithmConstraints(
+            AlgorithmConstraints.ConstraintType.PERMIT,
+            AlgorithmIdentifiers.ECDSA_USING_P256_CURVE_AND_SHA256)
+        .build();
+  }
+
+  @Benchmark
+  public JwtClaims buildPerRequest() throws Exception {
+
+    return buildJwtConsumer(new JwksVerificationKeyResolver(jsonWebKeySet.getJsonWebKeys()))
+        .processToClaims(accessToken);
+  }
+
+  @Benchmark
+  public JwtClaims reusedPerKeySet() throws Exception {
+
+    return reusedJwtConsumer.processToClaims(accessToken);
+  }
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+
+    jsonWebKeySet = new JsonWebKeySet();
+    EllipticCurveJsonWebKey signingJwk = null;
+    for (int i = 0; i < keyCount; ++i) {
+      final var jwk = EcJwkGenerator.generateJwk(EllipticCurves.P256);
+      jwk.setKeyId(UUID.randomUUID().toString());
+      jsonWebKeySet.addJsonWebKey(
+          JsonWebKey.Factory.newJwk(jwk.toParams(JsonWebKey.OutputControlLevel.PUBLIC_ONLY)));
+      signingJwk = jwk;
+    }
+
+    final var claims = new JwtClaims();
+    claims.setSubject("benchmark");
+    claims.setJwtId(UUID.randomUUID().toString());
+    claims.setAudience(ISSUER);
+    claims.setExpirationTimeMinutesInTheFuture(60);
+
+    final var jws = new JsonWebSignature();
+    jws.setPayload(claims.toJson());
+    jws.setKey(signingJwk.getPrivateKey());
+    jws.setKeyIdHeaderValue(signingJwk.getKeyId());
+    jws.setAlgorithmHeaderValue(AlgorithmIdentifiers.ECDSA_USING_P256_CURVE_AND_SHA256);
+    accessToken = jws.getCompactSerialization();
+
+    reusedJwtConsumer =
+        buildJwtConsumer(new KeyIdVerificationKeyResolver(jsonWebKeySet.getJsonWebKeys()));
+  }
+}
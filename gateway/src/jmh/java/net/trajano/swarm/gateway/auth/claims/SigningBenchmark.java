@@ -0,0 +1,110 @@
+package net.trajano.swarm.gateway.auth.claims;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.security.KeyFactory;
+import java.util.Base64;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import net.trajano.swarm.gateway.jwks.SigningKeyRegistry;
+import org.jose4j.jwk.EcJwkGenerator;
+import org.jose4j.jwk.JsonWebKey;
+import org.jose4j.jwk.JsonWebKeySet;
+import org.jose4j.jwk.OctetSequenceJsonWebKey;
+import org.jose4j.jws.AlgorithmIdentifiers;
+import org.jose4j.jws.JsonWebSignature;
+import org.jose4j.jwt.JwtClaims;
+import org.jose4j.keys.EllipticCurves;
+import org.jose4j.keys.HmacKey;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Tokens signed per second on a single core. The per token baseline decodes the PKCS8 private
+ * key, signs with {@link JsonWebSignature} and re-parses the header to strip it from the refresh
+ * token, which is what was done before {@link SigningKeyRegistry}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(1)
+public class SigningBenchmark {
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+
+  private JsonWebKeySet jwks;
+
+  private KeyFactory keyFactory;
+
+  private String payload;
+
+  private SigningKeyRegistry signingKeyRegistry;
+
+  private String signPerToken() throws Exception {
+
+    final var jws = new JsonWebSignature();
+    jws.setKeyIdHeaderValue(JwtFunctions.getKid(jwks));
+    jws.setPayload(payload);
+    jws.setAlgorithmHeaderValue(AlgorithmIdentifiers.ECDSA_USING_P256_CURVE_AND_SHA256);
+    jws.setKey(JwtFunctions.getSigningKeyFromJwks(jwks, keyFactory));
+    jws.sign();
+    return jws.getCompactSerialization();
+  }
+
+  @Benchmark
+  public String accessTokenPerToken() throws Exception {
+
+    return signPerToken();
+  }
+
+  @Benchmark
+  public String accessTokenPreParsed() {
+
+    return signingKeyRegistry.signingKeyFor(jwks).sign(payload);
+  }
+
+  @Benchmark
+  public String refreshTokenPerToken() throws Exception {
+
+    final var signed = signPerToken();
+    final var dot = signed.indexOf('.');
+    final JsonNode header =
+        objectMapper.readTree(Base64.getUrlDecoder().decode(signed.substring(0, dot)));
+    return header.get("kid").asText() + signed.substring(dot);
+  }
+
+  @Benchmark
+  public String refreshTokenPreParsed() {
+
+    return signingKeyRegistry.signingKeyFor(jwks).refreshSign(payload);
+  }
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+
+    final var jwk = EcJwkGenerator.generateJwk(EllipticCurves.P256);
+    jwk.setKeyId(UUID.randomUUID().toString());
+    jwks =
+        new JsonWebKeySet(
+            JsonWebKey.Factory.newJwk(jwk.toParams(JsonWebKey.OutputControlLevel.PUBLIC_ONLY)),
+            new OctetSequenceJsonWebKey(new HmacKey(jwk.getPrivateKey().getEncoded())));
+
+    final var claims = new JwtClaims();
+    claims.setSubject("benchmark");
+    claims.setJwtId(UUID.randomUUID().toString());
+    claims.setAudience("benchmark", "http://localhost");
+    claims.setExpirationTimeMinutesInTheFuture(60);
+    payload = claims.toJson();
+
+    keyFactory = KeyFactory.getInstance(JwtFunctions.ALGORITHM_EC);
+
+    signingKeyRegistry = new SigningKeyRegistry(new CryptoProvider((String) null));
+  }
+}
@@ -0,0 +1,128 @@
+package net.trajano.swarm.gateway.auth.claims;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterOutputStream;
+import org.apache.commons.io.input.ReaderInputStream;
+import org.apache.commons.io.output.WriterOutputStream;
+import org.jose4j.jwt.JwtClaims;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compression of an access token as done when it is issued and decompression as done on every
+ * protected request. The streams baseline copies one byte at a time through the reader and writer
+ * adapters with a new {@link Deflater} per call, which is what was done before the deflaters were
+ * kept per thread.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ZLibStringCompressionBenchmark {
+
+  @Param({"1", "6", "9"})
+  private int level;
+
+  private String jws;
+
+  private byte[] compressed;
+
+  private byte[] compressedWithDictionary;
+
+  @Benchmark
+  public byte[] compressStreams() throws Exception {
+
+    try (var in = new ReaderInputStream(new StringReader(jws), StandardCharsets.UTF_8);
+        var target = new ByteArrayOutputStream()) {
+      try (var out = new DeflaterOutputStream(target, new Deflater(level));
+          var bufferedIn = new BufferedInputStream(in)) {
+        int c = bufferedIn.read();
+        while (c != -1) {
+          out.write(c);
+          c = bufferedIn.read();
+        }
+      }
+      return target.toByteArray();
+    }
+  }
+
+  @Benchmark
+  public byte[] compressPooled() {
+
+    return ZLibStringCompression.compressToBytes(jws, level, false);
+  }
+
+  @Benchmark
+  public byte[] compressPooledWithDictionary() {
+
+    return ZLibStringCompression.compressToBytes(jws, level, true);
+  }
+
+  @Benchmark
+  public String decompressStreams() throws Exception {
+
+    try (var sw = new StringWriter()) {
+      try (var out = new InflaterOutputStream(new WriterOutputStream(sw, StandardCharsets.UTF_8));
+          var in = new BufferedInputStream(new ByteArrayInputStream(compressed))) {
+        int c = in.read();
+        while (c != -1) {
+          out.write(c);
+          c = in.read();
+        }
+      }
+      return sw.toString();
+    }
+  }
+
+  @Benchmark
+  public String decompressPooled() {
+
+    return ZLibStringCompression.decompressUtf8(compressed, 4096);
+  }
+
+  @Benchmark
+  public String decompressPooledWithDictionary() {
+
+    return ZLibStringCompression.decompressUtf8(compressedWithDictionary, 4096);
+  }
+
+  @Setup(Level.Trial)
+  public void setup() {
+
+    final var claims = new JwtClaims();
+    claims.setSubject("benchmark");
+    claims.setIssuer("http://localhost");
+    claims.setJwtId(UUID.randomUUID().toString());
+    claims.setAudience("benchmark", "http://localhost");
+    claims.setExpirationTimeMinutesInTheFuture(60);
+    claims.setClaim("roles", new String[] {"user", "admin"});
+    final var encoder = Base64.getUrlEncoder().withoutPadding();
+    jws =
+        encoder.encodeToString(
+                ("{\"kid\":\"" + UUID.randomUUID() + "\",\"alg\":\"ES256\"}")
+                    .getBytes(StandardCharsets.UTF_8))
+            + "."
+            + encoder.encodeToString(claims.toJson().getBytes(StandardCharsets.UTF_8))
+            + "."
+            + encoder.encodeToString(new byte[64]);
+
+    compressed = ZLibStringCompression.compressToBytes(jws, level, false);
+    compressedWithDictionary = ZLibStringCompression.compressToBytes(jws, level, true);
+  }
+}
@@ -0,0 +1,106 @@
+package net.trajano.swarm.gateway.datasource.redis;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import net.trajano.swarm.gateway.common.AuthProperties;
+import net.trajano.swarm.gateway.redis.RedisKeyBlocks;
+import org.jose4j.jwa.AlgorithmConstraints;
+import org.jose4j.jwk.EcJwkGenerator;
+import org.jose4j.jwk.JsonWebKey;
+import org.jose4j.jws.AlgorithmIdentifiers;
+import org.jose4j.jws.JsonWebSignature;
+import org.jose4j.jwt.JwtClaims;
+import org.jose4j.jwt.consumer.JwtConsumer;
+import org.jose4j.jwt.consumer.JwtConsumerBuilder;
+import org.jose4j.keys.EllipticCurves;
+import org.jose4j.keys.resolvers.JwksVerificationKeyResolver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Samples the latency of obtaining the claims of an access token with and without the {@link
+ * VerifiedTokenCache}, the p99 is in the sample time percentiles. The uncached path is the ES256
+ * signature verification done by {@link RedisClaimsService}, the user session lookup it also does
+ * adds a Redis round trip on top of it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(4)
+public class VerifiedTokenCacheBenchmark {
+
+  private static final String ISSUER = "http://localhost";
+
+  private String accessToken;
+
+  private JwtConsumer jwtConsumer;
+
+  private VerifiedTokenCache verifiedTokenCache;
+
+  @Benchmark
+  public JwtClaims cached() {
+
+    return verifiedTokenCache.getIfPresent(accessToken);
+  }
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+
+    final var jwk = EcJwkGenerator.generateJwk(EllipticCurves.P256);
+    jwk.setKeyId(UUID.randomUUID().toString());
+
+    final var claims = new JwtClaims();
+    claims.setSubject("benchmark");
+    claims.setJwtId(UUID.randomUUID().toString());
+    claims.setAudience(ISSUER);
+    claims.setExpirationTimeMinutesInTheFuture(60);
+
+    final var jws = new JsonWebSignature();
+    jws.setPayload(claims.toJson());
+    jws.setKey(jwk.getPrivateKey());
+    jws.setKeyIdHeaderValue(jwk.getKeyId());
+    jws.setAlgorithmHeaderValue(AlgorithmIdentifiers.ECDSA_USING_P256_CURVE_AND_SHA256);
+    accessToken = jws.getCompactSerialization();
+
+    jwtConsumer =
+        new JwtConsumerBuilder()
+            .setVerificationKeyResolver(
+                new JwksVerificationKeyResolver(
+                    List.of(
+                        JsonWebKey.Factory.newJwk(
+                            jwk.toParams(JsonWebKey.OutputControlLevel.PUBLIC_ONLY)))))
+            .setRequireSubject()
+            .setRequireExpirationTime()
+            .setRequireJwtId()
+            .setExpectedAudience(true, ISSUER)
+            .setJwsAlgorithmConstraints(
+                AlgorithmConstraints.ConstraintType.PERMIT,
+                AlgorithmIdentifiers.ECDSA_USING_P256_CURVE_AND_SHA256)
+            .build();
+
+    final var authProperties = new AuthProperties();
+    authProperties.setRevocationCheckIntervalInMillis(TimeUnit.HOURS.toMillis(1));
+    // the Redis template is only used to listen for revocations which is not started here
+    verifiedTokenCache =
+        new VerifiedTokenCache(
+            authProperties, null, new RedisKeyBlocks(authProperties), new SimpleMeterRegistry());
+    final var claims = jwtConsumer.processToClaims(accessToken);
+    verifiedTokenCache.putIfNotInvalidated(
+        accessToken, claims, verifiedTokenCache.invalidationCount(claims.getJwtId()));
+  }
+
+  @Benchmark
+  public JwtClaims verified() throws Exception {
+
+    return jwtConsumer.processToClaims(accessToken);
+  }
+}
@@ -0,0 +1,89 @@
+package net.trajano.swarm.gateway.discovery.ratelimiter;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.springframework.cloud.gateway.filter.ratelimit.RateLimiter;
+import org.springframework.cloud.gateway.filter.ratelimit.RedisRateLimiter;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import reactor.core.publisher.Flux;
+
+/**
+ * Samples the overhead of an allowed request with the Redis rate limiter alone and fronted by the
+ * {@link LeasingRateLimiter}. Redis is replaced by a template that always grants the tokens after
+ * the configured round trip latency, so the results show what the limiter itself adds.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(4)
+public class LeasingRateLimiterBenchmark {
+
+  private static final String ROUTE_ID = "benchmark";
+
+  @Param({"redis", "leasing"})
+  private String limiter;
+
+  private RateLimiter<RedisRateLimiter.Config> rateLimiter;
+
+  @Param({"0", "250"})
+  private long redisLatencyMicros;
+
+  @Benchmark
+  public RateLimiter.Response allowed() {
+
+    return rateLimiter.isAllowed(ROUTE_ID, "key").block();
+  }
+
+  @Setup(Level.Trial)
+  @SuppressWarnings("unchecked")
+  public void setup() {
+
+    final var latency = Duration.ofNanos(TimeUnit.MICROSECONDS.toNanos(redisLatencyMicros));
+    final var redisTemplate =
+        new ReactiveStringRedisTemplate(new LettuceConnectionFactory()) {
+
+          @Override
+          public <T> Flux<T> execute(RedisScript<T> script, List<String> keys, List<?> args) {
+
+            final var granted = Flux.just((T) List.of(1L, 1000L));
+            return latency.isZero() ? granted : granted.delaySubscription(latency);
+          }
+        };
+    final var script =
+        (RedisScript<List<Long>>) (RedisScript<?>) RedisScript.of("return {1, 1}", List.class);
+
+    final var redisRateLimiter = new RedisRateLimiter(redisTemplate, script, null);
+    redisRateLimiter
+        .getConfig()
+        .put(ROUTE_ID, new RedisRateLimiter.Config().setReplenishRate(1000).setBurstCapacity(1000));
+
+    final var rateLimiterProperties = new RateLimiterProperties();
+    rateLimiterProperties.setMaximumLeasedTokens(20);
+
+    if ("leasing".equals(limiter)) {
+      rateLimiter =
+          new LeasingRateLimiter(
+              redisRateLimiter,
+              redisTemplate,
+              script,
+              rateLimiterProperties,
+              new SimpleMeterRegistry());
+    } else {
+      rateLimiter = redisRateLimiter;
+    }
+  }
+}
@@ -0,0 +1,196 @@
+package net.trajano.swarm.gateway.grpc;
+
+import com.google.protobuf.DescriptorProtos;
+import com.google.protobuf.DescriptorProtos.FieldDescriptorProto;
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.DynamicMessage;
+import io.grpc.ManagedChannel;
+import io.grpc.MethodDescriptor;
+import io.grpc.Server;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.ServiceDescriptor;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.protobuf.ProtoFileDescriptorSupplier;
+import io.grpc.protobuf.services.ProtoReflectionService;
+import io.grpc.stub.ServerCalls;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-process echo service built from a dynamic descriptor so the benchmarks exercise the same
+ * {@link DynamicMessage} marshalling as the gateway. Responses are delayed to simulate backend
+ * latency without holding a server thread. Server reflection is enabled so the service can be
+ * resolved the same way the gateway does.
+ */
+public final class EchoBenchmarkServer implements AutoCloseable {
+
+  private final ManagedChannel channel;
+
+  private final Descriptors.MethodDescriptor echoMethod;
+
+  private final ScheduledExecutorService latencyExecutor;
+
+  private final Server server;
+
+  public EchoBenchmarkServer(long latencyInMicros) throws IOException {
+
+    final var fileDescriptor = buildFileDescriptor();
+    echoMethod = fileDescriptor.findServiceByName("Echo").findMethodByName("echo");
+    final var grpcMethodDescriptor = GrpcServerReflection.methodDescriptorFromProtobuf(echoMethod);
+    latencyExecutor = Executors.newScheduledThreadPool(2);
+
+    final var name = InProcessServerBuilder.generateName();
+    server =
+        InProcessServerBuilder.forName(name)
+            .directExecutor()
+            .addService(ProtoReflectionService.newInstance())
+            .addService(
+                ServerServiceDefinition.builder(
+                        ServiceDescriptor.newBuilder(echoMethod.getService().getFullName())
+                            .setSchemaDescriptor(
+                                (ProtoFileDescriptorSupplier) () -> fileDescriptor)
+                            .addMethod(grpcMethodDescriptor)
+                            .build())
+                    .addMethod(
+                        grpcMethodDescriptor,
+                        ServerCalls.asyncUnaryCall(
+                            (request, responseObserver) ->
+                                latencyExecutor.schedule(
+                                    () -> {
+                                      responseObserver.onNext(echoResponse(request));
+                                      responseObserver.onCompleted();
+                                    },
+                                    latencyInMicros,
+                                    TimeUnit.MICROSECONDS)))
+                    .build())
+            .build()
+            .start();
+    channel = InProcessChannelBuilder.forName(name).directExecutor().build();
+  }
+
+  private DynamicMessage echoResponse(DynamicMessage request) {
+
+    final var outputType = echoMethod.getOutputType();
+    final var builder = DynamicMessage.newBuilder(outputType);
+    request
+        .getAllFields()
+        .forEach(
+            (field, value) ->
+                builder.setField(outputType.findFieldByName(field.getName()), value));
+    return builder.build();
+  }
+
+  private static FieldDescriptorProto.Builder field(
+      String name, int number, FieldDescriptorProto.Type type) {
+
+    return FieldDescriptorProto.newBuilder()
+        .setName(name)
+        .setNumber(number)
+        .setType(type)
+        .setLabel(FieldDescriptorProto.Label.LABEL_OPTIONAL);
+  }
+
+  private static Descriptors.FileDescriptor buildFileDescriptor() {
+
+    final var messageField = field("message", 1, FieldDescriptorProto.Type.TYPE_STRING);
+    final var itemsField =
+        field("items", 2, FieldDescriptorProto.Type.TYPE_MESSAGE)
+            .setTypeName(".benchmark.Item")
+            .setLabel(FieldDescriptorProto.Label.LABEL_REPEATED);
+    final var proto =
+        DescriptorProtos.FileDescriptorProto.newBuilder()
+            .setName("benchmark.proto")
+            .setPackage("benchmark")
+            .setSyntax("proto3")
+            .addMessageType(
+                DescriptorProtos.DescriptorProto.newBuilder()
+                    .setName("Item")
+                    .addField(field("name", 1, FieldDescriptorProto.Type.TYPE_STRING))
+                    .addField(field("value", 2, FieldDescriptorProto.Type.TYPE_INT64))
+                    .addField(field("flag", 3, FieldDescriptorProto.Type.TYPE_BOOL))
+                    .addField(field("score", 4, FieldDescriptorProto.Type.TYPE_DOUBLE)))
+            .addMessageType(
+                DescriptorProtos.DescriptorProto.newBuilder()
+                    .setName("EchoRequest")
+                    .addField(messageField)
+                    .addField(itemsField))
+            .addMessageType(
+                DescriptorProtos.DescriptorProto.newBuilder()
+                    .setName("EchoResponse")
+                    .addField(messageField)
+                    .addField(itemsField))
+            .addService(
+                DescriptorProtos.ServiceDescriptorProto.newBuilder()
+                    .setName("Echo")
+                    .addMethod(
+                        DescriptorProtos.MethodDescriptorProto.newBuilder()
+                            .setName("echo")
+                            .setInputType(".benchmark.EchoRequest")
+                            .setOutputType(".benchmark.EchoResponse")))
+            .build();
+    try {
+      return Descriptors.FileDescriptor.buildFrom(proto, new Descriptors.FileDescriptor[0]);
+    } catch (Descriptors.DescriptorValidationException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  @Override
+  public void close() throws InterruptedException {
+
+    channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+    server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+    latencyExecutor.shutdownNow();
+  }
+
+  public ManagedChannel getChannel() {
+
+    return channel;
+  }
+
+  public Descriptors.MethodDescriptor getEchoMethod() {
+
+    return echoMethod;
+  }
+
+  public MethodDescriptor<DynamicMessage, DynamicMessage> getGrpcEchoMethod() {
+
+    return GrpcServerReflection.methodDescriptorFromProtobuf(echoMethod);
+  }
+
+  public DynamicMessage newRequest(String message) {
+
+    return newRequest(message, 0);
+  }
+
+  /**
+   * Builds a request with a number of items, each item is roughly 64 bytes when printed as JSON.
+   *
+   * @param message message
+   * @param itemCount number of items
+   * @return request
+   */
+  public DynamicMessage newRequest(String message, int itemCount) {
+
+    final var inputType = echoMethod.getInputType();
+    final var itemsField = inputType.findFieldByName("items");
+    final var itemType = itemsField.getMessageType();
+    final var builder =
+        DynamicMessage.newBuilder(inputType)
+            .setField(inputType.findFieldByName("message"), message);
+    for (int i = 0; i < itemCount; ++i) {
+      builder.addRepeatedField(
+          itemsField,
+          DynamicMessage.newBuilder(itemType)
+              .setField(itemType.findFieldByName("name"), "item-%05d".formatted(i))
+              .setField(itemType.findFieldByName("value"), i * 31L)
+              .setField(itemType.findFieldByName("flag"), i % 2 == 0)
+              .setField(itemType.findFieldByName("score"), i / 7.0)
+              .build());
+    }
+    return builder.build();
+  }
+}
@@ -0,0 +1,98 @@
+package net.trajano.swarm.gateway.grpc;
+
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.DynamicMessage;
+import com.google.protobuf.util.JsonFormat;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+
+/**
+ * Compares the {@link JsonToProtobufTranscoder} against the previous path that chained the request
+ * buffers with {@link SequenceInputStream} and parsed them with {@link JsonFormat}. The payload is
+ * split into 8KB buffers like a typical request body.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JsonTranscoderBenchmark {
+
+  private static final int CHUNK_SIZE = 8192;
+
+  private List<byte[]> chunks;
+
+  private Descriptors.Descriptor descriptor;
+
+  @Param({"1024", "102400", "5242880"})
+  private int payloadSize;
+
+  private EchoBenchmarkServer server;
+
+  private JsonToProtobufTranscoder transcoder;
+
+  private Flux<DataBuffer> body() {
+
+    return Flux.fromIterable(chunks).map(DefaultDataBufferFactory.sharedInstance::wrap);
+  }
+
+  @Benchmark
+  public DynamicMessage jsonFormat() throws IOException {
+
+    final var inputStream =
+        body().map(dataBuffer -> dataBuffer.asInputStream(true)).reduce(SequenceInputStream::new);
+    try (final var reader = new InputStreamReader(inputStream.block(), StandardCharsets.UTF_8)) {
+      final var builder = DynamicMessage.newBuilder(descriptor);
+      JsonFormat.parser().merge(reader, builder);
+      return builder.build();
+    }
+  }
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+
+    server = new EchoBenchmarkServer(0);
+    descriptor = server.getEchoMethod().getInputType();
+    final var json =
+        JsonFormat.printer()
+            .omittingInsignificantWhitespace()
+            .print(server.newRequest("hello", payloadSize / 64))
+            .getBytes(StandardCharsets.UTF_8);
+    chunks = new ArrayList<>();
+    for (int i = 0; i < json.length; i += CHUNK_SIZE) {
+      chunks.add(Arrays.copyOfRange(json, i, Math.min(json.length, i + CHUNK_SIZE)));
+    }
+    final var grpcProperties = new GrpcProperties();
+    grpcProperties.setMaxRequestSizeInBytes(Integer.MAX_VALUE);
+    transcoder = new JsonToProtobufTranscoder(grpcProperties);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+
+    server.close();
+  }
+
+  @Benchmark
+  public DynamicMessage transcoder() {
+
+    return transcoder.provideMessage(body(), descriptor).block();
+  }
+}
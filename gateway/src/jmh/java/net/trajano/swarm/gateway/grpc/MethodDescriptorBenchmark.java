@@ -0,0 +1,66 @@
+package net.trajano.swarm.gateway.grpc;
+
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.DynamicMessage;
+import io.grpc.MethodDescriptor;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Compares building the gRPC method descriptor on every request against looking it up from the
+ * {@link MethodDescriptorRegistry}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MethodDescriptorBenchmark {
+
+  private static final URI ECHO_URI = URI.create("grpc://localhost/Echo/echo");
+
+  private Descriptors.MethodDescriptor echoMethod;
+
+  private MethodDescriptorRegistry registry;
+
+  private EchoBenchmarkServer server;
+
+  @Benchmark
+  public MethodDescriptor<DynamicMessage, DynamicMessage> cachedLookup() {
+
+    return registry
+        .provideMethodDescriptors("echo", ECHO_URI, server.getChannel())
+        .block()
+        .grpcMethodDescriptor();
+  }
+
+  @Benchmark
+  public MethodDescriptor<DynamicMessage, DynamicMessage> perRequestConstruction() {
+
+    return GrpcServerReflection.methodDescriptorFromProtobuf(echoMethod);
+  }
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+
+    server = new EchoBenchmarkServer(0);
+    echoMethod = server.getEchoMethod();
+    registry = new MethodDescriptorRegistry(new GrpcProperties(), new SimpleMeterRegistry());
+    // warm the registry through reflection so only lookups are measured
+    cachedLookup();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+
+    server.close();
+  }
+}
@@ -0,0 +1,141 @@
+package net.trajano.swarm.gateway.grpc;
+
+import com.google.protobuf.DynamicMessage;
+import com.google.protobuf.util.JsonFormat;
+import io.netty.buffer.PooledByteBufAllocator;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.SynchronousSink;
+
+/**
+ * Measures the number of server sent events per second that can be encoded for a stream of 10k
+ * messages. The previous path printed each message with a new {@link JsonFormat#printer()} and
+ * built the event as a {@link String}. The {@link ServerSentEventWriter} is measured flushing each
+ * event and batching events within a 1ms window.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ServerSentEventBenchmark {
+
+  private static final int STREAM_LENGTH = 10_000;
+
+  private final NettyDataBufferFactory bufferFactory =
+      new NettyDataBufferFactory(PooledByteBufAllocator.DEFAULT);
+
+  private ServerSentEventWriter batchingWriter;
+
+  private DynamicMessage message;
+
+  private EchoBenchmarkServer server;
+
+  private ServerSentEventWriter writer;
+
+  private static ServerSentEventWriter newWriter(Duration flushWindow) {
+
+    final var grpcProperties = new GrpcProperties();
+    grpcProperties.setStreamFlushWindow(flushWindow);
+    return new ServerSentEventWriter(grpcProperties, new ProtobufToJsonWriter());
+  }
+
+  private static long release(Flux<Flux<DataBuffer>> flushGroups) {
+
+    return flushGroups
+        .concatMap(
+            group ->
+                group.map(
+                    dataBuffer -> {
+                      final long count = dataBuffer.readableByteCount();
+                      DataBufferUtils.release(dataBuffer);
+                      return count;
+                    }))
+        .reduce(0L, Long::sum)
+        .block();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(STREAM_LENGTH)
+  public long preEncoded() {
+
+    return release(encode(writer));
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(STREAM_LENGTH)
+  public long preEncodedBatched() {
+
+    return release(encode(batchingWriter));
+  }
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+
+    server = new EchoBenchmarkServer(0);
+    message = server.newRequest("hello", 2);
+    writer = newWriter(Duration.ZERO);
+    batchingWriter = newWriter(Duration.ofMillis(1));
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(STREAM_LENGTH)
+  public long stringBuilding() {
+
+    return release(
+        Flux.range(0, STREAM_LENGTH)
+            .handle(
+                (Integer i, SynchronousSink<DataBuffer> sink) -> {
+                  try {
+                    final var sse =
+                        ServerSentEvent.builder(JsonFormat.printer().print(message))
+                            .event("message")
+                            .build();
+                    final var sb = new StringBuilder();
+                    sb.append("event:").append(sse.event()).append('\n');
+                    sb.append("data:")
+                        .append(StringUtils.replace(sse.data(), "\n", "\ndata:"))
+                        .append("\n\n");
+                    sink.next(bufferFactory.wrap(sb.toString().getBytes(StandardCharsets.UTF_8)));
+                  } catch (Exception e) {
+                    sink.error(e);
+                  }
+                })
+            .map(Flux::just));
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+
+    server.close();
+  }
+
+  private Flux<Flux<DataBuffer>> encode(ServerSentEventWriter serverSentEventWriter) {
+
+    return serverSentEventWriter.provideFlushGroups(
+        Flux.range(0, STREAM_LENGTH)
+            .handle(
+                (Integer i, SynchronousSink<DataBuffer> sink) -> {
+                  try {
+                    sink.next(serverSentEventWriter.writeMessageEvent(message, bufferFactory));
+                  } catch (Exception e) {
+                    sink.error(e);
+                  }
+                }));
+  }
+}
@@ -0,0 +1,92 @@
+package net.trajano.swarm.gateway.grpc;
+
+import com.google.protobuf.DynamicMessage;
+import io.grpc.CallOptions;
+import io.grpc.MethodDescriptor;
+import io.grpc.stub.ClientCalls;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Compares the previous blocking unary call against {@link ReactiveClientCalls#unaryCall} when
+ * many calls are in flight on the same scheduler the gateway uses.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class UnaryCallBenchmark {
+
+  @Param({"16", "256"})
+  private int concurrency;
+
+  private Scheduler grpcScheduler;
+
+  private MethodDescriptor<DynamicMessage, DynamicMessage> grpcMethodDescriptor;
+
+  private DynamicMessage request;
+
+  private EchoBenchmarkServer server;
+
+  @Benchmark
+  public List<DynamicMessage> asyncUnaryCall() {
+
+    return Flux.range(0, concurrency)
+        .flatMap(
+            i ->
+                ReactiveClientCalls.unaryCall(
+                        server.getChannel(), grpcMethodDescriptor, CallOptions.DEFAULT, request)
+                    .subscribeOn(grpcScheduler),
+            concurrency)
+        .collectList()
+        .block();
+  }
+
+  @Benchmark
+  public List<DynamicMessage> blockingUnaryCall() {
+
+    return Flux.range(0, concurrency)
+        .flatMap(
+            i ->
+                Mono.fromCallable(
+                        () ->
+                            ClientCalls.blockingUnaryCall(
+                                server.getChannel(),
+                                grpcMethodDescriptor,
+                                CallOptions.DEFAULT,
+                                request))
+                    .subscribeOn(grpcScheduler),
+            concurrency)
+        .collectList()
+        .block();
+  }
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+
+    server = new EchoBenchmarkServer(1000);
+    grpcMethodDescriptor = server.getGrpcEchoMethod();
+    request = server.newRequest("hello");
+    grpcScheduler = Schedulers.newParallel("grpc");
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+
+    grpcScheduler.dispose();
+    server.close();
+  }
+}
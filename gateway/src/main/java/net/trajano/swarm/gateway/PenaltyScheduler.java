@@ -0,0 +1,246 @@
+package net.trajano.swarm.gateway;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import java.time.Duration;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.scheduler.Scheduler;
+
+/**
+ * Scheduler for the penalty and minimum operation time delays backed by a hashed timer wheel.
+ * Adding a delay takes constant time rather than an insert into the heap of a scheduled executor,
+ * which matters when a flood of failed attempts leaves many delays outstanding. The timer thread
+ * only tracks the delays, the tasks are run on the delegate when they expire.
+ *
+ * <p>Delays past the maximum number pending are rejected with {@link PenaltyRejectedException}
+ * rather than queued. It has to be a {@link RejectedExecutionException} for Reactor to signal it,
+ * so handlers of rejected executions check {@link #isRejection(Throwable)} to let it reach the
+ * error handler which drops the connection.
+ */
+public class PenaltyScheduler implements Scheduler {
+
+  private static final int TICKS_PER_WHEEL = 512;
+
+  private final Scheduler delegate;
+
+  private final Counter rejectedCounter;
+
+  private final HashedWheelTimer timer;
+
+  /**
+   * Constructs the scheduler, the delegate is disposed with it.
+   *
+   * @param tickDuration precision of the delays
+   * @param maximumPending maximum number of delays pending
+   * @param delegate runs the tasks
+   * @param meterRegistry meter registry
+   */
+  public PenaltyScheduler(
+      Duration tickDuration, long maximumPending, Scheduler delegate, MeterRegistry meterRegistry) {
+
+    this.delegate = delegate;
+    timer =
+        new HashedWheelTimer(
+            new DefaultThreadFactory("penalty-timer", true),
+            tickDuration.toNanos(),
+            TimeUnit.NANOSECONDS,
+            TICKS_PER_WHEEL,
+            false,
+            maximumPending);
+    Gauge.builder("gateway.penalty.pending", timer, HashedWheelTimer::pendingTimeouts)
+        .description("Penalty delays waiting to expire")
+        .register(meterRegistry);
+    rejectedCounter =
+        Counter.builder("gateway.penalty.rejected")
+            .description("Penalty delays rejected as too many were pending")
+            .register(meterRegistry);
+  }
+
+  /**
+   * Checks if the error was caused by a rejected penalty.
+   *
+   * @param throwable error
+   * @return true if a penalty was rejected
+   */
+  public static boolean isRejection(Throwable throwable) {
+
+    for (var cause = throwable; cause != null; cause = cause.getCause()) {
+      if (cause instanceof PenaltyRejectedException) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public Worker createWorker() {
+
+    return new PenaltyWorker(delegate.createWorker());
+  }
+
+  @Override
+  public void dispose() {
+
+    timer.stop();
+    delegate.dispose();
+  }
+
+  @Override
+  public boolean isDisposed() {
+
+    return delegate.isDisposed();
+  }
+
+  @Override
+  public Disposable schedule(Runnable task) {
+
+    return delegate.schedule(task);
+  }
+
+  @Override
+  public Disposable schedule(Runnable task, long delay, TimeUnit unit) {
+
+    if (delay <= 0) {
+      return delegate.schedule(task);
+    }
+    return newTimeout(new PendingTask(task, delegate::schedule, null), delay, unit);
+  }
+
+  private PendingTask newTimeout(PendingTask pendingTask, long delay, TimeUnit unit) {
+
+    try {
+      pendingTask.timeout = timer.newTimeout(pendingTask, delay, unit);
+    } catch (RejectedExecutionException e) {
+      pendingTask.dispose();
+      rejectedCounter.increment();
+      throw new PenaltyRejectedException(e);
+    }
+    return pendingTask;
+  }
+
+  /** Thrown when there are too many penalties pending. */
+  public static class PenaltyRejectedException extends RejectedExecutionException {
+
+    PenaltyRejectedException(Throwable cause) {
+
+      super("too many penalties pending", cause);
+    }
+  }
+
+  /** Delayed task that is handed to the executor when the timeout expires. */
+  private static final class PendingTask implements TimerTask, Disposable {
+
+    private final Function<Runnable, Disposable> executor;
+
+    /** Tasks of the worker that scheduled it, null if scheduled directly. */
+    private final Disposable.Composite parent;
+
+    private final Runnable task;
+
+    private volatile boolean disposed;
+
+    private volatile Disposable running;
+
+    private volatile Timeout timeout;
+
+    PendingTask(
+        Runnable task, Function<Runnable, Disposable> executor, Disposable.Composite parent) {
+
+      this.task = task;
+      this.executor = executor;
+      this.parent = parent;
+    }
+
+    @Override
+    public void dispose() {
+
+      disposed = true;
+      if (parent != null) {
+        parent.remove(this);
+      }
+      final var pendingTimeout = timeout;
+      if (pendingTimeout != null) {
+        pendingTimeout.cancel();
+      }
+      final var runningTask = running;
+      if (runningTask != null) {
+        runningTask.dispose();
+      }
+    }
+
+    @Override
+    public boolean isDisposed() {
+
+      return disposed;
+    }
+
+    @Override
+    public void run(Timeout expired) {
+
+      if (parent != null) {
+        parent.remove(this);
+      }
+      if (!disposed) {
+        try {
+          running = executor.apply(task);
+        } catch (RejectedExecutionException e) {
+          // the executor was disposed while the task was pending
+        }
+      }
+    }
+  }
+
+  /** Worker that runs its tasks on a worker of the delegate. */
+  private final class PenaltyWorker implements Worker {
+
+    private final Worker delegateWorker;
+
+    private final Disposable.Composite tasks = Disposables.composite();
+
+    PenaltyWorker(Worker delegateWorker) {
+
+      this.delegateWorker = delegateWorker;
+    }
+
+    @Override
+    public void dispose() {
+
+      tasks.dispose();
+      delegateWorker.dispose();
+    }
+
+    @Override
+    public boolean isDisposed() {
+
+      return tasks.isDisposed();
+    }
+
+    @Override
+    public Disposable schedule(Runnable task) {
+
+      return delegateWorker.schedule(task);
+    }
+
+    @Override
+    public Disposable schedule(Runnable task, long delay, TimeUnit unit) {
+
+      if (delay <= 0) {
+        return delegateWorker.schedule(task);
+      }
+      final var pendingTask = new PendingTask(task, delegateWorker::schedule, tasks);
+      if (!tasks.add(pendingTask)) {
+        throw new RejectedExecutionException("worker is disposed");
+      }
+      return newTimeout(pendingTask, delay, unit);
+    }
+  }
+}
@@ -1,5 +1,8 @@
 package net.trajano.swarm.gateway;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import net.trajano.swarm.gateway.common.AuthProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import reactor.core.scheduler.Scheduler;
@@ -64,12 +67,24 @@ public class SchedulerConfiguration {
         "logout");
   }
 
-  @Bean
-  Scheduler penalty() {
-    return Schedulers.newBoundedElastic(
-        Schedulers.DEFAULT_BOUNDED_ELASTIC_SIZE,
-        Schedulers.DEFAULT_BOUNDED_ELASTIC_QUEUESIZE,
-        "penalty");
+  /**
+   * This is used for penalty and minimum operation time delays. The delays are tracked by a timer
+   * wheel and are capped so a flood of failed attempts cannot queue an unbounded number of them.
+   *
+   * @param authProperties auth properties
+   * @param meterRegistry meter registry
+   * @return scheduler
+   */
+  @Bean(destroyMethod = "dispose")
+  Scheduler penalty(AuthProperties authProperties, MeterRegistry meterRegistry) {
+    return new PenaltyScheduler(
+        Duration.ofMillis(authProperties.getPenaltyTimerTickInMillis()),
+        authProperties.getMaximumPendingPenalties(),
+        Schedulers.newBoundedElastic(
+            Schedulers.DEFAULT_BOUNDED_ELASTIC_SIZE,
+            Schedulers.DEFAULT_BOUNDED_ELASTIC_QUEUESIZE,
+            "penalty"),
+        meterRegistry);
   }
 
   /**
@@ -7,6 +7,7 @@ import java.time.Duration;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeoutException;
 import lombok.extern.slf4j.Slf4j;
+import net.trajano.swarm.gateway.PenaltyScheduler;
 import net.trajano.swarm.gateway.auth.claims.ClaimsService;
 import net.trajano.swarm.gateway.auth.clientmanagement.ClientManagementService;
 import net.trajano.swarm.gateway.auth.clientmanagement.InvalidClientException;
@@ -44,6 +45,8 @@ import reactor.util.context.Context;
 @Slf4j
 public abstract class AbstractAuthController<A, P> {
 
+  @Autowired private AbuseShield abuseShield;
+
   @Autowired private Counter attemptedAuthenticationRequests;
 
   @Autowired private AuthProperties authProperties;
@@ -72,6 +75,19 @@ public abstract class AbstractAuthController<A, P> {
 
   @Autowired private Counter succeededAuthenticationRequests;
 
+  /**
+   * Checks if the request was rejected by a busy service. Rejected penalties are excluded so they
+   * reach the error handler which drops the connection.
+   *
+   * @param throwable error
+   * @return true if the request should get a service unavailable response
+   */
+  private static boolean isServiceRejection(Throwable throwable) {
+
+    return throwable instanceof RejectedExecutionException
+        && !PenaltyScheduler.isRejection(throwable);
+  }
+
   private void addCommonHeaders(ServerHttpResponse serverHttpResponse) {
 
     serverHttpResponse.getHeaders().add(HttpHeaders.CACHE_CONTROL, "no-cache");
@@ -101,7 +117,7 @@ public abstract class AbstractAuthController<A, P> {
                         - System.currentTimeMillis()))
         .filter(delayTime -> delayTime > 0)
         .map(Duration::ofMillis)
-        .flatMap(delayTime -> Mono.just(i).delayElement(delayTime));
+        .flatMap(delayTime -> Mono.just(i).delayElement(delayTime, penaltyScheduler));
   }
 
   @CrossOrigin
@@ -180,7 +196,7 @@ public abstract class AbstractAuthController<A, P> {
                         Duration.ofMillis(authProperties.getPenaltyDelayInMillis()),
                         penaltyScheduler))
         .onErrorResume(
-            RejectedExecutionException.class,
+            AbstractAuthController::isServiceRejection,
             ex1 ->
                 respondWithServiceUnavailable(
                     serverWebExchange, "Rejected execution for authentication request"))
@@ -281,18 +297,34 @@ public abstract class AbstractAuthController<A, P> {
 
     return validateClient(serverWebExchange)
         .flatMap(
-            clientId ->
-                claimsService.refresh(
-                    oAuthRefreshRequest.getRefresh_token(),
-                    serverWebExchange.getRequest().getHeaders(),
-                    clientId))
+            clientId -> {
+              if (abuseShield.shed(serverWebExchange, clientId)) {
+                return Mono.just(tooManyRequests());
+              }
+              return claimsService
+                  .refresh(
+                      oAuthRefreshRequest.getRefresh_token(),
+                      serverWebExchange.getRequest().getHeaders(),
+                      clientId)
+                  .doOnNext(
+                      serviceResponse -> {
+                        if (serviceResponse.getStatusCode() == HttpStatus.UNAUTHORIZED) {
+                          abuseShield.recordFailure(serverWebExchange, clientId);
+                        }
+                      });
+            })
         .timeout(Duration.ofMillis(authProperties.getRefreshProcessingTimeoutInMillis()))
         .doOnNext(
             serviceResponse -> {
               final var serverHttpResponse = serverWebExchange.getResponse();
               addCommonHeaders(serverHttpResponse);
               serverHttpResponse.setStatusCode(serviceResponse.getStatusCode());
-              if (serviceResponse.getStatusCode() == HttpStatus.UNAUTHORIZED) {
+              if (serviceResponse.getStatusCode() == HttpStatus.TOO_MANY_REQUESTS) {
+                serverHttpResponse
+                    .getHeaders()
+                    .add(
+                        HttpHeaders.RETRY_AFTER, String.valueOf(abuseShield.window().toSeconds()));
+              } else if (serviceResponse.getStatusCode() == HttpStatus.UNAUTHORIZED) {
                 serverHttpResponse
                     .getHeaders()
                     .add(
@@ -306,7 +338,7 @@ public abstract class AbstractAuthController<A, P> {
             InvalidClientException.class,
             ex -> respondWithInvalidClientCredentials(serverWebExchange))
         .onErrorResume(
-            RejectedExecutionException.class,
+            AbstractAuthController::isServiceRejection,
             ex1 ->
                 respondWithServiceUnavailable(
                     serverWebExchange, "Rejected execution for refresh request"))
@@ -374,6 +406,20 @@ public abstract class AbstractAuthController<A, P> {
             });
   }
 
+  /**
+   * Response to a refresh shed by the abuse shield. There is no penalty delay as the point of
+   * shedding is to spend as little as possible on the request.
+   *
+   * @return service response
+   */
+  private AuthServiceResponse<GatewayResponse> tooManyRequests() {
+
+    return AuthServiceResponse.builder()
+        .operationResponse(GatewayResponse.builder().ok(false).error("too_many_requests").build())
+        .statusCode(HttpStatus.TOO_MANY_REQUESTS)
+        .build();
+  }
+
   private Mono<String> validateClient(ServerWebExchange serverWebExchange) {
     return clientManagementService.obtainClientIdFromServerExchange(serverWebExchange);
   }
@@ -0,0 +1,311 @@
+package net.trajano.swarm.gateway.auth;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.net.InetSocketAddress;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import lombok.extern.slf4j.Slf4j;
+import net.trajano.swarm.gateway.common.AuthProperties;
+import net.trajano.swarm.gateway.redis.RedisKeyBlocks;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.gateway.support.ipresolver.RemoteAddressResolver;
+import org.springframework.cloud.gateway.support.ipresolver.XForwardedRemoteAddressResolver;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+
+/**
+ * Sheds requests from remote addresses and clients that keep presenting bad tokens before their
+ * tokens are decompressed and verified. Failures are counted in a sliding window approximated from
+ * the counts of the current and previous fixed windows. The remote address is taken from {@code
+ * X-Forwarded-For} according to {@link AuthProperties#getAbuseShieldTrustedProxies()}.
+ *
+ * <p>The counts are kept in a fixed array of packed slots updated with compare and set, so memory
+ * does not grow with the number of sources and nothing locks. Each source is counted in one slot
+ * of each of two rows and the lower count is used, a source only shares its estimate with another
+ * if both of its slots collide.
+ *
+ * <p>If {@link AuthProperties#isAbuseShieldRedisEnabled()} is set, failures are also counted in
+ * Redis and the count across gateways is merged into the local slots. This is done when a failure
+ * is recorded so shedding never waits on Redis.
+ */
+@Component
+@Slf4j
+public class AbuseShield {
+
+  private static final long COUNT_MASK = 0xFFFFL;
+
+  /** Increments the failures of the window and sets it to expire with the next one. */
+  private static final RedisScript<Long> INCREMENT_SCRIPT =
+      RedisScript.of(
+          """
+          local count = redis.call('INCR', KEYS[1])
+          if count == 1 then
+            redis.call('PEXPIRE', KEYS[1], ARGV[1])
+          end
+          return count
+          """,
+          Long.class);
+
+  private final boolean enabled;
+
+  private final RedisKeyBlocks redisKeyBlocks;
+
+  private final RemoteAddressResolver remoteAddressResolver;
+
+  /** Template used to share the counts, null if they are only kept locally. */
+  private final ReactiveStringRedisTemplate redisTemplate;
+
+  /** Seed mixed into the slot hashes so the collisions differ between gateways. */
+  private final int seed = new SecureRandom().nextInt();
+
+  private final int slotMask;
+
+  /**
+   * Two rows of slots, each packing the window number in the upper 32 bits followed by the
+   * failures of the previous window and of the current window in 16 bits each.
+   */
+  private final AtomicLongArray slots;
+
+  private final long windowInMillis;
+
+  private final SourceCounters addressCounters;
+
+  private final SourceCounters clientCounters;
+
+  public AbuseShield(
+      AuthProperties authProperties,
+      RedisKeyBlocks redisKeyBlocks,
+      ObjectProvider<ReactiveStringRedisTemplate> redisTemplateProvider,
+      MeterRegistry meterRegistry) {
+
+    enabled = authProperties.isAbuseShieldEnabled();
+    this.redisKeyBlocks = redisKeyBlocks;
+    remoteAddressResolver =
+        authProperties.getAbuseShieldTrustedProxies() > 0
+            ? XForwardedRemoteAddressResolver.maxTrustedIndex(
+                authProperties.getAbuseShieldTrustedProxies())
+            : new RemoteAddressResolver() {};
+    redisTemplate =
+        authProperties.isAbuseShieldRedisEnabled() ? redisTemplateProvider.getIfAvailable() : null;
+    final var rowSize = Integer.highestOneBit(Math.max(1, authProperties.getAbuseShieldSlots()));
+    slotMask = rowSize - 1;
+    slots = new AtomicLongArray(rowSize * 2);
+    windowInMillis = authProperties.getAbuseShieldWindowInMillis();
+    addressCounters =
+        new SourceCounters(
+            "address", authProperties.getAbuseShieldAddressFailureThreshold(), meterRegistry);
+    clientCounters =
+        new SourceCounters(
+            "client", authProperties.getAbuseShieldClientFailureThreshold(), meterRegistry);
+  }
+
+  private static int mix(int h) {
+
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    h *= 0xc2b2ae35;
+    h ^= h >>> 16;
+    return h;
+  }
+
+  /**
+   * Moves the packed slot to the window. The current count becomes the previous count if the slot
+   * was last updated in the window before, otherwise both are cleared.
+   *
+   * @param packed packed slot
+   * @param window window number
+   * @return packed slot for the window
+   */
+  private static long roll(long packed, long window) {
+
+    final var slotWindow = packed >>> 32;
+    if (slotWindow == window) {
+      return packed;
+    } else if (slotWindow == ((window - 1) & 0xFFFFFFFFL)) {
+      return window << 32 | (packed & COUNT_MASK) << 16;
+    } else {
+      return window << 32;
+    }
+  }
+
+  /**
+   * Obtains the remote address of the request, falling back to the address of the connection if
+   * there is no {@code X-Forwarded-For}.
+   *
+   * @param exchange exchange
+   * @return host address, null if not known
+   */
+  private String remoteAddress(ServerWebExchange exchange) {
+
+    final InetSocketAddress remoteAddress = remoteAddressResolver.resolve(exchange);
+    if (remoteAddress == null) {
+      return null;
+    }
+    final var address = remoteAddress.getAddress();
+    return address == null ? remoteAddress.getHostString() : address.getHostAddress();
+  }
+
+  private double estimate(int index, long now) {
+
+    final var packed = roll(slots.get(index), window(now));
+    final var elapsed = (double) (now % windowInMillis) / windowInMillis;
+    return (packed >>> 16 & COUNT_MASK) * (1.0 - elapsed) + (packed & COUNT_MASK);
+  }
+
+  private double estimate(String key, long now) {
+
+    final var hash = key.hashCode();
+    return Math.min(estimate(index(hash, 0), now), estimate(index(hash, 1), now));
+  }
+
+  private int index(int hash, int row) {
+
+    return row * (slotMask + 1) + (mix(hash ^ seed ^ row * 0x9e3779b9) & slotMask);
+  }
+
+  /**
+   * Raises the failures of the current window of the source to the count.
+   *
+   * @param key source key
+   * @param window window number
+   * @param count failures across gateways
+   */
+  private void merge(String key, long window, long count) {
+
+    final var hash = key.hashCode();
+    for (var row = 0; row < 2; ++row) {
+      slots.updateAndGet(
+          index(hash, row),
+          packed -> {
+            final var rolled = roll(packed, window);
+            final var merged = Math.max(rolled & COUNT_MASK, Math.min(count, COUNT_MASK));
+            return rolled & ~COUNT_MASK | merged;
+          });
+    }
+  }
+
+  /**
+   * Records a failure of the remote address of the exchange and the client.
+   *
+   * @param exchange exchange
+   * @param clientId client ID, null if not known
+   */
+  public void recordFailure(ServerWebExchange exchange, String clientId) {
+
+    if (!enabled) {
+      return;
+    }
+    final var now = System.currentTimeMillis();
+    final var address = remoteAddress(exchange);
+    if (address != null) {
+      recordFailure(addressCounters, address, now);
+    }
+    if (clientId != null) {
+      recordFailure(clientCounters, clientId, now);
+    }
+  }
+
+  private void recordFailure(SourceCounters counters, String source, long now) {
+
+    counters.failures.increment();
+    final var key = counters.name + ':' + source;
+    final var window = window(now);
+    final var hash = key.hashCode();
+    for (var row = 0; row < 2; ++row) {
+      slots.updateAndGet(
+          index(hash, row),
+          packed -> {
+            final var rolled = roll(packed, window);
+            return rolled & ~COUNT_MASK | Math.min((rolled & COUNT_MASK) + 1, COUNT_MASK);
+          });
+    }
+    if (redisTemplate != null) {
+      redisTemplate
+          .execute(
+              INCREMENT_SCRIPT,
+              List.of(redisKeyBlocks.abuseWindow(key, window)),
+              List.of(String.valueOf(windowInMillis * 2)))
+          .next()
+          .subscribe(
+              count -> merge(key, window, count),
+              e -> log.warn("unable to share failures of {}", key, e));
+    }
+  }
+
+  /**
+   * Checks if the request should be shed because its remote address or client has failed too
+   * often recently. The shed counter is incremented if it is.
+   *
+   * @param exchange exchange
+   * @param clientId client ID, null if not known
+   * @return true if the request should be shed
+   */
+  public boolean shed(ServerWebExchange exchange, String clientId) {
+
+    if (!enabled) {
+      return false;
+    }
+    final var now = System.currentTimeMillis();
+    final var address = remoteAddress(exchange);
+    return address != null && shed(addressCounters, address, now)
+        || clientId != null && shed(clientCounters, clientId, now);
+  }
+
+  private boolean shed(SourceCounters counters, String source, long now) {
+
+    if (estimate(counters.name + ':' + source, now) < counters.threshold) {
+      return false;
+    }
+    counters.shed.increment();
+    return true;
+  }
+
+  /**
+   * Duration of the window, sent as the {@code Retry-After} of shed requests.
+   *
+   * @return window duration
+   */
+  public Duration window() {
+
+    return Duration.ofMillis(windowInMillis);
+  }
+
+  private long window(long now) {
+
+    return now / windowInMillis & 0xFFFFFFFFL;
+  }
+
+  /** Threshold and meters of a kind of source. */
+  private static final class SourceCounters {
+
+    private final Counter failures;
+
+    private final String name;
+
+    private final Counter shed;
+
+    private final int threshold;
+
+    SourceCounters(String name, int threshold, MeterRegistry meterRegistry) {
+
+      this.name = name;
+      this.threshold = threshold;
+      failures =
+          Counter.builder("gateway.abuse.failures")
+              .description("Failed token presentations recorded by the abuse shield")
+              .tag("source", name)
+              .register(meterRegistry);
+      shed =
+          Counter.builder("gateway.abuse.shed")
+              .description("Requests shed by the abuse shield before verifying the token")
+              .tag("source", name)
+              .register(meterRegistry);
+    }
+  }
+}
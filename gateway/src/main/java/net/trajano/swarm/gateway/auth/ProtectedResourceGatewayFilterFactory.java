@@ -7,21 +7,19 @@ import io.micrometer.core.instrument.Counter;
 import java.time.Duration;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
+import net.trajano.swarm.gateway.PenaltyScheduler;
 import net.trajano.swarm.gateway.auth.claims.ClaimsService;
+import net.trajano.swarm.gateway.auth.claims.ExpiredTokenException;
 import net.trajano.swarm.gateway.common.AuthProperties;
-import net.trajano.swarm.gateway.web.GatewayResponse;
-import net.trajano.swarm.gateway.web.UnauthorizedGatewayResponse;
+import net.trajano.swarm.gateway.web.EncodedGatewayResponses;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.cloud.client.ServiceInstance;
 import org.springframework.cloud.client.discovery.ReactiveDiscoveryClient;
 import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
 import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
 import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
-import org.springframework.core.ResolvableType;
-import org.springframework.core.codec.Hints;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.MediaType;
-import org.springframework.http.codec.json.Jackson2JsonEncoder;
 import org.springframework.stereotype.Component;
 import org.springframework.web.server.ResponseStatusException;
 import org.springframework.web.server.ServerWebExchange;
@@ -41,15 +39,16 @@ import reactor.core.scheduler.Schedulers;
 public class ProtectedResourceGatewayFilterFactory
     extends AbstractGatewayFilterFactory<ProtectedResourceGatewayFilterFactory.Config> {
 
+  private final AbuseShield abuseShield;
+
   private final ReactiveDiscoveryClient discoveryClient;
 
   private final Scheduler penaltyScheduler;
 
-  private final Scheduler protectedResourceScheduler =
-      Schedulers.newBoundedElastic(
-          Schedulers.DEFAULT_BOUNDED_ELASTIC_SIZE,
-          Schedulers.DEFAULT_BOUNDED_ELASTIC_QUEUESIZE,
-          "protected-resource");
+  /** Scheduler the filter subscribes on, null if it runs on the calling thread. */
+  private final Scheduler protectedResourceScheduler;
+
+  private final EncodedGatewayResponses encodedGatewayResponses;
 
   private final IdentityService<?, ?> identityService;
 
@@ -65,6 +64,8 @@ public class ProtectedResourceGatewayFilterFactory
       ClaimsService claimsService,
       IdentityService<?, ?> identityService,
       Counter succeededApiRequests,
+      EncodedGatewayResponses encodedGatewayResponses,
+      AbuseShield abuseShield,
       @Qualifier("penalty") Scheduler penaltyScheduler) {
 
     super(Config.class);
@@ -73,11 +74,23 @@ public class ProtectedResourceGatewayFilterFactory
     this.claimsService = claimsService;
     this.identityService = identityService;
     this.succeededApiRequests = succeededApiRequests;
+    this.encodedGatewayResponses = encodedGatewayResponses;
+    this.abuseShield = abuseShield;
     this.penaltyScheduler = penaltyScheduler;
+    if (authProperties.isProtectedResourceSchedulerEnabled()) {
+      protectedResourceScheduler =
+          Schedulers.newBoundedElastic(
+              Schedulers.DEFAULT_BOUNDED_ELASTIC_SIZE,
+              Schedulers.DEFAULT_BOUNDED_ELASTIC_QUEUESIZE,
+              "protected-resource");
+    } else {
+      protectedResourceScheduler = null;
+    }
   }
 
   /**
-   * At this point clientId is expected to be set in the exchange
+   * At this point clientId is expected to be set in the exchange. The protection policy is
+   * compiled here which is when the routes are refreshed.
    *
    * @param config filter factory configuration
    * @return filter
@@ -85,108 +98,133 @@ public class ProtectedResourceGatewayFilterFactory
   @Override
   public GatewayFilter apply(final Config config) {
 
+    final var policy = ProtectedResourcePolicy.compile(config, encodedGatewayResponses);
+    final GatewayFilter filter;
+    if (policy.serviceProtected() == null) {
+      filter =
+          (exchange, chain) ->
+              discoveryClient
+                  .getInstances(config.getServiceId())
+                  .next()
+                  .map(ServiceInstance::getMetadata)
+                  .map(
+                      metadata -> Boolean.parseBoolean(metadata.getOrDefault("protected", "true")))
+                  .flatMap(
+                      serviceProtected -> {
+                        if (!serviceProtected) {
+                          log.trace("service not protected");
+                          return chain.filter(exchange);
+                        }
+                        return filterProtected(policy, exchange, chain);
+                      });
+    } else if (policy.serviceProtected()) {
+      filter = (exchange, chain) -> filterProtected(policy, exchange, chain);
+    } else {
+      filter =
+          (exchange, chain) -> {
+            log.trace("service not protected");
+            return chain.filter(exchange);
+          };
+    }
+
+    if (protectedResourceScheduler == null) {
+      return filter;
+    }
     return (exchange, chain) ->
-        discoveryClient
-            .getInstances(config.getServiceId())
-            .next()
-            .map(ServiceInstance::getMetadata)
-            .map(metadata -> Boolean.parseBoolean(metadata.getOrDefault("protected", "true")))
-            .flatMap(
-                serviceProtected -> {
-                  if (!serviceProtected) {
-                    log.trace("service not protected");
-                    return chain.filter(exchange);
-                  } else {
-                    log.trace("service protected");
-
-                    final String authorization =
-                        exchange.getRequest().getHeaders().getFirst(HttpHeaders.AUTHORIZATION);
-                    if (authorization == null || !authorization.startsWith("Bearer ")) {
-                      log.trace("No Bearer token in authorization");
-
-                      ServerWebExchangeUtils.setResponseStatus(exchange, HttpStatus.UNAUTHORIZED);
-                      ServerWebExchangeUtils.setAlreadyRouted(exchange);
-                      return respondWithUnauthorized(config, exchange, "missing_token", null);
-                    } else {
-
-                      final String bearerToken = authorization.substring("Bearer ".length());
-                      return claimsService
-                          .getClaims(bearerToken)
-                          .flatMap(
-                              jwtClaims -> {
-                                exchange.getAttributes().put(JWT_CLAIMS, jwtClaims);
-                                return chain.filter(
-                                    identityService.mutateDownstreamRequest(exchange, jwtClaims));
-                              })
-                          .doOnNext(
-                              a -> {
-                                succeededApiRequests.increment();
-                              })
-                          .onErrorResume(
-                              SecurityException.class,
-                              ex -> {
-                                ServerWebExchangeUtils.setResponseStatus(
-                                    exchange, HttpStatus.UNAUTHORIZED);
-                                ServerWebExchangeUtils.setAlreadyRouted(exchange);
-                                log.debug(
-                                    "SecurityException obtaining claims: {}", ex.getMessage(), ex);
-                                return respondWithUnauthorized(
-                                        config, exchange, "invalid_token", ex.getMessage())
-                                    .delayElement(
-                                        Duration.ofMillis(authProperties.getPenaltyDelayInMillis()),
-                                        penaltyScheduler);
-                              })
-                          .onErrorResume(
-                              ex -> !(ex instanceof ResponseStatusException),
-                              ex -> {
-                                ServerWebExchangeUtils.setResponseStatus(
-                                    exchange, HttpStatus.UNAUTHORIZED);
-                                ServerWebExchangeUtils.setAlreadyRouted(exchange);
-                                log.warn(
-                                    "{} when obtaining claims: {}",
-                                    ex.getClass(),
-                                    ex.getMessage(),
-                                    ex);
-                                return respondWithUnauthorized(
-                                    config, exchange, "invalid_token", ex.getMessage());
-                              });
-                    }
-                  }
-                })
-            .subscribeOn(protectedResourceScheduler);
+        filter.filter(exchange, chain).subscribeOn(protectedResourceScheduler);
+  }
+
+  private Mono<Void> filterProtected(
+      ProtectedResourcePolicy policy, ServerWebExchange exchange, GatewayFilterChain chain) {
+
+    log.trace("service protected");
+
+    final String authorization =
+        exchange.getRequest().getHeaders().getFirst(HttpHeaders.AUTHORIZATION);
+    if (authorization == null || !authorization.startsWith("Bearer ")) {
+      log.trace("No Bearer token in authorization");
+
+      ServerWebExchangeUtils.setResponseStatus(exchange, HttpStatus.UNAUTHORIZED);
+      ServerWebExchangeUtils.setAlreadyRouted(exchange);
+      return respondWithUnauthorized(policy, exchange, EncodedGatewayResponses.MISSING_TOKEN);
+    }
+
+    final String bearerToken = authorization.substring("Bearer ".length());
+    final var verifiedClaims = claimsService.getVerifiedClaims(bearerToken);
+    if (verifiedClaims == null && abuseShield.shed(exchange, null)) {
+      log.trace("shed by abuse shield");
+      ServerWebExchangeUtils.setResponseStatus(exchange, HttpStatus.TOO_MANY_REQUESTS);
+      ServerWebExchangeUtils.setAlreadyRouted(exchange);
+      final var response = exchange.getResponse();
+      response.setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+      response
+          .getHeaders()
+          .set(HttpHeaders.RETRY_AFTER, String.valueOf(abuseShield.window().toSeconds()));
+      return encodedGatewayResponses.writeError(
+          response, EncodedGatewayResponses.TOO_MANY_REQUESTS);
+    }
+
+    final var claimsMono =
+        verifiedClaims == null ? claimsService.getClaims(bearerToken) : Mono.just(verifiedClaims);
+    return claimsMono
+        .flatMap(
+            jwtClaims -> {
+              exchange.getAttributes().put(JWT_CLAIMS, jwtClaims);
+              return chain.filter(identityService.mutateDownstreamRequest(exchange, jwtClaims));
+            })
+        .doOnNext(
+            a -> {
+              succeededApiRequests.increment();
+            })
+        .onErrorResume(
+            SecurityException.class,
+            ex -> {
+              ServerWebExchangeUtils.setResponseStatus(exchange, HttpStatus.UNAUTHORIZED);
+              ServerWebExchangeUtils.setAlreadyRouted(exchange);
+              log.debug("SecurityException obtaining claims: {}", ex.getMessage(), ex);
+              // expired tokens are presented by clients until they refresh so they are neither
+              // counted nor penalized
+              if (ex instanceof ExpiredTokenException) {
+                return respondWithUnauthorized(
+                    policy, exchange, EncodedGatewayResponses.INVALID_TOKEN);
+              }
+              abuseShield.recordFailure(exchange, null);
+              return Mono.delay(
+                      Duration.ofMillis(authProperties.getPenaltyDelayInMillis()), penaltyScheduler)
+                  .then(
+                      respondWithUnauthorized(
+                          policy, exchange, EncodedGatewayResponses.INVALID_TOKEN));
+            })
+        // rejected penalties are left for the error handler to drop the connection
+        .onErrorResume(
+            ex -> !(ex instanceof ResponseStatusException) && !PenaltyScheduler.isRejection(ex),
+            ex -> {
+              ServerWebExchangeUtils.setResponseStatus(exchange, HttpStatus.UNAUTHORIZED);
+              ServerWebExchangeUtils.setAlreadyRouted(exchange);
+              log.warn("{} when obtaining claims: {}", ex.getClass(), ex.getMessage(), ex);
+              return respondWithUnauthorized(
+                  policy, exchange, EncodedGatewayResponses.INVALID_TOKEN);
+            });
   }
 
+  /**
+   * Responds with the pre-encoded error. The reason the token was rejected is only logged, it is
+   * not sent to the client as it may contain the claims of the token.
+   *
+   * @param policy protection policy
+   * @param exchange exchange
+   * @param error error code
+   * @return completion
+   */
   private Mono<Void> respondWithUnauthorized(
-      Config config, ServerWebExchange exchange, String error, String errorDescription) {
+      ProtectedResourcePolicy policy, ServerWebExchange exchange, String error) {
 
     return Mono.defer(
         () -> {
           final var response = exchange.getResponse();
           response.setStatusCode(HttpStatus.UNAUTHORIZED);
-          if (error != null) {
-            response
-                .getHeaders()
-                .add(
-                    HttpHeaders.WWW_AUTHENTICATE,
-                    "Bearer realm=\"%s\", error=\"%s\"".formatted(config.getRealm(), error));
-          } else {
-            response
-                .getHeaders()
-                .add(
-                    HttpHeaders.WWW_AUTHENTICATE,
-                    "Bearer realm=\"%s\"".formatted(config.getRealm()));
-          }
-          response
-              .getHeaders()
-              .add(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON.toString());
-          return response.writeWith(
-              new Jackson2JsonEncoder()
-                  .encode(
-                      Mono.fromSupplier(() -> new GatewayResponse(false, error, errorDescription)),
-                      response.bufferFactory(),
-                      ResolvableType.forClass(UnauthorizedGatewayResponse.class),
-                      MediaType.APPLICATION_JSON,
-                      Hints.from(Hints.LOG_PREFIX_HINT, exchange.getLogPrefix())));
+          response.getHeaders().add(HttpHeaders.WWW_AUTHENTICATE, policy.challenge(error));
+          return encodedGatewayResponses.writeError(response, error);
         });
   }
 
@@ -196,6 +234,12 @@ public class ProtectedResourceGatewayFilterFactory
 
     private String serviceId;
 
+    /**
+     * Whether the service is protected, usually evaluated from the {@code protected} metadata by
+     * the discovery locator. If not set, the metadata is looked up on every request.
+     */
+    private Boolean serviceProtected;
+
     private String realm = "JWT";
   }
 }
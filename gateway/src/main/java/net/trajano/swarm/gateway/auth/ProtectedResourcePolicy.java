@@ -0,0 +1,43 @@
+package net.trajano.swarm.gateway.auth;
+
+import net.trajano.swarm.gateway.web.EncodedGatewayResponses;
+
+/**
+ * Protection policy of a route compiled by {@link ProtectedResourceGatewayFilterFactory} when the
+ * routes are refreshed so requests do not need to parse the service metadata or render the
+ * challenges. The error bodies come from {@link EncodedGatewayResponses}.
+ *
+ * @param serviceProtected whether the service is protected, null if it has to be looked up from
+ *     the discovery client per request
+ * @param realm realm
+ * @param missingTokenChallenge {@code WWW-Authenticate} value when there is no bearer token
+ * @param invalidTokenChallenge {@code WWW-Authenticate} value when the bearer token is invalid
+ */
+record ProtectedResourcePolicy(
+    Boolean serviceProtected,
+    String realm,
+    String missingTokenChallenge,
+    String invalidTokenChallenge) {
+
+  private static final String SCHEME = "Bearer";
+
+  static ProtectedResourcePolicy compile(
+      ProtectedResourceGatewayFilterFactory.Config config,
+      EncodedGatewayResponses encodedGatewayResponses) {
+
+    return new ProtectedResourcePolicy(
+        config.getServiceProtected(),
+        config.getRealm(),
+        encodedGatewayResponses.challenge(
+            SCHEME, config.getRealm(), EncodedGatewayResponses.MISSING_TOKEN),
+        encodedGatewayResponses.challenge(
+            SCHEME, config.getRealm(), EncodedGatewayResponses.INVALID_TOKEN));
+  }
+
+  String challenge(String error) {
+
+    return EncodedGatewayResponses.MISSING_TOKEN.equals(error)
+        ? missingTokenChallenge
+        : invalidTokenChallenge;
+  }
+}
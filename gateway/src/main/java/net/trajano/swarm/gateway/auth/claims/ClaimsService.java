@@ -11,14 +11,23 @@ public interface ClaimsService {
 
   /**
    * Extract JWT claims from the bearer token. If the bearer token is invalid, then a
-   * Mono.error(SecurityException) will be returned. This checks whether the claims has a valid
-   * audience, namely the issuer.
+   * Mono.error(SecurityException) will be returned, an {@link ExpiredTokenException} if it has
+   * only expired. This checks whether the claims has a valid audience, namely the issuer.
    *
    * @param bearerToken bearer token
    * @return claims
    */
   Mono<JwtClaims> getClaims(String bearerToken);
 
+  /**
+   * Obtains the claims of a bearer token that has already been verified without verifying it
+   * again.
+   *
+   * @param bearerToken bearer token
+   * @return claims or null if the token has not been verified recently
+   */
+  JwtClaims getVerifiedClaims(String bearerToken);
+
   /**
    * Refreshes the token and returns a new authentication response. May throw a {@link
    * IllegalArgumentException} if the token is not valid or expired.
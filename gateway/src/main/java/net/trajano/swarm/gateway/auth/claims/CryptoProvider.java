@@ -0,0 +1,106 @@
+package net.trajano.swarm.gateway.auth.claims;
+
+import java.security.KeyFactory;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.Security;
+import java.security.Signature;
+import lombok.extern.slf4j.Slf4j;
+import net.trajano.swarm.gateway.common.AuthProperties;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.jose4j.jca.ProviderContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * JCA provider used for the token signatures as configured by {@link
+ * AuthProperties#getSignatureProvider()}. BouncyCastle is registered if it is selected and not
+ * already installed. {@link #providerContext()} passes the same provider to jose4j consumers.
+ */
+@Component
+@Slf4j
+public class CryptoProvider {
+
+  /** ES256 producing the R || S form used by JWS rather than DER. */
+  private static final String ES256_CONCATENATED = "SHA256withECDSAinP1363Format";
+
+  /** BouncyCastle's name for {@link #ES256_CONCATENATED}. */
+  private static final String ES256_PLAIN = "SHA256withPLAIN-ECDSA";
+
+  private final String providerName;
+
+  private final String es256Algorithm;
+
+  @Autowired
+  public CryptoProvider(AuthProperties authProperties) {
+
+    this(authProperties.getSignatureProvider());
+  }
+
+  /**
+   * Uses the provider.
+   *
+   * @param providerName JCA provider name, null for the default
+   */
+  public CryptoProvider(String providerName) {
+
+    if (BouncyCastleProvider.PROVIDER_NAME.equals(providerName)
+        && Security.getProvider(providerName) == null) {
+      Security.addProvider(new BouncyCastleProvider());
+    }
+    if (providerName != null && Security.getProvider(providerName) == null) {
+      throw new IllegalStateException(
+          "Signature provider %s is not installed".formatted(providerName));
+    }
+    this.providerName = providerName;
+    es256Algorithm =
+        BouncyCastleProvider.PROVIDER_NAME.equals(providerName) ? ES256_PLAIN : ES256_CONCATENATED;
+    log.info("signature provider={}", providerName == null ? "default" : providerName);
+  }
+
+  /**
+   * Creates a signature for ES256 whose output is the concatenated R and S values used in a JWS.
+   * Signatures are not thread safe so a new one is created for every call.
+   *
+   * @return signature
+   */
+  public Signature es256Signature() {
+
+    try {
+      return providerName == null
+          ? Signature.getInstance(es256Algorithm)
+          : Signature.getInstance(es256Algorithm, providerName);
+    } catch (NoSuchAlgorithmException | NoSuchProviderException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Obtains a key factory from the provider, keys created by it are used as is by its signatures.
+   *
+   * @param algorithm key algorithm
+   * @return key factory
+   */
+  public KeyFactory keyFactory(String algorithm) {
+
+    try {
+      return providerName == null
+          ? KeyFactory.getInstance(algorithm)
+          : KeyFactory.getInstance(algorithm, providerName);
+    } catch (NoSuchAlgorithmException | NoSuchProviderException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Provider context for jose4j so the signatures of consumed tokens are verified by the provider.
+   *
+   * @return provider context
+   */
+  public ProviderContext providerContext() {
+
+    final var providerContext = new ProviderContext();
+    providerContext.getSuppliedKeyProviderContext().setSignatureProvider(providerName);
+    return providerContext;
+  }
+}
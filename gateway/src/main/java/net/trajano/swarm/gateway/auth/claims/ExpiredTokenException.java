@@ -0,0 +1,13 @@
+package net.trajano.swarm.gateway.auth.claims;
+
+/**
+ * Thrown when the access token is valid but has expired. Clients are expected to present expired
+ * tokens until they refresh them, so unlike other security errors this is not counted as abuse.
+ */
+public class ExpiredTokenException extends SecurityException {
+
+  public ExpiredTokenException(Throwable cause) {
+
+    super(cause);
+  }
+}
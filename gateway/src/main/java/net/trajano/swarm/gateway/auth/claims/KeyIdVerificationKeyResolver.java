@@ -0,0 +1,47 @@
+package net.trajano.swarm.gateway.auth.claims;
+
+import java.security.Key;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.jose4j.jwk.JsonWebKey;
+import org.jose4j.jwk.PublicJsonWebKey;
+import org.jose4j.jws.JsonWebSignature;
+import org.jose4j.jwx.JsonWebStructure;
+import org.jose4j.keys.resolvers.VerificationKeyResolver;
+import org.jose4j.lang.UnresolvableKeyException;
+
+/**
+ * Resolves the verification key by the {@code kid} header using keys indexed up front, rather than
+ * filtering the whole key set for every token like {@link
+ * org.jose4j.keys.resolvers.JwksVerificationKeyResolver} does. Keys without a key ID are ignored.
+ */
+public final class KeyIdVerificationKeyResolver implements VerificationKeyResolver {
+
+  private final Map<String, Key> keysById;
+
+  public KeyIdVerificationKeyResolver(List<JsonWebKey> jsonWebKeys) {
+
+    final var keys = new HashMap<String, Key>();
+    for (final var jwk : jsonWebKeys) {
+      if (jwk.getKeyId() != null) {
+        keys.put(
+            jwk.getKeyId(),
+            jwk instanceof PublicJsonWebKey publicJwk ? publicJwk.getPublicKey() : jwk.getKey());
+      }
+    }
+    keysById = Map.copyOf(keys);
+  }
+
+  @Override
+  public Key resolveKey(JsonWebSignature jws, List<JsonWebStructure> nestingContext)
+      throws UnresolvableKeyException {
+
+    final var kid = jws.getKeyIdHeaderValue();
+    final var key = kid == null ? null : keysById.get(kid);
+    if (key == null) {
+      throw new UnresolvableKeyException("No verification key for kid " + kid);
+    }
+    return key;
+  }
+}
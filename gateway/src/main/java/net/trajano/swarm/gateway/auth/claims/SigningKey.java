@@ -0,0 +1,95 @@
+package net.trajano.swarm.gateway.auth.claims;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.util.Base64;
+import org.jose4j.jwk.JsonWebKey;
+import org.jose4j.jwk.JsonWebKeySet;
+import org.jose4j.jws.AlgorithmIdentifiers;
+
+/**
+ * Signing key pair decoded once from a {@link JsonWebKeySet}. The encoded JOSE header is built
+ * when the key is decoded, so signing only encodes the payload and computes the signature. The
+ * header only contains the key ID and {@code ES256} so it matches what {@code
+ * RedisJtiExtractorService} rebuilds for refresh tokens.
+ *
+ * @param kid key ID of the verification key
+ * @param privateKey private key
+ * @param verificationJwk public key stored with the user session
+ * @param encodedHeader base64url encoded JOSE header
+ * @param cryptoProvider provider of the signatures
+ */
+public record SigningKey(
+    String kid,
+    PrivateKey privateKey,
+    JsonWebKey verificationJwk,
+    String encodedHeader,
+    CryptoProvider cryptoProvider) {
+
+  private static final Base64.Encoder BASE64_URL = Base64.getUrlEncoder().withoutPadding();
+
+  /**
+   * Decodes the signing key pair.
+   *
+   * @param jwks key pair as provided by {@link net.trajano.swarm.gateway.jwks.JwksProvider}
+   * @param cryptoProvider provider used to decode the private key and sign
+   * @return signing key
+   */
+  public static SigningKey fromJwks(JsonWebKeySet jwks, CryptoProvider cryptoProvider) {
+
+    final var verificationJwk = JwtFunctions.getVerificationKeyFromJwks(jwks).orElseThrow();
+    final var header =
+        "{\"kid\":\"%s\",\"alg\":\"%s\"}"
+            .formatted(
+                verificationJwk.getKeyId(), AlgorithmIdentifiers.ECDSA_USING_P256_CURVE_AND_SHA256);
+    return new SigningKey(
+        verificationJwk.getKeyId(),
+        JwtFunctions.getSigningKeyFromJwks(
+            jwks, cryptoProvider.keyFactory(JwtFunctions.ALGORITHM_EC)),
+        verificationJwk,
+        BASE64_URL.encodeToString(header.getBytes(StandardCharsets.US_ASCII)),
+        cryptoProvider);
+  }
+
+  /**
+   * Signs the payload.
+   *
+   * @param payload payload
+   * @return compact JWS
+   */
+  public String sign(String payload) {
+
+    return signWithHeader(encodedHeader, payload);
+  }
+
+  /**
+   * Signs the payload but only stores the key ID in place of the JOSE header. The signature is
+   * still computed over the full header.
+   *
+   * @param payload payload
+   * @return altered compact JWS
+   */
+  public String refreshSign(String payload) {
+
+    return signWithHeader(kid, payload);
+  }
+
+  private String signWithHeader(String serializedHeader, String payload) {
+
+    final var encodedPayload = BASE64_URL.encodeToString(payload.getBytes(StandardCharsets.UTF_8));
+    final var signingInput = encodedHeader + "." + encodedPayload;
+    try {
+      final var signature = cryptoProvider.es256Signature();
+      signature.initSign(privateKey);
+      signature.update(signingInput.getBytes(StandardCharsets.US_ASCII));
+      return serializedHeader
+          + "."
+          + encodedPayload
+          + "."
+          + BASE64_URL.encodeToString(signature.sign());
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
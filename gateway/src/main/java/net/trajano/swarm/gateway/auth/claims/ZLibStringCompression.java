@@ -2,63 +2,149 @@ package net.trajano.swarm.gateway.auth.claims;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.zip.DataFormatException;
 import java.util.zip.Deflater;
-import java.util.zip.DeflaterOutputStream;
-import java.util.zip.InflaterOutputStream;
-import org.apache.commons.io.input.ReaderInputStream;
-import org.apache.commons.io.output.CountingOutputStream;
-import org.apache.commons.io.output.WriterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
 import reactor.core.publisher.Mono;
 
 /**
  * This is a simplistic implementation of using ZLib compression with strings. It is meant to be
  * used with a small strings and not meant for large streaming content.
+ *
+ * <p>The {@link Deflater} and {@link Inflater} instances are kept per thread and reset between
+ * uses as creating them allocates native memory. Data can optionally be compressed with a preset
+ * dictionary of the JSON and base64url fragments found in the tokens. Decompression detects
+ * whether the dictionary was used so data compressed either way can be read.
  */
 public final class ZLibStringCompression {
 
+  /**
+   * Fragments of the JWS header and claims. The dictionary must not change once tokens are issued
+   * with it as they could no longer be decompressed.
+   */
+  private static final String[] DICTIONARY_FRAGMENTS = {
+    "\",\"aud\":[\"",
+    "\"],\"",
+    "\",\"iat\":",
+    ",\"nbf\":",
+    "\",\"exp\":",
+    ",\"exp\":",
+    "\",\"jti\":\"",
+    "\",\"iss\":\"",
+    "{\"iss\":\"",
+    "{\"sub\":\"",
+    "\",\"alg\":\"ES256\"}",
+    "{\"kid\":\""
+  };
+
+  private static final byte[] DICTIONARY = buildDictionary();
+
+  private static final ThreadLocal<Deflater[]> DEFLATERS =
+      ThreadLocal.withInitial(() -> new Deflater[Deflater.BEST_COMPRESSION + 1]);
+
+  private static final ThreadLocal<Inflater> INFLATERS = ThreadLocal.withInitial(Inflater::new);
+
+  private static final int ZLIB_DEFLATE_METHOD = 0x78;
+
   private ZLibStringCompression() {}
 
-  public static void compress(InputStream source, OutputStream target) throws IOException {
+  /**
+   * Builds the dictionary with the fragments as JSON followed by their base64url encodings at
+   * each of the three byte alignments. Only the characters that do not depend on the neighbouring
+   * bytes are kept. The most common strings are last as they are the closest to the data.
+   */
+  private static byte[] buildDictionary() {
 
-    try (var out = new DeflaterOutputStream(target, new Deflater(Deflater.BEST_COMPRESSION));
-        var in = new BufferedInputStream(source)) {
-      int c = in.read();
-      while (c != -1) {
-        out.write(c);
-        c = in.read();
+    final var dictionary = new StringBuilder();
+    for (final var fragment : DICTIONARY_FRAGMENTS) {
+      dictionary.append(fragment);
+    }
+    final var encoder = Base64.getUrlEncoder().withoutPadding();
+    for (final var fragment : DICTIONARY_FRAGMENTS) {
+      final var bytes = fragment.getBytes(StandardCharsets.UTF_8);
+      for (int offset = 0; offset < 3; ++offset) {
+        final var aligned = new byte[offset + bytes.length];
+        System.arraycopy(bytes, 0, aligned, offset, bytes.length);
+        final var encoded = encoder.encodeToString(aligned);
+        final var start = (offset * 8 + 5) / 6;
+        final var end = aligned.length % 3 == 0 ? encoded.length() : encoded.length() - 1;
+        dictionary.append(encoded, start, end);
       }
-      out.flush();
     }
+    return dictionary.toString().getBytes(StandardCharsets.US_ASCII);
+  }
+
+  public static void compress(InputStream source, OutputStream target) throws IOException {
+
+    target.write(compressToBytes(source.readAllBytes(), Deflater.BEST_COMPRESSION, false));
+    target.flush();
   }
 
   public static void decompress(InputStream source, OutputStream target, int limit)
       throws IOException {
 
-    try (var countingOutputStream = new CountingOutputStream(target);
-        var out = new InflaterOutputStream(countingOutputStream);
-        var in = new BufferedInputStream(source)) {
-      int c = in.read();
-      while (c != -1) {
-        if (countingOutputStream.getByteCount() > limit) {
-          throw new IOException("Decompressing past limit %d bytes".formatted(limit));
+    final var inflated = new int[1];
+    final var out = inflate(source.readAllBytes(), limit, inflated);
+    target.write(out, 0, inflated[0]);
+    target.flush();
+  }
+
+  public static byte[] compressToBytes(String input) {
+
+    return compressToBytes(input, Deflater.BEST_COMPRESSION, false);
+  }
+
+  /**
+   * Compresses the string.
+   *
+   * @param input string to compress
+   * @param level compression level from {@link Deflater#DEFAULT_COMPRESSION} to {@link
+   *     Deflater#BEST_COMPRESSION}
+   * @param presetDictionary if true, the data is compressed with the preset dictionary
+   * @return compressed bytes
+   */
+  public static byte[] compressToBytes(String input, int level, boolean presetDictionary) {
+
+    return compressToBytes(input.getBytes(StandardCharsets.UTF_8), level, presetDictionary);
+  }
+
+  private static byte[] compressToBytes(byte[] input, int level, boolean presetDictionary) {
+
+    final var deflater = deflater(level);
+    try {
+      if (presetDictionary) {
+        deflater.setDictionary(DICTIONARY);
+      }
+      deflater.setInput(input);
+      deflater.finish();
+      var out = new byte[input.length / 2 + 64];
+      var length = 0;
+      while (!deflater.finished()) {
+        if (length == out.length) {
+          out = Arrays.copyOf(out, out.length * 2);
         }
-        out.write(c);
-        c = in.read();
+        length += deflater.deflate(out, length, out.length - length);
       }
-      out.flush();
+      return Arrays.copyOf(out, length);
+    } finally {
+      deflater.reset();
     }
   }
 
-  public static byte[] compressToBytes(String input) {
+  private static Deflater deflater(int level) {
 
-    try (var in = new ReaderInputStream(new StringReader(input), StandardCharsets.UTF_8);
-        var out = new ByteArrayOutputStream()) {
-      compress(in, out);
-      return out.toByteArray();
-    } catch (IOException e) {
-      throw new UncheckedIOException(e);
+    if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+      throw new IllegalArgumentException("invalid compression level %d".formatted(level));
+    }
+    final var index = level == Deflater.DEFAULT_COMPRESSION ? 6 : level;
+    final var deflaters = DEFLATERS.get();
+    if (deflaters[index] == null) {
+      deflaters[index] = new Deflater(index);
     }
+    return deflaters[index];
   }
 
   public static String compress(String input) {
@@ -66,6 +152,61 @@ public final class ZLibStringCompression {
     return Base64.getUrlEncoder().withoutPadding().encodeToString(compressToBytes(input));
   }
 
+  /**
+   * Compresses the string to base64url.
+   *
+   * @param input string to compress
+   * @param level compression level
+   * @param presetDictionary if true, the data is compressed with the preset dictionary
+   * @return compressed string
+   */
+  public static String compress(String input, int level, boolean presetDictionary) {
+
+    return Base64.getUrlEncoder()
+        .withoutPadding()
+        .encodeToString(compressToBytes(input, level, presetDictionary));
+  }
+
+  /**
+   * Inflates the input into an array that is not grown past the limit.
+   *
+   * @param input compressed bytes
+   * @param limit limit decompression amount in bytes
+   * @param inflated receives the number of bytes in the returned array that were inflated
+   * @return array containing the inflated bytes
+   * @throws IOException data is not valid or exceeds the limit
+   */
+  private static byte[] inflate(byte[] input, int limit, int[] inflated) throws IOException {
+
+    final var inflater = INFLATERS.get();
+    try {
+      inflater.setInput(input);
+      var out = new byte[Math.min(limit, input.length * 4 + 64) + 1];
+      var length = 0;
+      while (!inflater.finished()) {
+        if (length == out.length) {
+          out = Arrays.copyOf(out, Math.min(limit + 1, out.length * 2));
+        }
+        final var count = inflater.inflate(out, length, out.length - length);
+        length += count;
+        if (length > limit) {
+          throw new IOException("Decompressing past limit %d bytes".formatted(limit));
+        }
+        if (count == 0 && inflater.needsDictionary()) {
+          inflater.setDictionary(DICTIONARY);
+        } else if (count == 0 && !inflater.finished() && inflater.needsInput()) {
+          throw new EOFException("Unexpected end of ZLIB input stream");
+        }
+      }
+      inflated[0] = length;
+      return out;
+    } catch (DataFormatException e) {
+      throw new ZipException(e.getMessage());
+    } finally {
+      inflater.reset();
+    }
+  }
+
   /**
    * Decompresses to a string bounded by a limit.
    *
@@ -74,11 +215,10 @@ public final class ZLibStringCompression {
    * @return decompressed string output.
    */
   public static String decompressUtf8(byte[] input, int limit) {
-    try (var sw = new StringWriter();
-        var out = new WriterOutputStream(sw, StandardCharsets.UTF_8);
-        var in = new ByteArrayInputStream(input)) {
-      decompress(in, out, limit);
-      return sw.toString();
+    try {
+      final var inflated = new int[1];
+      final var out = inflate(input, limit, inflated);
+      return new String(out, 0, inflated[0], StandardCharsets.UTF_8);
     } catch (IOException e) {
       throw new UncheckedIOException(e);
     }
@@ -90,13 +230,36 @@ public final class ZLibStringCompression {
   }
 
   public static String decompressIfNeeded(String input, int limit) {
-    if (input.startsWith("eNo") || input.startsWith("eNp")) {
+    if (isCompressed(input)) {
       return decompress(input, limit);
     } else {
       return input;
     }
   }
 
+  /**
+   * Checks if the base64url string starts with a ZLib header. The header varies with the
+   * compression level and the use of a dictionary, but never matches the start of a JWS which
+   * is {@code eyJ}.
+   *
+   * @param input string
+   * @return true if the string is compressed.
+   */
+  public static boolean isCompressed(String input) {
+
+    if (input.length() < 4) {
+      return false;
+    }
+    final byte[] header;
+    try {
+      header = Base64.getUrlDecoder().decode(input.substring(0, 4));
+    } catch (IllegalArgumentException e) {
+      return false;
+    }
+    return header[0] == ZLIB_DEFLATE_METHOD
+        && (ZLIB_DEFLATE_METHOD << 8 | header[1] & 0xff) % 31 == 0;
+  }
+
   public static Mono<String> decompressToMono(String input, int limit) {
     try {
       return Mono.just(decompressUtf8(Base64.getUrlDecoder().decode(input), limit));
@@ -1,16 +1,13 @@
 package net.trajano.swarm.gateway.auth.clientmanagement;
 
 import net.trajano.swarm.gateway.common.AuthProperties;
+import net.trajano.swarm.gateway.web.EncodedGatewayResponses;
 import net.trajano.swarm.gateway.web.InvalidClientGatewayResponse;
 import org.springframework.cloud.gateway.filter.GatewayFilter;
 import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
 import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
-import org.springframework.core.ResolvableType;
-import org.springframework.core.codec.Hints;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.MediaType;
-import org.springframework.http.codec.json.Jackson2JsonEncoder;
 import org.springframework.stereotype.Component;
 import reactor.core.publisher.Mono;
 
@@ -20,18 +17,22 @@ public class ClientValidGatewayFilterFactory
 
   private final AuthProperties authProperties;
   private final ClientManagementService clientManagementService;
+  private final EncodedGatewayResponses encodedGatewayResponses;
 
   public ClientValidGatewayFilterFactory(
-      final AuthProperties authProperties, final ClientManagementService clientManagementService) {
+      final AuthProperties authProperties,
+      final ClientManagementService clientManagementService,
+      final EncodedGatewayResponses encodedGatewayResponses) {
 
     super(ClientValidGatewayFilterFactory.Config.class);
     this.authProperties = authProperties;
     this.clientManagementService = clientManagementService;
+    this.encodedGatewayResponses = encodedGatewayResponses;
   }
 
   /**
-   * Provides an exchange function that will check if the client ID is valid and if not will switch
-   * to an {@link InvalidClientGatewayResponse}.
+   * Provides an exchange function that will check if the client ID is valid and if not will
+   * respond with an {@link InvalidClientGatewayResponse}.
    *
    * @param config config
    * @return exchange function
@@ -39,31 +40,26 @@ public class ClientValidGatewayFilterFactory
   @Override
   public GatewayFilter apply(Config config) {
 
+    final var challenge =
+        encodedGatewayResponses.challenge("Basic", authProperties.getRealm(), null);
     return (exchange, chain) ->
         clientManagementService
             .obtainClientIdFromServerExchange(exchange)
-            .doOnError(
+            .doOnNext(clientId -> exchange.getAttributes().put("clientId", clientId))
+            .then(Mono.just(Boolean.TRUE))
+            .onErrorResume(
                 InvalidClientException.class,
                 ex -> {
                   ServerWebExchangeUtils.setResponseStatus(exchange, HttpStatus.UNAUTHORIZED);
-                  final var serverHttpResponse = exchange.getResponse();
-                  serverHttpResponse
-                      .getHeaders()
-                      .add(
-                          HttpHeaders.WWW_AUTHENTICATE,
-                          "Basic realm=\"%s\"".formatted(authProperties.getRealm()));
-                  serverHttpResponse.writeWith(
-                      new Jackson2JsonEncoder()
-                          .encode(
-                              Mono.fromSupplier(InvalidClientGatewayResponse::new),
-                              serverHttpResponse.bufferFactory(),
-                              ResolvableType.forClass(InvalidClientGatewayResponse.class),
-                              MediaType.APPLICATION_JSON,
-                              Hints.from(Hints.LOG_PREFIX_HINT, exchange.getLogPrefix())));
                   ServerWebExchangeUtils.setAlreadyRouted(exchange);
+                  final var serverHttpResponse = exchange.getResponse();
+                  serverHttpResponse.setStatusCode(HttpStatus.UNAUTHORIZED);
+                  serverHttpResponse.getHeaders().add(HttpHeaders.WWW_AUTHENTICATE, challenge);
+                  return encodedGatewayResponses
+                      .writeError(serverHttpResponse, EncodedGatewayResponses.INVALID_CLIENT)
+                      .thenReturn(Boolean.FALSE);
                 })
-            .doOnNext(clientId -> exchange.getAttributes().put("clientId", clientId))
-            .then(chain.filter(exchange));
+            .flatMap(valid -> valid ? chain.filter(exchange) : Mono.empty());
   }
 
   record Config() {}
@@ -0,0 +1,237 @@
+package net.trajano.swarm.gateway.datasource.redis;
+
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECPoint;
+import java.security.spec.ECPublicKeySpec;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.UUID;
+import net.trajano.swarm.gateway.auth.claims.JwtFunctions;
+import net.trajano.swarm.gateway.auth.claims.ZLibStringCompression;
+import net.trajano.swarm.gateway.common.AuthProperties;
+import net.trajano.swarm.gateway.redis.UserSession;
+import org.jose4j.jwk.EllipticCurveJsonWebKey;
+import org.jose4j.jwk.JsonWebKey;
+import org.jose4j.jwt.JwtClaims;
+import org.jose4j.jwt.consumer.InvalidJwtException;
+import org.jose4j.keys.EllipticCurves;
+import org.jose4j.lang.JoseException;
+import org.springframework.stereotype.Component;
+
+/**
+ * Versioned binary form of a {@link UserSession} stored as a single Redis value. The layout of
+ * version 1 in network byte order is:
+ *
+ * <ol>
+ *   <li>version byte
+ *   <li>{@code issuedOn}, {@code accessTokenExpiresAt} and {@code accessTokenIssuedOn} as epoch
+ *       second longs
+ *   <li>{@code clientId}, {@code accessToken} and {@code refreshToken} as length prefixed UTF-8
+ *   <li>verification key type byte, either the key ID followed by the raw 32 byte X and Y
+ *       coordinates of a P-256 key or the JWK JSON for any other key. Only the key ID and the
+ *       point are kept for P-256 keys.
+ *   <li>ZLib compressed secret claims JSON, length prefixed
+ * </ol>
+ *
+ * The JWT ID is part of the key and the TTL is kept by Redis so neither is stored. The secret
+ * claims and the verification key are only decoded when they are accessed.
+ */
+@Component
+public class CompactUserSessionCodec {
+
+  private static final int COORDINATE_LENGTH = 32;
+
+  private static final byte JSON_KEY = 1;
+
+  private static final byte P256_KEY = 0;
+
+  private static final byte VERSION_1 = 1;
+
+  private final int jwtSizeLimitInBytes;
+
+  public CompactUserSessionCodec(AuthProperties authProperties) {
+
+    jwtSizeLimitInBytes = authProperties.getJwtSizeLimitInBytes();
+  }
+
+  private static byte[] readBytes(ByteBuffer buffer) {
+
+    final var bytes = new byte[buffer.getInt()];
+    buffer.get(bytes);
+    return bytes;
+  }
+
+  private static String readString(ByteBuffer buffer) {
+
+    return new String(readBytes(buffer), StandardCharsets.UTF_8);
+  }
+
+  private static JsonWebKey mapJsonToJwk(String json) {
+
+    try {
+      return JsonWebKey.Factory.newJwk(json);
+    } catch (JoseException e) {
+      throw new IllegalArgumentException(e);
+    }
+  }
+
+  private static JsonWebKey mapP256PointToJwk(String kid, byte[] x, byte[] y) {
+
+    try {
+      final var publicKey =
+          KeyFactory.getInstance(JwtFunctions.ALGORITHM_EC)
+              .generatePublic(
+                  new ECPublicKeySpec(
+                      new ECPoint(new BigInteger(1, x), new BigInteger(1, y)),
+                      EllipticCurves.P256));
+      final var jwk = new EllipticCurveJsonWebKey((ECPublicKey) publicKey);
+      jwk.setKeyId(kid);
+      return jwk;
+    } catch (GeneralSecurityException e) {
+      throw new IllegalArgumentException(e);
+    }
+  }
+
+  private static byte[] toCoordinate(BigInteger value) {
+
+    final var bytes = value.toByteArray();
+    if (bytes.length == COORDINATE_LENGTH) {
+      return bytes;
+    } else if (bytes.length > COORDINATE_LENGTH) {
+      return Arrays.copyOfRange(bytes, bytes.length - COORDINATE_LENGTH, bytes.length);
+    }
+    final var padded = new byte[COORDINATE_LENGTH];
+    System.arraycopy(bytes, 0, padded, COORDINATE_LENGTH - bytes.length, bytes.length);
+    return padded;
+  }
+
+  private static void writeBytes(ByteBuffer buffer, byte[] bytes) {
+
+    buffer.putInt(bytes.length);
+    buffer.put(bytes);
+  }
+
+  /**
+   * Decodes the session.
+   *
+   * @param jwtId JWT ID from the key
+   * @param encoded encoded session
+   * @param ttl TTL in seconds
+   * @return user session whose secret claims and verification key are decoded on access
+   * @throws IllegalArgumentException the encoding is not supported or is truncated
+   */
+  public UserSession decode(UUID jwtId, byte[] encoded, long ttl) {
+
+    try {
+      final var buffer = ByteBuffer.wrap(encoded);
+      final var version = buffer.get();
+      if (version != VERSION_1) {
+        throw new IllegalArgumentException(
+            "Unsupported user session version %d".formatted(version));
+      }
+      final var builder =
+          UserSession.builder()
+              .jwtId(jwtId)
+              .ttl(ttl)
+              .issuedOn(Instant.ofEpochSecond(buffer.getLong()))
+              .accessTokenExpiresAt(Instant.ofEpochSecond(buffer.getLong()))
+              .accessTokenIssuedOn(Instant.ofEpochSecond(buffer.getLong()))
+              .clientId(readString(buffer))
+              .accessToken(readString(buffer))
+              .refreshToken(readString(buffer));
+
+      if (buffer.get() == P256_KEY) {
+        final var kid = readString(buffer);
+        final var x = new byte[COORDINATE_LENGTH];
+        final var y = new byte[COORDINATE_LENGTH];
+        buffer.get(x).get(y);
+        builder.verificationJwkDecoder(() -> mapP256PointToJwk(kid, x, y));
+      } else {
+        final var jwkJson = readString(buffer);
+        builder.verificationJwkDecoder(() -> mapJsonToJwk(jwkJson));
+      }
+
+      final var compressedClaims = readBytes(buffer);
+      return builder
+          .secretClaimsDecoder(() -> mapCompressedClaimsToJwtClaims(compressedClaims))
+          .build();
+    } catch (BufferUnderflowException e) {
+      throw new IllegalArgumentException("Truncated user session", e);
+    }
+  }
+
+  /**
+   * Encodes the session.
+   *
+   * @param userSession user session
+   * @return encoded session
+   */
+  public byte[] encode(UserSession userSession) {
+
+    final var clientId = userSession.getClientId().getBytes(StandardCharsets.UTF_8);
+    final var accessToken = userSession.getAccessToken().getBytes(StandardCharsets.UTF_8);
+    final var refreshToken = userSession.getRefreshToken().getBytes(StandardCharsets.UTF_8);
+    final var compressedClaims =
+        ZLibStringCompression.compressToBytes(userSession.getSecretClaims().toJson());
+    final var jwk = userSession.getVerificationJwk();
+    final byte[] jwkBytes;
+    final boolean p256;
+    if (jwk instanceof EllipticCurveJsonWebKey ecJwk
+        && EllipticCurves.P_256.equals(ecJwk.getCurveName())
+        && jwk.getKeyId() != null) {
+      p256 = true;
+      jwkBytes = jwk.getKeyId().getBytes(StandardCharsets.UTF_8);
+    } else {
+      p256 = false;
+      jwkBytes = jwk.toJson().getBytes(StandardCharsets.UTF_8);
+    }
+
+    final var buffer =
+        ByteBuffer.allocate(
+            1
+                + Long.BYTES * 3
+                + Integer.BYTES * 5
+                + clientId.length
+                + accessToken.length
+                + refreshToken.length
+                + 1
+                + jwkBytes.length
+                + (p256 ? COORDINATE_LENGTH * 2 : 0)
+                + compressedClaims.length);
+    buffer
+        .put(VERSION_1)
+        .putLong(userSession.getIssuedOn().getEpochSecond())
+        .putLong(userSession.getAccessTokenExpiresAt().getEpochSecond())
+        .putLong(userSession.getAccessTokenIssuedOn().getEpochSecond());
+    writeBytes(buffer, clientId);
+    writeBytes(buffer, accessToken);
+    writeBytes(buffer, refreshToken);
+    if (p256) {
+      final var point = ((EllipticCurveJsonWebKey) jwk).getECPublicKey().getW();
+      buffer.put(P256_KEY);
+      writeBytes(buffer, jwkBytes);
+      buffer.put(toCoordinate(point.getAffineX())).put(toCoordinate(point.getAffineY()));
+    } else {
+      buffer.put(JSON_KEY);
+      writeBytes(buffer, jwkBytes);
+    }
+    writeBytes(buffer, compressedClaims);
+    return buffer.array();
+  }
+
+  private JwtClaims mapCompressedClaimsToJwtClaims(byte[] compressedClaims) {
+
+    try {
+      return JwtClaims.parse(
+          ZLibStringCompression.decompressUtf8(compressedClaims, jwtSizeLimitInBytes));
+    } catch (InvalidJwtException e) {
+      throw new IllegalArgumentException(e);
+    }
+  }
+}
@@ -3,13 +3,18 @@ package net.trajano.swarm.gateway.datasource.redis;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import net.trajano.swarm.gateway.PenaltyScheduler;
 import net.trajano.swarm.gateway.auth.AuthServiceResponse;
 import net.trajano.swarm.gateway.auth.IdentityService;
 import net.trajano.swarm.gateway.auth.IdentityServiceResponse;
 import net.trajano.swarm.gateway.auth.OAuthTokenResponse;
 import net.trajano.swarm.gateway.auth.claims.ClaimsService;
+import net.trajano.swarm.gateway.auth.claims.CryptoProvider;
+import net.trajano.swarm.gateway.auth.claims.ExpiredTokenException;
+import net.trajano.swarm.gateway.auth.claims.KeyIdVerificationKeyResolver;
 import net.trajano.swarm.gateway.auth.claims.ZLibStringCompression;
 import net.trajano.swarm.gateway.common.AuthProperties;
 import net.trajano.swarm.gateway.jwks.JwksProvider;
@@ -17,13 +22,13 @@ import net.trajano.swarm.gateway.redis.UserSession;
 import net.trajano.swarm.gateway.web.GatewayResponse;
 import net.trajano.swarm.gateway.web.UnauthorizedGatewayResponse;
 import org.jose4j.jwa.AlgorithmConstraints;
+import org.jose4j.jwk.JsonWebKeySet;
 import org.jose4j.jws.AlgorithmIdentifiers;
 import org.jose4j.jwt.JwtClaims;
 import org.jose4j.jwt.MalformedClaimException;
 import org.jose4j.jwt.consumer.InvalidJwtException;
 import org.jose4j.jwt.consumer.JwtConsumer;
 import org.jose4j.jwt.consumer.JwtConsumerBuilder;
-import org.jose4j.keys.resolvers.JwksVerificationKeyResolver;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -68,6 +73,15 @@ public class RedisClaimsService implements ClaimsService {
 
   private final RedisJtiExtractorService redisJtiExtractorService;
 
+  private final VerifiedTokenCache verifiedTokenCache;
+
+  private final CryptoProvider cryptoProvider;
+
+  private final RefreshCoalescer refreshCoalescer;
+
+  /** Consumer built for the last key set seen. */
+  private final AtomicReference<JwksJwtConsumer> jwksJwtConsumer = new AtomicReference<>();
+
   @Autowired
   @Qualifier("penalty") private Scheduler penaltyScheduler;
 
@@ -120,6 +134,9 @@ public class RedisClaimsService implements ClaimsService {
                 log.trace("jwt={}", jwt);
                 return jwtConsumer.processToClaims(jwt);
               } catch (InvalidJwtException e) {
+                if (e.hasExpired()) {
+                  throw new ExpiredTokenException(e);
+                }
                 throw new SecurityException(e);
               } finally {
                 final long l = System.currentTimeMillis() - start;
@@ -133,27 +150,47 @@ public class RedisClaimsService implements ClaimsService {
         .publishOn(jwtConsumerScheduler);
   }
 
+  /**
+   * Obtains the consumer for the key set. {@link JwksProvider#jsonWebKeySet()} emits the same
+   * instance until the signing block rolls over so the consumer is only built once per key set.
+   *
+   * @param jsonWebKeySet key set
+   * @return consumer verifying access tokens against the key set
+   */
+  private JwtConsumer mapJsonWebKeySetToJwtConsumer(JsonWebKeySet jsonWebKeySet) {
+
+    final var current = jwksJwtConsumer.get();
+    if (current != null && current.jsonWebKeySet() == jsonWebKeySet) {
+      return current.jwtConsumer();
+    }
+    final var jwtConsumer =
+        new JwtConsumerBuilder()
+            .setVerificationKeyResolver(
+                new KeyIdVerificationKeyResolver(jsonWebKeySet.getJsonWebKeys()))
+            .setRequireSubject()
+            .setRequireExpirationTime()
+            .setRequireJwtId()
+            .setExpectedAudience(true, properties.getIssuer())
+            .setAllowedClockSkewInSeconds(properties.getAllowedClockSkewInSeconds())
+            .setJwsAlgorithmConstraints(
+                AlgorithmConstraints.ConstraintType.PERMIT,
+                AlgorithmIdentifiers.ECDSA_USING_P256_CURVE_AND_SHA256)
+            .setJwsProviderContext(cryptoProvider.providerContext())
+            .build();
+    jwksJwtConsumer.set(new JwksJwtConsumer(jsonWebKeySet, jwtConsumer));
+    return jwtConsumer;
+  }
+
   @Override
   @Transactional(readOnly = true)
   public Mono<JwtClaims> getClaims(String accessToken) {
 
-    var jwtConsumerMono =
-        jwksProvider
-            .jsonWebKeySet()
-            .map(
-                t ->
-                    new JwtConsumerBuilder()
-                        .setVerificationKeyResolver(
-                            new JwksVerificationKeyResolver(t.getJsonWebKeys()))
-                        .setRequireSubject()
-                        .setRequireExpirationTime()
-                        .setRequireJwtId()
-                        .setExpectedAudience(true, properties.getIssuer())
-                        .setAllowedClockSkewInSeconds(properties.getAllowedClockSkewInSeconds())
-                        .setJwsAlgorithmConstraints(
-                            AlgorithmConstraints.ConstraintType.PERMIT,
-                            AlgorithmIdentifiers.ECDSA_USING_P256_CURVE_AND_SHA256)
-                        .build());
+    final var verifiedClaims = getVerifiedClaims(accessToken);
+    if (verifiedClaims != null) {
+      return Mono.just(verifiedClaims);
+    }
+
+    var jwtConsumerMono = jwksProvider.jsonWebKeySet().map(this::mapJsonWebKeySetToJwtConsumer);
 
     final Mono<String> jwtMono =
         Mono.fromCallable(
@@ -166,9 +203,15 @@ public class RedisClaimsService implements ClaimsService {
         .flatMap(
             c -> {
               try {
+                final var jwtId = c.getJwtId();
+                final var invalidationCount = verifiedTokenCache.invalidationCount(jwtId);
                 return redisUserSessions
-                    .findById(c.getJwtId())
+                    .findById(jwtId)
                     .switchIfEmpty(Mono.error(SecurityException::new))
+                    .doOnNext(
+                        userSession ->
+                            verifiedTokenCache.putIfNotInvalidated(
+                                accessToken, c, invalidationCount))
                     .map(i -> c);
               } catch (MalformedClaimException e) {
                 return Mono.error(e);
@@ -180,6 +223,12 @@ public class RedisClaimsService implements ClaimsService {
             ex -> securityLog.warn("security error obtaining claims: {}", ex.getMessage()));
   }
 
+  @Override
+  public JwtClaims getVerifiedClaims(String accessToken) {
+
+    return verifiedTokenCache.getIfPresent(accessToken);
+  }
+
   /**
    * Refreshes the token and returns a new authentication response. May throw a {@link
    * IllegalArgumentException} if the token is not valid or expired.
@@ -195,8 +244,15 @@ public class RedisClaimsService implements ClaimsService {
       String refreshToken, HttpHeaders headers, String clientId) {
 
     return extractJti(refreshToken, headers, clientId)
-        .flatMap(jti -> redisUserSessions.findById(jti))
-        .flatMap(userSession -> refreshIfNeeded(userSession, headers, clientId))
+        .flatMap(
+            jti ->
+                refreshCoalescer.provideRefresh(
+                    jti,
+                    () ->
+                        redisUserSessions
+                            .findById(jti)
+                            .flatMap(
+                                userSession -> refreshIfNeeded(userSession, headers, clientId))))
         .map(
             oauthResponse -> AuthServiceResponse.builder().operationResponse(oauthResponse).build())
         .switchIfEmpty(
@@ -220,6 +276,7 @@ public class RedisClaimsService implements ClaimsService {
             })
         .doOnError(ex -> log.error("error processing refresh request", ex))
         .onErrorReturn(
+            ex -> !PenaltyScheduler.isRejection(ex),
             AuthServiceResponse.builder()
                 .operationResponse(new UnauthorizedGatewayResponse())
                 .statusCode(HttpStatus.UNAUTHORIZED)
@@ -314,4 +371,6 @@ public class RedisClaimsService implements ClaimsService {
                     refreshContext.getRefreshToken(),
                     refreshContext.getAccessTokenExpiresAt()));
   }
+
+  private record JwksJwtConsumer(JsonWebKeySet jsonWebKeySet, JwtConsumer jwtConsumer) {}
 }
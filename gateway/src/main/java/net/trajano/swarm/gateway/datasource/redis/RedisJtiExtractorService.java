@@ -9,6 +9,8 @@ import lombok.Data;
 import lombok.RequiredArgsConstructor;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
+import net.trajano.swarm.gateway.auth.claims.CryptoProvider;
+import net.trajano.swarm.gateway.auth.claims.KeyIdVerificationKeyResolver;
 import net.trajano.swarm.gateway.common.AuthProperties;
 import net.trajano.swarm.gateway.redis.UserSession;
 import org.jose4j.jwa.AlgorithmConstraints;
@@ -16,7 +18,6 @@ import org.jose4j.jws.AlgorithmIdentifiers;
 import org.jose4j.jwt.MalformedClaimException;
 import org.jose4j.jwt.consumer.InvalidJwtException;
 import org.jose4j.jwt.consumer.JwtConsumerBuilder;
-import org.jose4j.keys.resolvers.JwksVerificationKeyResolver;
 import org.springframework.stereotype.Component;
 import reactor.core.publisher.Mono;
 
@@ -26,6 +27,7 @@ import reactor.core.publisher.Mono;
 public class RedisJtiExtractorService {
   private final AuthProperties properties;
   private final RedisUserSessions redisUserSessions;
+  private final CryptoProvider cryptoProvider;
 
   public Mono<String> extractJti(String refreshToken, String clientId) {
     // The JWT that's reconstituted from the original token
@@ -48,7 +50,7 @@ public class RedisJtiExtractorService {
         .map(
             jwks ->
                 new JwtConsumerBuilder()
-                    .setVerificationKeyResolver(new JwksVerificationKeyResolver(jwks))
+                    .setVerificationKeyResolver(new KeyIdVerificationKeyResolver(jwks))
                     .setRequireExpirationTime()
                     .setRequireJwtId()
                     .setExpectedAudience(true, clientId)
@@ -56,6 +58,7 @@ public class RedisJtiExtractorService {
                     .setJwsAlgorithmConstraints(
                         AlgorithmConstraints.ConstraintType.PERMIT,
                         AlgorithmIdentifiers.ECDSA_USING_P256_CURVE_AND_SHA256)
+                    .setJwsProviderContext(cryptoProvider.providerContext())
                     .build())
         .flatMap(
             consumer -> {
@@ -7,10 +7,10 @@ import java.util.UUID;
 import java.util.concurrent.ThreadLocalRandom;
 import lombok.RequiredArgsConstructor;
 import net.trajano.swarm.gateway.auth.IdentityServiceResponse;
-import net.trajano.swarm.gateway.auth.claims.JwtFunctions;
 import net.trajano.swarm.gateway.auth.claims.ZLibStringCompression;
 import net.trajano.swarm.gateway.common.AuthProperties;
 import net.trajano.swarm.gateway.jwks.JwksProvider;
+import net.trajano.swarm.gateway.jwks.SigningKeyRegistry;
 import net.trajano.swarm.gateway.redis.UserSession;
 import org.jose4j.jwt.JwtClaims;
 import org.jose4j.jwt.MalformedClaimException;
@@ -33,6 +33,8 @@ public class RedisStoreAndSignIdentityService {
   private final AuthProperties properties;
   private final JwksProvider jwksProvider;
 
+  private final SigningKeyRegistry signingKeyRegistry;
+
   private final RedisUserSessions redisUserSessions;
 
   private final Scheduler jwtSigningScheduler;
@@ -147,13 +149,16 @@ public class RedisStoreAndSignIdentityService {
 
     return Mono.fromSupplier(
             () ->
-                JwtFunctions.sign(
-                    refreshContext.getAccessTokenSigningKeyPair(),
-                    refreshContext.getAccessTokenClaims().toJson()))
+                signingKeyRegistry
+                    .signingKeyFor(refreshContext.getAccessTokenSigningKeyPair())
+                    .sign(refreshContext.getAccessTokenClaims().toJson()))
         .map(
             signedAccessToken -> {
               if (properties.isCompressClaims()) {
-                return ZLibStringCompression.compress(signedAccessToken);
+                return ZLibStringCompression.compress(
+                    signedAccessToken,
+                    properties.getCompressClaimsLevel(),
+                    properties.isCompressClaimsWithDictionary());
               } else {
                 return signedAccessToken;
               }
@@ -164,9 +169,9 @@ public class RedisStoreAndSignIdentityService {
   private Mono<RefreshContext> signRefreshToken(RefreshContext refreshContext) {
     return Mono.fromSupplier(
             () ->
-                JwtFunctions.refreshSign(
-                    refreshContext.getRefreshTokenSigningKeyPair(),
-                    refreshContext.getRefreshTokenClaims().toJson()))
+                signingKeyRegistry
+                    .signingKeyFor(refreshContext.getRefreshTokenSigningKeyPair())
+                    .refreshSign(refreshContext.getRefreshTokenClaims().toJson()))
         .map(refreshContext::withRefreshToken);
   }
 
@@ -206,8 +211,8 @@ public class RedisStoreAndSignIdentityService {
             .withAccessTokenExpiresAt(refreshContext.getAccessTokenExpiresAt())
             .withAccessTokenIssuedOn(now)
             .withVerificationJwk(
-                JwtFunctions.getVerificationKeyFromJwks(
-                        refreshContext.getRefreshTokenSigningKeyPair())
-                    .orElseThrow()));
+                signingKeyRegistry
+                    .signingKeyFor(refreshContext.getRefreshTokenSigningKeyPair())
+                    .verificationJwk()));
   }
 }
@@ -1,11 +1,12 @@
 package net.trajano.swarm.gateway.datasource.redis;
 
-import java.time.Duration;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.util.List;
-import java.util.Map;
 import java.util.UUID;
-import lombok.RequiredArgsConstructor;
+import net.trajano.swarm.gateway.common.AuthProperties;
 import net.trajano.swarm.gateway.redis.RedisKeyBlocks;
 import net.trajano.swarm.gateway.redis.UserSession;
 import org.jose4j.jwk.JsonWebKey;
@@ -13,13 +14,52 @@ import org.jose4j.jwt.JwtClaims;
 import org.jose4j.jwt.consumer.InvalidJwtException;
 import org.jose4j.lang.JoseException;
 import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.data.redis.serializer.RedisElementReader;
+import org.springframework.data.redis.serializer.RedisElementWriter;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+/**
+ * User sessions stored in Redis. Reading and writing a session are each done with a single script
+ * call so the session and its expiry are handled atomically in one round trip. Scripts are sent
+ * with {@code EVALSHA} and only loaded when Redis does not have them yet.
+ *
+ * <p>Sessions are stored as a hash of strings or, if {@link
+ * AuthProperties#isCompactUserSessions()} is set, as a single value encoded by {@link
+ * CompactUserSessionCodec}. Both forms are read so the setting can be changed while sessions exist.
+ * The secret claims and verification key are only parsed when they are accessed.
+ */
 @Component
-@RequiredArgsConstructor
 public class RedisUserSessions {
 
+  /**
+   * Returns the TTL followed by either the compact value or the hash fields. Missing fields are
+   * returned as empty strings as a nil would end the reply. The reactive template emits the
+   * elements of the reply one at a time.
+   */
+  @SuppressWarnings("rawtypes")
+  private static final RedisScript<List> FIND_SCRIPT =
+      RedisScript.of(
+          """
+          local ttl = tostring(redis.call('TTL', KEYS[1]))
+          if redis.call('TYPE', KEYS[1]).ok == 'string' then
+            return {ttl, redis.call('GET', KEYS[1])}
+          end
+          local values = redis.call('HMGET', KEYS[1], unpack(ARGV))
+          for i = 1, #ARGV do
+            if not values[i] then
+              values[i] = ''
+            end
+          end
+          table.insert(values, 1, ttl)
+          return values
+          """,
+          List.class);
+
   private static final List<String> HASH_KEYS =
       List.of(
           "secretClaims",
@@ -31,10 +71,86 @@ public class RedisUserSessions {
           "accessTokenIssuedOn",
           "clientId");
 
+  /** Reads the script replies as bytes as the compact value is not a string. */
+  @SuppressWarnings({"rawtypes", "unchecked"})
+  private static final RedisElementReader<List> REPLY_READER =
+      (RedisElementReader) RedisElementReader.from(RedisSerializer.byteArray());
+
+  /** Stores the compact value given after the TTL with the TTL. */
+  private static final RedisScript<Long> SAVE_COMPACT_SCRIPT =
+      RedisScript.of(
+          """
+          redis.call('SET', KEYS[1], ARGV[2], 'EX', ARGV[1])
+          return 1
+          """,
+          Long.class);
+
+  /**
+   * Sets the field and value pairs after the TTL and applies the TTL. A compact value is replaced.
+   */
+  private static final RedisScript<Long> SAVE_SCRIPT =
+      RedisScript.of(
+          """
+          if redis.call('TYPE', KEYS[1]).ok == 'string' then
+            redis.call('DEL', KEYS[1])
+          end
+          redis.call('HSET', KEYS[1], unpack(ARGV, 2))
+          return redis.call('EXPIRE', KEYS[1], ARGV[1])
+          """,
+          Long.class);
+
+  private final CompactUserSessionCodec compactUserSessionCodec;
+
+  private final boolean compactUserSessions;
+
   private final ReactiveStringRedisTemplate redisTemplate;
 
   private final RedisKeyBlocks redisKeyBlocks;
 
+  private final Timer deleteTimer;
+
+  private final Timer findTimer;
+
+  private final Timer saveTimer;
+
+  private final UserSessionNearCache userSessionNearCache;
+
+  public RedisUserSessions(
+      AuthProperties authProperties,
+      CompactUserSessionCodec compactUserSessionCodec,
+      ReactiveStringRedisTemplate redisTemplate,
+      RedisKeyBlocks redisKeyBlocks,
+      UserSessionNearCache userSessionNearCache,
+      MeterRegistry meterRegistry) {
+
+    this.compactUserSessionCodec = compactUserSessionCodec;
+    this.compactUserSessions = authProperties.isCompactUserSessions();
+    this.redisTemplate = redisTemplate;
+    this.redisKeyBlocks = redisKeyBlocks;
+    this.userSessionNearCache = userSessionNearCache;
+    deleteTimer = operationTimer("delete", meterRegistry);
+    findTimer = operationTimer("find", meterRegistry);
+    saveTimer = operationTimer("save", meterRegistry);
+  }
+
+  private static Timer operationTimer(String operation, MeterRegistry meterRegistry) {
+
+    return Timer.builder("gateway.redis.user.sessions")
+        .description("Latency of user session operations on Redis")
+        .tag("operation", operation)
+        .publishPercentileHistogram()
+        .register(meterRegistry);
+  }
+
+  private static <T> Mono<T> timed(Timer timer, Mono<T> mono) {
+
+    return Mono.defer(
+        () -> {
+          final var sample = Timer.start();
+          return mono.doFinally(signalType -> sample.stop(timer));
+        });
+  }
+
   private JsonWebKey convertToJsonWebKey(String json) {
 
     try {
@@ -59,68 +175,154 @@ public class RedisUserSessions {
     }
   }
 
+  /**
+   * Deletes the user session and notifies the gateways so they stop trusting access tokens of the
+   * session that they have already verified.
+   *
+   * @param userSession user session
+   * @return number of keys deleted
+   */
   public Mono<Long> delete(UserSession userSession) {
 
-    return redisTemplate.delete(redisKeyBlocks.forUserSession(userSession.getJwtId()));
+    userSessionNearCache.invalidate(userSession.getJwtId().toString());
+    return timed(
+        deleteTimer,
+        redisTemplate
+            .delete(redisKeyBlocks.forUserSession(userSession.getJwtId()))
+            .flatMap(
+                deleted ->
+                    redisTemplate
+                        .convertAndSend(
+                            redisKeyBlocks.revokedUserSessionsChannel(),
+                            userSession.getJwtId().toString())
+                        .thenReturn(deleted)));
   }
 
+  /**
+   * Finds the user session, from {@link UserSessionNearCache} if it is there.
+   *
+   * @param jwtId JWT ID
+   * @return user session
+   */
   public Mono<UserSession> findById(String jwtId) {
 
-    final var key = redisKeyBlocks.forUserSession(UUID.fromString(jwtId));
+    final var uuid = UUID.fromString(jwtId);
+    final var cacheKey = uuid.toString();
+    final var cached = userSessionNearCache.getIfPresent(cacheKey);
+    if (cached != null) {
+      return Mono.just(cached);
+    }
 
-    return findByRedisKey(key);
+    final var invalidationCount = userSessionNearCache.invalidationCount(cacheKey);
+    return findByRedisKey(redisKeyBlocks.forUserSession(uuid))
+        .doOnNext(
+            userSession ->
+                userSessionNearCache.putIfNotInvalidated(
+                    cacheKey, userSession, invalidationCount));
   }
 
   private Mono<UserSession> findByRedisKey(final String key) {
 
-    final var ttl = redisTemplate.getExpire(key);
-    final var objectValues = redisTemplate.<String, String>opsForHash().multiGet(key, HASH_KEYS);
-
-    return Mono.zip(objectValues, ttl)
-        .map(
-            t ->
-                UserSession.builder()
-                    .jwtId(redisKeyBlocks.forUserSessionRedisKey(key))
-                    .secretClaims(convertToJwtClaims(t.getT1().get(0)))
-                    .issuedOn(Instant.parse(t.getT1().get(1)))
-                    .verificationJwk(convertToJsonWebKey(t.getT1().get(2)))
-                    .accessToken(t.getT1().get(3))
-                    .refreshToken(t.getT1().get(4))
-                    .accessTokenExpiresAt(Instant.parse(t.getT1().get(5)))
-                    .accessTokenIssuedOn(Instant.parse(t.getT1().get(6)))
-                    .clientId(t.getT1().get(7))
-                    .ttl(t.getT2().toSeconds())
-                    .build());
+    return timed(
+        findTimer,
+        redisTemplate
+            .execute(
+                FIND_SCRIPT,
+                List.of(key),
+                HASH_KEYS,
+                RedisElementWriter.from(RedisSerializer.string()),
+                REPLY_READER)
+            .cast(byte[].class)
+            .collectList()
+            .filter(RedisUserSessions::isFound)
+            .map(reply -> mapReplyToUserSession(key, reply)));
+  }
+
+  /**
+   * Checks if the {@link #FIND_SCRIPT} reply has a session. A missing key has a TTL of -2 and an
+   * empty string for every hash field.
+   *
+   * @param reply script reply
+   * @return true if the reply has a session
+   */
+  private static boolean isFound(List<byte[]> reply) {
+
+    return reply.size() > 1
+        && !"-2".equals(new String(reply.get(0), StandardCharsets.US_ASCII))
+        && reply.stream().skip(1).anyMatch(bytes -> bytes.length > 0);
+  }
+
+  private UserSession mapReplyToUserSession(String key, List<byte[]> reply) {
+
+    final var jwtId = redisKeyBlocks.forUserSessionRedisKey(key);
+    final var ttl = Long.parseLong(new String(reply.get(0), StandardCharsets.US_ASCII));
+    if (reply.size() == 2) {
+      return compactUserSessionCodec.decode(jwtId, reply.get(1), ttl);
+    }
+
+    final var values =
+        reply.stream().skip(1).map(bytes -> new String(bytes, StandardCharsets.UTF_8)).toList();
+    return UserSession.builder()
+        .jwtId(jwtId)
+        .secretClaimsDecoder(() -> convertToJwtClaims(values.get(0)))
+        .issuedOn(Instant.parse(values.get(1)))
+        .verificationJwkDecoder(() -> convertToJsonWebKey(values.get(2)))
+        .accessToken(values.get(3))
+        .refreshToken(values.get(4))
+        .accessTokenExpiresAt(Instant.parse(values.get(5)))
+        .accessTokenIssuedOn(Instant.parse(values.get(6)))
+        .clientId(values.get(7))
+        .ttl(ttl)
+        .build();
   }
 
   public Mono<UserSession> save(final UserSession userSession) {
 
     final var key = redisKeyBlocks.forUserSession(userSession.getJwtId());
-    return redisTemplate
-        .<String, String>opsForHash()
-        .putAll(
-            key,
-            Map.of(
-                "secretClaims",
-                userSession.getSecretClaims().toJson(),
-                "issuedOn",
-                userSession.getIssuedOn().toString(),
-                "verificationJwk",
-                userSession.getVerificationJwk().toJson(),
-                "accessToken",
-                userSession.getAccessToken(),
-                "refreshToken",
-                userSession.getRefreshToken(),
-                "accessTokenExpiresAt",
-                userSession.getAccessTokenExpiresAt().toString(),
-                "accessTokenIssuedOn",
-                userSession.getAccessTokenIssuedOn().toString(),
-                "clientId",
-                userSession.getClientId()))
-        .filter(success -> success)
-        .flatMap(i -> redisTemplate.expire(key, Duration.ofSeconds(userSession.getTtl())))
-        .filter(success -> success)
-        .switchIfEmpty(Mono.error(IllegalStateException::new))
-        .thenReturn(userSession);
+    final Flux<Long> saveFlux;
+    if (compactUserSessions) {
+      saveFlux =
+          redisTemplate.execute(
+              SAVE_COMPACT_SCRIPT,
+              List.of(key),
+              List.of(
+                  String.valueOf(userSession.getTtl()).getBytes(StandardCharsets.US_ASCII),
+                  compactUserSessionCodec.encode(userSession)),
+              RedisElementWriter.from(RedisSerializer.byteArray()),
+              RedisElementReader.from(new GenericToStringSerializer<>(Long.class)));
+    } else {
+      saveFlux = redisTemplate.execute(SAVE_SCRIPT, List.of(key), hashArgs(userSession));
+    }
+    return timed(
+        saveTimer,
+        saveFlux
+            .doFinally(
+                signalType -> userSessionNearCache.invalidate(userSession.getJwtId().toString()))
+            .next()
+            .filter(expirySet -> expirySet == 1L)
+            .switchIfEmpty(Mono.error(IllegalStateException::new))
+            .thenReturn(userSession));
+  }
+
+  private List<String> hashArgs(UserSession userSession) {
+
+    return List.of(
+        String.valueOf(userSession.getTtl()),
+        "secretClaims",
+        userSession.getSecretClaims().toJson(),
+        "issuedOn",
+        userSession.getIssuedOn().toString(),
+        "verificationJwk",
+        userSession.getVerificationJwk().toJson(),
+        "accessToken",
+        userSession.getAccessToken(),
+        "refreshToken",
+        userSession.getRefreshToken(),
+        "accessTokenExpiresAt",
+        userSession.getAccessTokenExpiresAt().toString(),
+        "accessTokenIssuedOn",
+        userSession.getAccessTokenIssuedOn().toString(),
+        "clientId",
+        userSession.getClientId());
   }
 }
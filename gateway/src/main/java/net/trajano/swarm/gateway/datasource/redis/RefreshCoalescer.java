@@ -0,0 +1,179 @@
+package net.trajano.swarm.gateway.datasource.redis;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+import net.trajano.swarm.gateway.common.AuthProperties;
+import net.trajano.swarm.gateway.redis.RedisKeyBlocks;
+import net.trajano.swarm.gateway.web.GatewayResponse;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/**
+ * Single flight for refreshes of the same user session. Concurrent refreshes on this gateway
+ * subscribe to the one already in flight and get its result. If {@link
+ * AuthProperties#isRefreshLockEnabled()} is set, the refresh also takes a Redis lock. A gateway
+ * that finds the lock taken waits for it to be released, then runs the refresh itself, which sees
+ * the access token that was just issued and returns it without calling the identity service.
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(
+    prefix = "auth",
+    name = "datasource",
+    havingValue = "REDIS",
+    matchIfMissing = true)
+public class RefreshCoalescer {
+
+  private static final Duration LOCK_POLL_INTERVAL = Duration.ofMillis(50);
+
+  /** Deletes the lock only if it is still held with the token. */
+  private static final RedisScript<Long> RELEASE_LOCK_SCRIPT =
+      RedisScript.of(
+          """
+          if redis.call('GET', KEYS[1]) == ARGV[1] then
+            return redis.call('DEL', KEYS[1])
+          end
+          return 0
+          """,
+          Long.class);
+
+  private final Map<String, Mono<GatewayResponse>> inFlight = new ConcurrentHashMap<>();
+
+  private final Counter locallyCoalescedCounter;
+
+  private final Counter lockWaitCounter;
+
+  private final boolean lockEnabled;
+
+  private final Duration lockTimeout;
+
+  private final RedisKeyBlocks redisKeyBlocks;
+
+  private final ReactiveStringRedisTemplate redisTemplate;
+
+  public RefreshCoalescer(
+      AuthProperties authProperties,
+      RedisKeyBlocks redisKeyBlocks,
+      ReactiveStringRedisTemplate redisTemplate,
+      MeterRegistry meterRegistry) {
+
+    this.redisKeyBlocks = redisKeyBlocks;
+    this.redisTemplate = redisTemplate;
+    lockEnabled = authProperties.isRefreshLockEnabled();
+    lockTimeout = Duration.ofMillis(authProperties.getRefreshProcessingTimeoutInMillis());
+    locallyCoalescedCounter = coalescedCounter("local", meterRegistry);
+    lockWaitCounter = coalescedCounter("redis", meterRegistry);
+  }
+
+  private static Counter coalescedCounter(String scope, MeterRegistry meterRegistry) {
+
+    return Counter.builder("gateway.refresh.coalesced")
+        .description("Refreshes that waited for one already in progress for the same session")
+        .tag("scope", scope)
+        .register(meterRegistry);
+  }
+
+  /**
+   * Provides the result of the refresh for the session, sharing one already in progress.
+   *
+   * @param jwtId JWT ID of the user session
+   * @param refresh performs the refresh
+   * @return refresh result
+   */
+  public Mono<GatewayResponse> provideRefresh(
+      String jwtId, Supplier<Mono<GatewayResponse>> refresh) {
+
+    return Mono.defer(
+        () -> {
+          final var started = new boolean[1];
+          final var shared =
+              inFlight.computeIfAbsent(
+                  jwtId,
+                  k -> {
+                    started[0] = true;
+                    return provideSharedRefresh(k, refresh);
+                  });
+          if (!started[0]) {
+            locallyCoalescedCounter.increment();
+          }
+          return shared;
+        });
+  }
+
+  /**
+   * Refresh that is run once and replayed to every subscriber, including ones that subscribe after
+   * it completed but before it is removed from {@link #inFlight}. Only this refresh is removed so a
+   * newer one for the session is left alone.
+   *
+   * @param jwtId JWT ID of the user session
+   * @param refresh performs the refresh
+   * @return refresh result
+   */
+  private Mono<GatewayResponse> provideSharedRefresh(
+      String jwtId, Supplier<Mono<GatewayResponse>> refresh) {
+
+    final var shared = new AtomicReference<Mono<GatewayResponse>>();
+    shared.set(
+        provideLockedRefresh(jwtId, refresh)
+            .doFinally(signalType -> inFlight.remove(jwtId, shared.get()))
+            .cache());
+    return shared.get();
+  }
+
+  private Mono<GatewayResponse> provideLockedRefresh(
+      String jwtId, Supplier<Mono<GatewayResponse>> refresh) {
+
+    if (!lockEnabled) {
+      return Mono.defer(refresh);
+    }
+    final var lockKey = redisKeyBlocks.refreshLock(jwtId);
+    final var token = UUID.randomUUID().toString();
+    return redisTemplate
+        .opsForValue()
+        .setIfAbsent(lockKey, token, lockTimeout)
+        .flatMap(
+            acquired -> {
+              if (Boolean.TRUE.equals(acquired)) {
+                return Mono.usingWhen(
+                    Mono.just(token), t -> Mono.defer(refresh), t -> releaseLock(lockKey, t));
+              }
+              lockWaitCounter.increment();
+              return provideLockRelease(lockKey).then(Mono.defer(refresh));
+            });
+  }
+
+  /**
+   * Completes when the lock is gone or could have expired.
+   *
+   * @param lockKey lock key
+   * @return completion
+   */
+  private Mono<Boolean> provideLockRelease(String lockKey) {
+
+    final long maxPolls = lockTimeout.toMillis() / LOCK_POLL_INTERVAL.toMillis();
+    return redisTemplate
+        .hasKey(lockKey)
+        .filter(exists -> !exists)
+        .repeatWhenEmpty(repeats -> repeats.take(maxPolls).delayElements(LOCK_POLL_INTERVAL));
+  }
+
+  private Mono<Long> releaseLock(String lockKey, String token) {
+
+    return redisTemplate
+        .execute(RELEASE_LOCK_SCRIPT, List.of(lockKey), List.of(token))
+        .next()
+        .doOnError(e -> log.warn("unable to release refresh lock {}", lockKey, e))
+        .onErrorResume(e -> Mono.empty());
+  }
+}
@@ -0,0 +1,274 @@
+package net.trajano.swarm.gateway.datasource.redis;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.lettuce.core.RedisChannelHandler;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisConnectionException;
+import io.lettuce.core.RedisConnectionStateListener;
+import io.lettuce.core.TrackingArgs;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.push.PushMessage;
+import io.lettuce.core.codec.StringCodec;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.net.SocketAddress;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import lombok.extern.slf4j.Slf4j;
+import net.trajano.swarm.gateway.common.AuthProperties;
+import net.trajano.swarm.gateway.redis.RedisKeyBlocks;
+import net.trajano.swarm.gateway.redis.UserSession;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
+
+/**
+ * User sessions kept in memory in front of {@link RedisUserSessions}. A dedicated connection
+ * enables Redis 6 client side caching in broadcast mode for the user session key prefix, so any
+ * change to a session on any gateway, including its deletion or expiry, pushes an invalidation to
+ * every gateway. Entries are also dropped after {@link
+ * AuthProperties#getRevocationCheckIntervalInMillis()} and the whole cache is cleared whenever the
+ * tracking connection is lost as invalidations may have been missed.
+ *
+ * <p>The cache is disabled if {@link AuthProperties#getUserSessionCacheMaximumSize()} is zero or
+ * the connection factory is not a standalone Lettuce client. It is also disabled until the
+ * tracking connection is established, which is retried with a backoff so the gateway starts while
+ * Redis is unreachable.
+ */
+@Component
+@Slf4j
+public class UserSessionNearCache
+    implements InitializingBean, DisposableBean, RedisConnectionStateListener {
+
+  private static final String INVALIDATE = "invalidate";
+
+  private static final int INVALIDATION_STRIPES = 64;
+
+  private static final Duration CONNECT_MAX_BACKOFF = Duration.ofSeconds(30);
+
+  private static final Duration CONNECT_MIN_BACKOFF = Duration.ofMillis(500);
+
+  private final Cache<String, UserSession> cache;
+
+  private final ReactiveRedisConnectionFactory connectionFactory;
+
+  /**
+   * Invalidation counts striped by JWT ID so a lookup racing with an invalidation of the same
+   * session is not cached without every other invalidation in the cluster preventing it.
+   */
+  private final AtomicLongArray invalidations = new AtomicLongArray(INVALIDATION_STRIPES);
+
+  private final long maximumSize;
+
+  private final RedisKeyBlocks redisKeyBlocks;
+
+  private Disposable connectSubscription;
+
+  /** Connection receiving the invalidations, null until tracking is enabled. */
+  private volatile StatefulRedisConnection<String, String> trackingConnection;
+
+  public UserSessionNearCache(
+      AuthProperties authProperties,
+      ReactiveRedisConnectionFactory connectionFactory,
+      RedisKeyBlocks redisKeyBlocks,
+      MeterRegistry meterRegistry) {
+
+    this.connectionFactory = connectionFactory;
+    this.redisKeyBlocks = redisKeyBlocks;
+    maximumSize = authProperties.getUserSessionCacheMaximumSize();
+    cache =
+        Caffeine.newBuilder()
+            .maximumSize(maximumSize)
+            .expireAfterWrite(
+                Duration.ofMillis(authProperties.getRevocationCheckIntervalInMillis()))
+            .recordStats()
+            .build();
+    CaffeineCacheMetrics.monitor(meterRegistry, cache, "userSessions", List.of());
+    Gauge.builder("gateway.user.sessions.near.cache.hit.ratio", cache, c -> c.stats().hitRate())
+        .description("Ratio of user session lookups served from memory")
+        .register(meterRegistry);
+  }
+
+  @Override
+  public void afterPropertiesSet() {
+
+    if (maximumSize == 0) {
+      return;
+    }
+    if (!(connectionFactory instanceof LettuceConnectionFactory lettuceConnectionFactory)
+        || !(lettuceConnectionFactory.getNativeClient() instanceof RedisClient redisClient)) {
+      log.warn("user session near cache requires a standalone Lettuce client, disabling");
+      return;
+    }
+    redisClient.addListener(this);
+    connectSubscription =
+        Mono.fromCallable(() -> connectTracking(redisClient))
+            .subscribeOn(Schedulers.boundedElastic())
+            .doOnError(e -> log.warn("unable to connect user session tracking connection", e))
+            .retryWhen(
+                Retry.backoff(Long.MAX_VALUE, CONNECT_MIN_BACKOFF)
+                    .maxBackoff(CONNECT_MAX_BACKOFF)
+                    .filter(RedisConnectionException.class::isInstance))
+            .subscribe(
+                connection -> {
+                  log.info("user session tracking enabled");
+                  invalidateAll();
+                  trackingConnection = connection;
+                },
+                e -> log.warn("unable to enable user session tracking, disabling", e));
+  }
+
+  /**
+   * Connects and enables client side caching on the connection.
+   *
+   * @param redisClient Redis client
+   * @return tracking connection
+   */
+  private StatefulRedisConnection<String, String> connectTracking(RedisClient redisClient) {
+
+    final var connection = redisClient.connect();
+    try {
+      connection.addListener(this::onPushMessage);
+      connection.sync().clientTracking(trackingArgs());
+      return connection;
+    } catch (RuntimeException e) {
+      connection.close();
+      throw e;
+    }
+  }
+
+  @Override
+  public void destroy() {
+
+    if (connectSubscription != null) {
+      connectSubscription.dispose();
+    }
+    final var connection = trackingConnection;
+    if (connection != null) {
+      connection.close();
+    }
+  }
+
+  /**
+   * Obtains the cached user session.
+   *
+   * @param jwtId JWT ID
+   * @return user session or null if not cached
+   */
+  public UserSession getIfPresent(String jwtId) {
+
+    if (trackingConnection == null) {
+      return null;
+    }
+    return cache.getIfPresent(jwtId);
+  }
+
+  /**
+   * Removes the user session, used when the change is made by this gateway so it does not wait for
+   * the invalidation from Redis.
+   *
+   * @param jwtId JWT ID
+   */
+  public void invalidate(String jwtId) {
+
+    invalidations.incrementAndGet(stripe(jwtId));
+    cache.invalidate(jwtId);
+  }
+
+  private void invalidateAll() {
+
+    for (int i = 0; i < INVALIDATION_STRIPES; ++i) {
+      invalidations.incrementAndGet(i);
+    }
+    cache.invalidateAll();
+  }
+
+  /**
+   * Value to pass to {@link #putIfNotInvalidated(String, UserSession, long)} obtained before the
+   * user session is read from Redis.
+   *
+   * @param jwtId JWT ID
+   * @return invalidation count
+   */
+  public long invalidationCount(String jwtId) {
+
+    return invalidations.get(stripe(jwtId));
+  }
+
+  private void onPushMessage(PushMessage message) {
+
+    if (!INVALIDATE.equals(message.getType())) {
+      return;
+    }
+    final var content = message.getContent(StringCodec.UTF8::decodeKey);
+    if (content.size() < 2 || !(content.get(1) instanceof List<?> keys)) {
+      // a null key list means the database was flushed
+      invalidateAll();
+      return;
+    }
+    final var prefix = redisKeyBlocks.userSessionKeyPrefix();
+    for (final var key : keys) {
+      final var redisKey = String.valueOf(key);
+      if (redisKey.startsWith(prefix)) {
+        invalidate(redisKey.substring(prefix.length()));
+      }
+    }
+  }
+
+  @Override
+  public void onRedisConnected(RedisChannelHandler<?, ?> connection, SocketAddress socketAddress) {
+
+    if (connection == trackingConnection) {
+      log.info("user session tracking connection reestablished, clearing near cache");
+      invalidateAll();
+      trackingConnection.async().clientTracking(trackingArgs());
+    }
+  }
+
+  @Override
+  public void onRedisDisconnected(RedisChannelHandler<?, ?> connection) {
+
+    if (connection == trackingConnection) {
+      invalidateAll();
+    }
+  }
+
+  @Override
+  public void onRedisExceptionCaught(RedisChannelHandler<?, ?> connection, Throwable cause) {
+
+    // reconnection is handled by Lettuce
+  }
+
+  /**
+   * Caches the user session read from Redis unless an invalidation arrived while it was read.
+   *
+   * @param jwtId JWT ID
+   * @param userSession user session
+   * @param invalidationCount {@link #invalidationCount(String)} before the read
+   */
+  public void putIfNotInvalidated(String jwtId, UserSession userSession, long invalidationCount) {
+
+    if (trackingConnection != null && invalidations.get(stripe(jwtId)) == invalidationCount) {
+      cache.put(jwtId, userSession);
+    }
+  }
+
+  private static int stripe(String jwtId) {
+
+    return Math.floorMod(jwtId.hashCode(), INVALIDATION_STRIPES);
+  }
+
+  private TrackingArgs trackingArgs() {
+
+    return TrackingArgs.Builder.enabled().bcast().prefixes(redisKeyBlocks.userSessionKeyPrefix());
+  }
+}
@@ -0,0 +1,283 @@
+package net.trajano.swarm.gateway.datasource.redis;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import lombok.extern.slf4j.Slf4j;
+import net.trajano.swarm.gateway.common.AuthProperties;
+import net.trajano.swarm.gateway.redis.RedisKeyBlocks;
+import org.jose4j.jwt.JwtClaims;
+import org.jose4j.jwt.MalformedClaimException;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.ReactiveSubscription;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.util.retry.Retry;
+
+/**
+ * Claims of access tokens that have already been verified, so repeated calls with the same token
+ * skip the signature verification and the user session lookup. Entries are keyed by the SHA-256
+ * hash of the token so the tokens themselves are not kept. An entry expires when the token does
+ * or after {@link AuthProperties#getRevocationCheckIntervalInMillis()}, whichever is first, and is
+ * removed as soon as the revocation of its user session is published. The hashes are indexed by
+ * JWT ID so a revocation only touches the tokens of its user session.
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(
+    prefix = "auth",
+    name = "datasource",
+    havingValue = "REDIS",
+    matchIfMissing = true)
+public class VerifiedTokenCache implements InitializingBean, DisposableBean {
+
+  private static final int INVALIDATION_STRIPES = 64;
+
+  private static final Duration RESUBSCRIBE_MAX_BACKOFF = Duration.ofSeconds(30);
+
+  private static final Duration RESUBSCRIBE_MIN_BACKOFF = Duration.ofMillis(500);
+
+  private final Cache<String, JwtClaims> cache;
+
+  /**
+   * Hashes of the cached tokens keyed by the JWT ID of their user session. The sets are only
+   * modified while their key is locked by the map.
+   */
+  private final Map<String, Set<String>> hashesByJwtId = new ConcurrentHashMap<>();
+
+  /**
+   * Revocation counts striped by JWT ID so claims verified while their user session is revoked
+   * are not cached.
+   */
+  private final AtomicLongArray invalidations = new AtomicLongArray(INVALIDATION_STRIPES);
+
+  private final ReactiveStringRedisTemplate redisTemplate;
+
+  private final RedisKeyBlocks redisKeyBlocks;
+
+  private Disposable revocationSubscription;
+
+  public VerifiedTokenCache(
+      AuthProperties authProperties,
+      ReactiveStringRedisTemplate redisTemplate,
+      RedisKeyBlocks redisKeyBlocks,
+      MeterRegistry meterRegistry) {
+
+    this.redisTemplate = redisTemplate;
+    this.redisKeyBlocks = redisKeyBlocks;
+    cache =
+        Caffeine.newBuilder()
+            .maximumSize(authProperties.getVerifiedTokenCacheMaximumSize())
+            .expireAfter(
+                new VerifiedTokenExpiry(
+                    TimeUnit.MILLISECONDS.toNanos(
+                        authProperties.getRevocationCheckIntervalInMillis())))
+            .removalListener(
+                (String hash, JwtClaims jwtClaims, RemovalCause cause) ->
+                    unindex(hash, jwtClaims))
+            .recordStats()
+            .build();
+    CaffeineCacheMetrics.monitor(meterRegistry, cache, "verifiedTokens", List.of());
+  }
+
+  private static String getJwtId(JwtClaims jwtClaims) {
+
+    try {
+      return jwtClaims.getJwtId();
+    } catch (MalformedClaimException e) {
+      return null;
+    }
+  }
+
+  private static String hash(String accessToken) {
+
+    try {
+      return Base64.getUrlEncoder()
+          .withoutPadding()
+          .encodeToString(
+              MessageDigest.getInstance("SHA-256")
+                  .digest(accessToken.getBytes(StandardCharsets.US_ASCII)));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Subscribes to the revoked user sessions. If the subscription fails it is retried with a
+   * backoff, and the cache is cleared on every subscription as revocations published while it was
+   * down are lost.
+   */
+  @Override
+  public void afterPropertiesSet() {
+
+    revocationSubscription =
+        redisTemplate
+            .listenToChannel(redisKeyBlocks.revokedUserSessionsChannel())
+            .doOnSubscribe(subscription -> clear())
+            .doOnError(e -> log.warn("revoked user sessions subscription failed", e))
+            .map(ReactiveSubscription.Message::getMessage)
+            .retryWhen(
+                Retry.backoff(Long.MAX_VALUE, RESUBSCRIBE_MIN_BACKOFF)
+                    .maxBackoff(RESUBSCRIBE_MAX_BACKOFF))
+            .subscribe(this::revoke);
+  }
+
+  private void clear() {
+
+    for (int i = 0; i < INVALIDATION_STRIPES; ++i) {
+      invalidations.incrementAndGet(i);
+    }
+    cache.invalidateAll();
+    hashesByJwtId.clear();
+  }
+
+  @Override
+  public void destroy() {
+
+    revocationSubscription.dispose();
+  }
+
+  /**
+   * Obtains the verified claims of the access token.
+   *
+   * @param accessToken access token as sent by the client
+   * @return claims or null if the token has not been verified
+   */
+  public JwtClaims getIfPresent(String accessToken) {
+
+    return cache.getIfPresent(hash(accessToken));
+  }
+
+  /**
+   * Value to pass to {@link #putIfNotInvalidated(String, JwtClaims, long)} obtained before the
+   * user session is looked up.
+   *
+   * @param jwtId JWT ID of the user session
+   * @return invalidation count
+   */
+  public long invalidationCount(String jwtId) {
+
+    return invalidations.get(stripe(jwtId));
+  }
+
+  /**
+   * Records the claims of a verified access token unless its user session was revoked while it was
+   * looked up. Claims without a JWT ID are not cached as they cannot be revoked.
+   *
+   * @param accessToken access token as sent by the client
+   * @param jwtClaims verified claims
+   * @param invalidationCount {@link #invalidationCount(String)} before the user session lookup
+   */
+  public void putIfNotInvalidated(String accessToken, JwtClaims jwtClaims, long invalidationCount) {
+
+    final var jwtId = getJwtId(jwtClaims);
+    if (jwtId == null) {
+      return;
+    }
+    final var hash = hash(accessToken);
+    // checked while the JWT ID is locked so a revocation either sees the entry or is seen by it
+    hashesByJwtId.compute(
+        jwtId,
+        (k, hashes) -> {
+          if (invalidations.get(stripe(jwtId)) != invalidationCount) {
+            return hashes;
+          }
+          final var indexed = hashes == null ? new HashSet<String>() : hashes;
+          indexed.add(hash);
+          cache.put(hash, jwtClaims);
+          return indexed;
+        });
+  }
+
+  /**
+   * Removes the entries of a revoked user session.
+   *
+   * @param jwtId JWT ID of the user session
+   */
+  void revoke(String jwtId) {
+
+    log.debug("revoking verified tokens of {}", jwtId);
+    invalidations.incrementAndGet(stripe(jwtId));
+    final var hashes = hashesByJwtId.remove(jwtId);
+    if (hashes != null) {
+      cache.invalidateAll(hashes);
+    }
+  }
+
+  /**
+   * Removes the hash of an entry that has left the cache from the index, unless the token was
+   * cached again in the meantime.
+   *
+   * @param hash token hash
+   * @param jwtClaims claims of the entry
+   */
+  private static int stripe(String jwtId) {
+
+    return Math.floorMod(jwtId.hashCode(), INVALIDATION_STRIPES);
+  }
+
+  private void unindex(String hash, JwtClaims jwtClaims) {
+
+    final var jwtId = jwtClaims == null ? null : getJwtId(jwtClaims);
+    if (jwtId == null) {
+      return;
+    }
+    hashesByJwtId.computeIfPresent(
+        jwtId,
+        (k, hashes) -> {
+          if (!cache.asMap().containsKey(hash)) {
+            hashes.remove(hash);
+          }
+          return hashes.isEmpty() ? null : hashes;
+        });
+  }
+
+  private record VerifiedTokenExpiry(long revocationCheckIntervalNanos)
+      implements Expiry<String, JwtClaims> {
+
+    @Override
+    public long expireAfterCreate(String key, JwtClaims jwtClaims, long currentTime) {
+
+      try {
+        final var untilExpiration =
+            TimeUnit.MILLISECONDS.toNanos(
+                jwtClaims.getExpirationTime().getValueInMillis() - System.currentTimeMillis());
+        return Math.max(0, Math.min(untilExpiration, revocationCheckIntervalNanos));
+      } catch (MalformedClaimException e) {
+        return 0;
+      }
+    }
+
+    @Override
+    public long expireAfterRead(
+        String key, JwtClaims jwtClaims, long currentTime, long currentDuration) {
+
+      return currentDuration;
+    }
+
+    @Override
+    public long expireAfterUpdate(
+        String key, JwtClaims jwtClaims, long currentTime, long currentDuration) {
+
+      return expireAfterCreate(key, jwtClaims, currentTime);
+    }
+  }
+}
@@ -185,6 +185,24 @@ public class DockerServiceInstanceLister
     dockerClient.blockingClient().pingCmd().exec();
   }
 
+  /**
+   * Publishes a {@link ServiceInstancesChangedEvent} for the services whose instances differ.
+   *
+   * @param previous previous instances by service ID
+   * @param next current instances by service ID
+   */
+  private void publishChangedServices(
+      Map<String, List<ServiceInstance>> previous, Map<String, List<ServiceInstance>> next) {
+
+    final var changedServiceIds =
+        Stream.concat(previous.keySet().stream(), next.keySet().stream())
+            .filter(serviceId -> !Objects.equals(previous.get(serviceId), next.get(serviceId)))
+            .collect(Collectors.toSet());
+    if (!changedServiceIds.isEmpty()) {
+      publisher.publishEvent(new ServiceInstancesChangedEvent(this, changedServiceIds, next));
+    }
+  }
+
   /** Refreshes the service list. */
   public void refresh(boolean publish) {
     log.trace("refreshing publish={}", publish);
@@ -244,10 +262,14 @@ public class DockerServiceInstanceLister
             // don't bother doing anything if it is the same
             .flatMap(
                 next -> {
-                  if (next.equals(servicesRef.get())) {
+                  final var previous = servicesRef.get();
+                  if (next.equals(previous)) {
                     return Mono.empty();
                   } else {
                     servicesRef.set(next);
+                    if (publish) {
+                      publishChangedServices(previous, next);
+                    }
                     return Mono.just(next);
                   }
                 })
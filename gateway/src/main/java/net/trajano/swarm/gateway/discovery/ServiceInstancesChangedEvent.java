@@ -0,0 +1,41 @@
+package net.trajano.swarm.gateway.discovery;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import lombok.Getter;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Published by {@link DockerServiceInstanceLister} when the instances of one or more services have
+ * been added, removed or updated.
+ */
+@Getter
+public class ServiceInstancesChangedEvent extends ApplicationEvent {
+
+  /** Service IDs whose instances have changed. */
+  private final Set<String> serviceIds;
+
+  /** Current instances of every service, keyed by service ID. */
+  private final Map<String, List<ServiceInstance>> serviceInstances;
+
+  public ServiceInstancesChangedEvent(
+      Object source, Set<String> serviceIds, Map<String, List<ServiceInstance>> serviceInstances) {
+
+    super(source);
+    this.serviceIds = serviceIds;
+    this.serviceInstances = serviceInstances;
+  }
+
+  /**
+   * Obtains the current instances of a service.
+   *
+   * @param serviceId service ID
+   * @return instances, empty if the service is gone
+   */
+  public List<ServiceInstance> getServiceInstances(String serviceId) {
+
+    return serviceInstances.getOrDefault(serviceId, List.of());
+  }
+}
@@ -1,19 +1,51 @@
 package net.trajano.swarm.gateway.discovery.ratelimiter;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.List;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.cloud.gateway.filter.factory.RequestRateLimiterGatewayFilterFactory;
 import org.springframework.cloud.gateway.filter.ratelimit.KeyResolver;
 import org.springframework.cloud.gateway.filter.ratelimit.RateLimiter;
+import org.springframework.cloud.gateway.filter.ratelimit.RedisRateLimiter;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Component;
 
+/**
+ * Request rate limiter for the discovered routes. If the default rate limiter is the {@link
+ * RedisRateLimiter} and {@link RateLimiterProperties#isLeasingEnabled()} is set, it is fronted by a
+ * {@link LeasingRateLimiter}.
+ */
 @Component
 public class DiscoveryRequestRateLimiterGatewayFilterFactory
     extends RequestRateLimiterGatewayFilterFactory {
 
   public DiscoveryRequestRateLimiterGatewayFilterFactory(
       RateLimiter defaultRateLimiter,
-      @Qualifier("tokenKeyResolver") KeyResolver defaultKeyResolver) {
+      @Qualifier("tokenKeyResolver") KeyResolver defaultKeyResolver,
+      ReactiveStringRedisTemplate redisTemplate,
+      @Qualifier(RedisRateLimiter.REDIS_SCRIPT_NAME) RedisScript<List<Long>> script,
+      RateLimiterProperties rateLimiterProperties,
+      MeterRegistry meterRegistry) {
 
-    super(defaultRateLimiter, defaultKeyResolver);
+    super(
+        leasingRateLimiterIfEnabled(
+            defaultRateLimiter, redisTemplate, script, rateLimiterProperties, meterRegistry),
+        defaultKeyResolver);
+  }
+
+  private static RateLimiter<?> leasingRateLimiterIfEnabled(
+      RateLimiter<?> defaultRateLimiter,
+      ReactiveStringRedisTemplate redisTemplate,
+      RedisScript<List<Long>> script,
+      RateLimiterProperties rateLimiterProperties,
+      MeterRegistry meterRegistry) {
+
+    if (rateLimiterProperties.isLeasingEnabled()
+        && defaultRateLimiter instanceof RedisRateLimiter redisRateLimiter) {
+      return new LeasingRateLimiter(
+          redisRateLimiter, redisTemplate, script, rateLimiterProperties, meterRegistry);
+    }
+    return defaultRateLimiter;
   }
 }
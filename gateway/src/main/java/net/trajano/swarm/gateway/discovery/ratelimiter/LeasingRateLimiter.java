@@ -0,0 +1,289 @@
+package net.trajano.swarm.gateway.discovery.ratelimiter;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.gateway.filter.ratelimit.RateLimiter;
+import org.springframework.cloud.gateway.filter.ratelimit.RedisRateLimiter;
+import org.springframework.cloud.gateway.route.RouteDefinitionRouteLocator;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import reactor.core.publisher.Mono;
+
+/**
+ * Token bucket in front of {@link RedisRateLimiter} that leases tokens from the Redis bucket in
+ * batches and hands them out locally, so most allowed requests only take a compare and set rather
+ * than a script round trip. The batches are taken with the same script and keys as the Redis rate
+ * limiter so gateways with and without leasing share the bucket.
+ *
+ * <p>Every token handed out comes from the Redis bucket so the cluster wide limit is never
+ * exceeded. Leased tokens that are not used before the lease expires are lost, so each gateway
+ * may deny up to {@link RateLimiterProperties#getMaximumLeasedTokens()} requests per key that would
+ * otherwise be allowed. When the Redis bucket has fewer tokens than a lease, requests for the key
+ * are passed to the Redis rate limiter one at a time until the lease duration passes.
+ *
+ * <p>The configuration is that of the Redis rate limiter, which is bound from the {@code
+ * redis-rate-limiter} filter arguments.
+ */
+@Slf4j
+public class LeasingRateLimiter implements RateLimiter<RedisRateLimiter.Config> {
+
+  /** Buckets keyed by route ID then by rate limiter key. */
+  private final Map<String, Cache<String, Bucket>> buckets = new ConcurrentHashMap<>();
+
+  private final RedisRateLimiter delegate;
+
+  /** Leases in progress so only one request per key goes to Redis for tokens. */
+  private final Map<Bucket, Mono<Void>> inFlightLeases = new ConcurrentHashMap<>();
+
+  private final long leaseDurationInMillis;
+
+  private final Counter leasesDeniedCounter;
+
+  private final Counter leasesGrantedCounter;
+
+  private final Counter locallyAllowedCounter;
+
+  private final long maximumKeysPerRoute;
+
+  private final int maximumLeasedTokens;
+
+  private final ReactiveStringRedisTemplate redisTemplate;
+
+  private final RedisScript<List<Long>> script;
+
+  public LeasingRateLimiter(
+      RedisRateLimiter delegate,
+      ReactiveStringRedisTemplate redisTemplate,
+      RedisScript<List<Long>> script,
+      RateLimiterProperties rateLimiterProperties,
+      MeterRegistry meterRegistry) {
+
+    this.delegate = delegate;
+    this.redisTemplate = redisTemplate;
+    this.script = script;
+    leaseDurationInMillis = rateLimiterProperties.getLeaseDurationInMillis();
+    maximumKeysPerRoute = rateLimiterProperties.getMaximumKeysPerRoute();
+    maximumLeasedTokens = rateLimiterProperties.getMaximumLeasedTokens();
+    leasesGrantedCounter = leasesCounter("granted", meterRegistry);
+    leasesDeniedCounter = leasesCounter("denied", meterRegistry);
+    locallyAllowedCounter =
+        Counter.builder("gateway.ratelimiter.local")
+            .description("Requests allowed from leased tokens without going to Redis")
+            .register(meterRegistry);
+  }
+
+  /**
+   * Keys of the Redis bucket, the same as the ones used by {@link RedisRateLimiter}.
+   *
+   * @param id rate limiter key
+   * @return token and timestamp keys
+   */
+  private static List<String> keys(String id) {
+
+    final var prefix = "request_rate_limiter.{" + id;
+    return List.of(prefix + "}.tokens", prefix + "}.timestamp");
+  }
+
+  private static Counter leasesCounter(String outcome, MeterRegistry meterRegistry) {
+
+    return Counter.builder("gateway.ratelimiter.leases")
+        .description("Batches of tokens requested from the Redis rate limiter bucket")
+        .tag("outcome", outcome)
+        .register(meterRegistry);
+  }
+
+  @Override
+  public Map<String, RedisRateLimiter.Config> getConfig() {
+
+    return delegate.getConfig();
+  }
+
+  @Override
+  public Class<RedisRateLimiter.Config> getConfigClass() {
+
+    return delegate.getConfigClass();
+  }
+
+  @Override
+  public RedisRateLimiter.Config newConfig() {
+
+    return delegate.newConfig();
+  }
+
+  @Override
+  public Mono<Response> isAllowed(String routeId, String id) {
+
+    var routeConfig = getConfig().get(routeId);
+    if (routeConfig == null) {
+      routeConfig = getConfig().get(RouteDefinitionRouteLocator.DEFAULT_FILTERS);
+    }
+    if (routeConfig == null) {
+      return delegate.isAllowed(routeId, id);
+    }
+    final var requestedTokens = routeConfig.getRequestedTokens();
+    final var leasedTokens = Math.min(maximumLeasedTokens, routeConfig.getBurstCapacity());
+    if (leasedTokens <= requestedTokens) {
+      return delegate.isAllowed(routeId, id);
+    }
+
+    final var bucket =
+        buckets.computeIfAbsent(routeId, k -> newRouteBuckets()).get(id, k -> new Bucket());
+    final var now = System.currentTimeMillis();
+    final var tokensLeft = bucket.tryAcquire(requestedTokens, now);
+    if (tokensLeft >= 0) {
+      locallyAllowedCounter.increment();
+      return Mono.just(allowed(routeConfig, tokensLeft));
+    } else if (now < bucket.passThroughUntil) {
+      return delegate.isAllowed(routeId, id);
+    }
+
+    final var config = routeConfig;
+    return inFlightLeases
+        .computeIfAbsent(bucket, b -> provideSharedLease(b, id, config, leasedTokens))
+        .then(
+            Mono.defer(
+                () -> {
+                  final var tokensLeftAfterLease =
+                      bucket.tryAcquire(requestedTokens, System.currentTimeMillis());
+                  if (tokensLeftAfterLease >= 0) {
+                    return Mono.just(allowed(config, tokensLeftAfterLease));
+                  }
+                  return delegate.isAllowed(routeId, id);
+                }));
+  }
+
+  private Response allowed(RedisRateLimiter.Config routeConfig, long tokensLeft) {
+
+    if (!delegate.isIncludeHeaders()) {
+      return new Response(true, Map.of());
+    }
+    return new Response(true, delegate.getHeaders(routeConfig, tokensLeft));
+  }
+
+  private Cache<String, Bucket> newRouteBuckets() {
+
+    return Caffeine.newBuilder()
+        .maximumSize(maximumKeysPerRoute)
+        .expireAfterAccess(Duration.ofMillis(leaseDurationInMillis * 2))
+        .build();
+  }
+
+  /**
+   * Lease that is run once and replayed to every subscriber, including ones that subscribe after
+   * it completed but before it is removed from {@link #inFlightLeases}. Only this lease is removed
+   * so a newer one for the bucket is left alone.
+   *
+   * @param bucket local bucket
+   * @param id rate limiter key
+   * @param routeConfig route configuration
+   * @param leasedTokens tokens to take
+   * @return completion
+   */
+  private Mono<Void> provideSharedLease(
+      Bucket bucket, String id, RedisRateLimiter.Config routeConfig, int leasedTokens) {
+
+    final var lease = new AtomicReference<Mono<Void>>();
+    lease.set(
+        provideLease(bucket, id, routeConfig, leasedTokens)
+            .doFinally(signalType -> inFlightLeases.remove(bucket, lease.get()))
+            .cache());
+    return lease.get();
+  }
+
+  /**
+   * Takes a batch of tokens from the Redis bucket. If the bucket does not have enough, requests
+   * are passed through to the Redis rate limiter for the lease duration. Errors are logged and
+   * leave the bucket as is, the Redis rate limiter then decides what to do with the request.
+   *
+   * @param bucket local bucket
+   * @param id rate limiter key
+   * @param routeConfig route configuration
+   * @param leasedTokens tokens to take
+   * @return completion
+   */
+  private Mono<Void> provideLease(
+      Bucket bucket, String id, RedisRateLimiter.Config routeConfig, int leasedTokens) {
+
+    final var scriptArgs =
+        List.of(
+            String.valueOf(routeConfig.getReplenishRate()),
+            String.valueOf(routeConfig.getBurstCapacity()),
+            String.valueOf(Instant.now().getEpochSecond()),
+            String.valueOf(leasedTokens));
+    return redisTemplate
+        .execute(script, keys(id), scriptArgs)
+        .next()
+        .doOnNext(
+            results -> {
+              final var expiresAt = System.currentTimeMillis() + leaseDurationInMillis;
+              if (results.get(0) == 1L) {
+                leasesGrantedCounter.increment();
+                bucket.grant(leasedTokens, expiresAt);
+              } else {
+                leasesDeniedCounter.increment();
+                bucket.passThroughUntil = expiresAt;
+              }
+            })
+        .doOnError(e -> log.warn("unable to lease rate limiter tokens for {}", id, e))
+        .onErrorResume(e -> Mono.empty())
+        .then();
+  }
+
+  /** Tokens leased for a key. */
+  private static final class Bucket {
+
+    private final AtomicLong tokens = new AtomicLong();
+
+    private volatile long expiresAt;
+
+    /** Requests are passed to the Redis rate limiter until this time. */
+    private volatile long passThroughUntil;
+
+    /**
+     * Adds leased tokens. Tokens left from a lease that has not expired are kept, as they were
+     * already taken from the Redis bucket.
+     *
+     * @param leasedTokens tokens leased
+     * @param leaseExpiresAt when the tokens expire
+     */
+    void grant(long leasedTokens, long leaseExpiresAt) {
+
+      if (System.currentTimeMillis() < expiresAt) {
+        tokens.addAndGet(leasedTokens);
+      } else {
+        tokens.set(leasedTokens);
+      }
+      expiresAt = leaseExpiresAt;
+    }
+
+    /**
+     * Takes tokens from the lease.
+     *
+     * @param requestedTokens tokens to take
+     * @param now current time
+     * @return tokens left, negative if there were not enough or the lease expired
+     */
+    long tryAcquire(int requestedTokens, long now) {
+
+      if (now >= expiresAt) {
+        return -1;
+      }
+      for (var available = tokens.get(); available >= requestedTokens; available = tokens.get()) {
+        if (tokens.compareAndSet(available, available - requestedTokens)) {
+          return available - requestedTokens;
+        }
+      }
+      return -1;
+    }
+  }
+}
@@ -0,0 +1,35 @@
+package net.trajano.swarm.gateway.discovery.ratelimiter;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "rate-limiter")
+@Data
+public class RateLimiterProperties {
+
+  /**
+   * Unused leased tokens are discarded after this. The tokens were already taken from the bucket
+   * in Redis so this only makes the limit stricter.
+   */
+  private long leaseDurationInMillis = 1000;
+
+  /**
+   * If true, tokens are leased from the Redis bucket in batches and handed out locally. Otherwise
+   * every request runs the Redis rate limiter script. Each gateway may hold up to {@link
+   * #maximumLeasedTokens} unused tokens per key that the other replicas cannot use, so with N
+   * replicas a key can be denied up to N - 1 leases below its burst capacity. Only enable this when
+   * the burst capacity is large relative to that.
+   */
+  private boolean leasingEnabled;
+
+  /** Maximum number of keys per route holding leased tokens. */
+  private long maximumKeysPerRoute = 10000;
+
+  /**
+   * Tokens leased at a time, capped to the burst capacity of the route. This bounds the error of
+   * the cluster wide limit, each gateway holds at most this many unused tokens per key.
+   */
+  private int maximumLeasedTokens = 5;
+}
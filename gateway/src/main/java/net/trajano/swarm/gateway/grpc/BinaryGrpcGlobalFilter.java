@@ -0,0 +1,276 @@
+package net.trajano.swarm.gateway.grpc;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.*;
+
+import io.grpc.Channel;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.NettyRoutingFilter;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+/**
+ * This is a global filter that routes Unary GRPC calls from clients that already speak protobuf.
+ * The serialized request is passed to the backend as is and the serialized response is returned
+ * unchanged, so no {@link com.google.protobuf.DynamicMessage} is built.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class BinaryGrpcGlobalFilter implements GlobalFilter, Ordered {
+
+  public static final MediaType APPLICATION_GRPC_WEB = new MediaType("application", "grpc-web");
+
+  public static final MediaType APPLICATION_GRPC_WEB_PROTO =
+      new MediaType("application", "grpc-web+proto");
+
+  public static final MediaType APPLICATION_X_PROTOBUF = new MediaType("application", "x-protobuf");
+
+  private static final byte DATA_FRAME = 0x00;
+
+  private static final int FRAME_HEADER_LENGTH = 5;
+
+  private static final byte TRAILER_FRAME = (byte) 0x80;
+
+  private final ChannelProvider channelProvider;
+  private final MethodDescriptorRegistry methodDescriptorRegistry;
+  private final UnaryCallOptionsFactory unaryCallOptionsFactory;
+  private final GrpcProperties grpcProperties;
+  private final Scheduler grpcScheduler;
+
+  private static byte[] frameHeader(byte frameType, int length) {
+
+    return ByteBuffer.allocate(FRAME_HEADER_LENGTH).put(frameType).putInt(length).array();
+  }
+
+  private static boolean isGrpcWeb(MediaType contentType) {
+
+    return contentType != null
+        && (APPLICATION_GRPC_WEB.equalsTypeAndSubtype(contentType)
+            || APPLICATION_GRPC_WEB_PROTO.equalsTypeAndSubtype(contentType));
+  }
+
+  /**
+   * Reads the serialized message from the request body and releases the buffer. gRPC-Web bodies
+   * contain a single uncompressed data frame.
+   *
+   * @param dataBuffer request body
+   * @param grpcWeb gRPC-Web framing is used
+   * @return serialized message
+   */
+  private static byte[] mapDataBufferToMessageBytes(DataBuffer dataBuffer, boolean grpcWeb) {
+
+    try {
+      if (grpcWeb) {
+        final var frameHeader = new byte[FRAME_HEADER_LENGTH];
+        if (dataBuffer.readableByteCount() < FRAME_HEADER_LENGTH) {
+          throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Missing gRPC-Web frame");
+        }
+        dataBuffer.read(frameHeader);
+        final var frameHeaderBuffer = ByteBuffer.wrap(frameHeader);
+        if (frameHeaderBuffer.get() != DATA_FRAME
+            || frameHeaderBuffer.getInt() != dataBuffer.readableByteCount()) {
+          throw new ResponseStatusException(
+              HttpStatus.BAD_REQUEST, "Expected a single uncompressed gRPC-Web data frame");
+        }
+      }
+      final var messageBytes = new byte[dataBuffer.readableByteCount()];
+      dataBuffer.read(messageBytes);
+      return messageBytes;
+    } finally {
+      DataBufferUtils.release(dataBuffer);
+    }
+  }
+
+  /**
+   * Writes a gRPC-Web trailers-only response carrying the status of the failed call.
+   *
+   * @param exchange exchange
+   * @param status status
+   * @return completion
+   */
+  private static Mono<Void> writeGrpcWebStatus(ServerWebExchange exchange, Status status) {
+
+    final var headers = exchange.getResponse().getHeaders();
+    headers.setContentType(APPLICATION_GRPC_WEB_PROTO);
+    headers.add("grpc-status", String.valueOf(status.getCode().value()));
+    if (status.getDescription() != null) {
+      headers.add(
+          "grpc-message",
+          URLEncoder.encode(status.getDescription(), StandardCharsets.UTF_8).replace("+", "%20"));
+    }
+    return exchange.getResponse().setComplete();
+  }
+
+  private Mono<byte[]> sendMessage(
+      ServerWebExchange exchange,
+      Channel managedChannel,
+      byte[] request,
+      MethodDescriptor<byte[], byte[]> passthroughMethodDescriptor) {
+
+    if (passthroughMethodDescriptor.getType() != MethodDescriptor.MethodType.UNARY) {
+      return Mono.error(
+          () ->
+              new IllegalStateException(
+                  "Expected Unary, but got %s for %s"
+                      .formatted(
+                          passthroughMethodDescriptor.getType(),
+                          passthroughMethodDescriptor.getFullMethodName())));
+    }
+
+    return ReactiveClientCalls.unaryCall(
+        managedChannel,
+        passthroughMethodDescriptor,
+        unaryCallOptionsFactory.create(exchange),
+        request);
+  }
+
+  @Override
+  public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+
+    if (!isAccepted(exchange)) {
+      return chain.filter(exchange);
+    }
+
+    ServerWebExchangeUtils.setAlreadyRouted(exchange);
+
+    final Response<ServiceInstance> r =
+        exchange.getRequiredAttribute(GATEWAY_LOADBALANCER_RESPONSE_ATTR);
+
+    final URI uri = exchange.getRequiredAttribute(GATEWAY_REQUEST_URL_ATTR);
+    final var managedChannel = channelProvider.obtainFor(r.getServer());
+    final var grpcWeb = isGrpcWeb(exchange.getRequest().getHeaders().getContentType());
+
+    final var methodDescriptorsMono =
+        methodDescriptorRegistry.provideMethodDescriptors(
+            r.getServer().getServiceId(), uri, managedChannel);
+
+    final var requestBytesMono =
+        DataBufferUtils.join(
+                exchange.getRequest().getBody(), grpcProperties.getMaxRequestSizeInBytes())
+            .onErrorMap(
+                DataBufferLimitException.class,
+                e -> new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE, e.getMessage(), e))
+            .map(dataBuffer -> mapDataBufferToMessageBytes(dataBuffer, grpcWeb))
+            .defaultIfEmpty(new byte[0]);
+
+    final Mono<Void> responseMono =
+        chain
+            .filter(exchange)
+            .then(Mono.zip(methodDescriptorsMono, requestBytesMono))
+            .flatMap(
+                t ->
+                    sendMessage(
+                        exchange,
+                        managedChannel,
+                        t.getT2(),
+                        t.getT1().passthroughMethodDescriptor()))
+            .flatMap(
+                responseBytes ->
+                    grpcWeb
+                        ? writeGrpcWebResponse(exchange, responseBytes)
+                        : writeProtobufResponse(exchange, responseBytes));
+
+    if (grpcWeb) {
+      return responseMono
+          .onErrorResume(
+              StatusRuntimeException.class, e -> writeGrpcWebStatus(exchange, e.getStatus()))
+          .subscribeOn(grpcScheduler);
+    } else {
+      return responseMono.subscribeOn(grpcScheduler);
+    }
+  }
+
+  /** Same level as Netty filter */
+  @Override
+  public int getOrder() {
+
+    return NettyRoutingFilter.ORDER;
+  }
+
+  /**
+   * The exchange is accepted if all the following conditions hold true:
+   *
+   * <ul>
+   *   <li>{@link
+   *       org.springframework.cloud.gateway.support.ServerWebExchangeUtils#GATEWAY_SCHEME_PREFIX_ATTR}
+   *       is {@code grpc}. That is set by the {@link GrpcGatewayFilterFactory}.
+   *   <li>{@link ServerHttpRequest#getMethod()} is {@link HttpMethod#POST}
+   *   <li>{@link ServerHttpRequest#getPath()} } contains exactly two non-separator segments
+   *   <li>{@link HttpHeaders#getContentType()} is {@link #APPLICATION_X_PROTOBUF}, {@link
+   *       #APPLICATION_GRPC_WEB} or {@link #APPLICATION_GRPC_WEB_PROTO}
+   * </ul>
+   *
+   * @param exchange exchange
+   * @return true if accepted
+   */
+  private boolean isAccepted(ServerWebExchange exchange) {
+
+    final var contentType = exchange.getRequest().getHeaders().getContentType();
+    return ("grpc".equals(exchange.getAttribute(GATEWAY_SCHEME_PREFIX_ATTR)))
+        && exchange.getRequest().getMethod() == HttpMethod.POST
+        && ((URI) exchange.getRequiredAttribute(GATEWAY_REQUEST_URL_ATTR))
+            .getPath()
+            .matches("/\\w+/\\w+")
+        && contentType != null
+        && (APPLICATION_X_PROTOBUF.equalsTypeAndSubtype(contentType) || isGrpcWeb(contentType));
+  }
+
+  /**
+   * Writes the message as a gRPC-Web data frame followed by a trailer frame with an OK status.
+   *
+   * @param exchange exchange
+   * @param messageBytes serialized message
+   * @return completion
+   */
+  private Mono<Void> writeGrpcWebResponse(ServerWebExchange exchange, byte[] messageBytes) {
+
+    final var trailer = "grpc-status:0\r\n".getBytes(StandardCharsets.US_ASCII);
+    final var exchangeResponse = exchange.getResponse();
+    final var bufferFactory = exchangeResponse.bufferFactory();
+    exchangeResponse.getHeaders().setContentType(APPLICATION_GRPC_WEB_PROTO);
+    exchangeResponse
+        .getHeaders()
+        .setContentLength(FRAME_HEADER_LENGTH * 2L + messageBytes.length + trailer.length);
+    return exchangeResponse.writeWith(
+        Flux.just(
+            bufferFactory.wrap(frameHeader(DATA_FRAME, messageBytes.length)),
+            bufferFactory.wrap(messageBytes),
+            bufferFactory.wrap(frameHeader(TRAILER_FRAME, trailer.length)),
+            bufferFactory.wrap(trailer)));
+  }
+
+  private Mono<Void> writeProtobufResponse(ServerWebExchange exchange, byte[] messageBytes) {
+
+    final var exchangeResponse = exchange.getResponse();
+    exchangeResponse.getHeaders().setContentType(APPLICATION_X_PROTOBUF);
+    exchangeResponse.getHeaders().setContentLength(messageBytes.length);
+    return exchangeResponse.writeWith(
+        Mono.just(exchangeResponse.bufferFactory().wrap(messageBytes)));
+  }
+}
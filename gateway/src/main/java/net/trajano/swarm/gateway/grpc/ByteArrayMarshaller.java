@@ -0,0 +1,31 @@
+package net.trajano.swarm.gateway.grpc;
+
+import io.grpc.MethodDescriptor;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+
+/** Passes serialized messages through as is without parsing them. */
+public final class ByteArrayMarshaller implements MethodDescriptor.Marshaller<byte[]> {
+
+  public static final ByteArrayMarshaller INSTANCE = new ByteArrayMarshaller();
+
+  private ByteArrayMarshaller() {}
+
+  @Override
+  public byte[] parse(InputStream stream) {
+
+    try (stream) {
+      return stream.readAllBytes();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public InputStream stream(byte[] value) {
+
+    return new ByteArrayInputStream(value);
+  }
+}
@@ -1,52 +1,85 @@
 package net.trajano.swarm.gateway.grpc;
 
 import brave.grpc.GrpcTracing;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.Scheduler;
 import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
 import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import io.micrometer.core.instrument.binder.grpc.MetricCollectingClientInterceptor;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import net.trajano.swarm.gateway.discovery.ServiceInstancesChangedEvent;
 import org.springframework.beans.factory.DisposableBean;
-import org.springframework.beans.factory.InitializingBean;
 import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 import reactor.core.scheduler.Schedulers;
 
+/**
+ * Pool of channels to the gRPC services. There is one channel per service which balances the calls
+ * across all the instances resolved by {@link DiscoveryNameResolverProvider}. The pool is bounded,
+ * the least recently used channel is shut down when it is full, as are channels that have been idle
+ * for too long or whose service is no longer reported by discovery. A shut down channel lets its
+ * in-flight calls complete. The channels share a single executor for their callbacks, Netty
+ * already shares the event loop group between channels.
+ */
 @Component
 @Slf4j
-@RequiredArgsConstructor
-public class ChannelProvider implements InitializingBean, DisposableBean {
+public class ChannelProvider implements DisposableBean {
 
   private final GrpcTracing grpcTracing;
   private final MeterRegistry meterRegistry;
+  private final DiscoveryNameResolverProvider discoveryNameResolverProvider;
+  private final String loadBalancingPolicy;
 
   private final ExecutorService grpcExecutor =
       Executors.newFixedThreadPool(Schedulers.DEFAULT_BOUNDED_ELASTIC_SIZE);
 
-  /**
-   * Map of connections. This is presently unbounded, so maybe need to wrap this with an LRU logic
-   * to prevent OOM, or simply allocate more memory.
-   */
-  private final Map<ConnectionKey, ManagedChannel> channelMap = new ConcurrentHashMap<>();
+  private final Cache<ConnectionKey, ManagedChannel> channels;
+
+  public ChannelProvider(
+      GrpcTracing grpcTracing,
+      MeterRegistry meterRegistry,
+      DiscoveryNameResolverProvider discoveryNameResolverProvider,
+      GrpcProperties grpcProperties) {
+
+    this.grpcTracing = grpcTracing;
+    this.meterRegistry = meterRegistry;
+    this.discoveryNameResolverProvider = discoveryNameResolverProvider;
+    this.loadBalancingPolicy = grpcProperties.getLoadBalancingPolicy();
+    channels =
+        Caffeine.newBuilder()
+            .maximumSize(grpcProperties.getChannelPoolMaximumSize())
+            .expireAfterAccess(grpcProperties.getChannelIdleTimeout())
+            .scheduler(Scheduler.systemScheduler())
+            .removalListener(this::onRemoval)
+            .recordStats()
+            .build();
+    CaffeineCacheMetrics.monitor(meterRegistry, channels, "grpcChannels", List.of());
+  }
 
   /**
    * Uses the service instance rather than the connection key alone so we can add other things from
-   * the meta data if needed.
+   * the meta data if needed. The addresses come from the name resolver.
    *
    * @param serviceInstance service instance
    * @return built channel
    */
   private ManagedChannel buildForServiceInstance(ServiceInstance serviceInstance) {
     final var b =
-        ManagedChannelBuilder.forAddress(serviceInstance.getHost(), serviceInstance.getPort())
+        ManagedChannelBuilder.forTarget(
+                discoveryNameResolverProvider.targetFor(serviceInstance.getServiceId()))
             //            .directExecutor()
+            .executor(grpcExecutor)
+            .defaultLoadBalancingPolicy(loadBalancingPolicy)
             .enableRetry()
             .maxRetryAttempts(2)
             //            .keepAliveTime(5, TimeUnit.SECONDS)
@@ -61,45 +94,59 @@ public class ChannelProvider implements InitializingBean, DisposableBean {
 
   @Override
   public void destroy() throws Exception {
+    channels.invalidateAll();
+    channels.cleanUp();
     grpcExecutor.shutdown();
   }
 
   public Map<String, ManagedChannel> getChannels() {
-    return channelMap.entrySet().stream()
+    return channels.asMap().entrySet().stream()
         .collect(Collectors.toMap(e -> String.valueOf(e.getKey()), Map.Entry::getValue));
   }
 
   /**
-   * Obtains a channel from the map for the {@link ServiceInstance}.
+   * Obtains a channel from the pool for the service of the {@link ServiceInstance}. The channel
+   * picks the instance for each call itself.
    *
    * @param serviceInstance service instance
    * @return cached channel
    */
   public ManagedChannel obtainFor(ServiceInstance serviceInstance) {
 
-    return channelMap.computeIfAbsent(
+    return channels.get(
         new ConnectionKey(serviceInstance), i -> buildForServiceInstance(serviceInstance));
   }
 
-  @Override
-  public void afterPropertiesSet() {
-    // TODO why do we need to do this?
-
-    channelMap.values().forEach(ManagedChannel::shutdown);
-    for (ManagedChannel channel : channelMap.values()) {
-      try {
-        channel.awaitTermination(1, TimeUnit.MINUTES);
-      } catch (InterruptedException e) {
-        Thread.currentThread().interrupt();
-        log.error("Unable to terminate channel {}", channel);
-      }
+  private void onRemoval(ConnectionKey key, ManagedChannel channel, RemovalCause cause) {
+
+    if (channel != null) {
+      log.debug("shutting down channel to {} cause={}", key, cause);
+      channel.shutdown();
     }
   }
 
-  private record ConnectionKey(String host, int port, boolean secure) {
+  /**
+   * Shuts down the channels to changed services that discovery no longer reports any instances
+   * for. Channels to services that still have instances are updated by their name resolver.
+   *
+   * @param event event
+   */
+  @EventListener
+  public void onServiceInstancesChanged(ServiceInstancesChangedEvent event) {
+
+    channels
+        .asMap()
+        .keySet()
+        .removeIf(
+            key ->
+                event.getServiceIds().contains(key.serviceId())
+                    && event.getServiceInstances(key.serviceId()).isEmpty());
+  }
+
+  private record ConnectionKey(String serviceId, boolean secure) {
 
     public ConnectionKey(ServiceInstance serviceInstance) {
-      this(serviceInstance.getHost(), serviceInstance.getPort(), serviceInstance.isSecure());
+      this(serviceInstance.getServiceId(), serviceInstance.isSecure());
     }
   }
 }
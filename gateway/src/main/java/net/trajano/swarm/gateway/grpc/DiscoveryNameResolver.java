@@ -0,0 +1,121 @@
+package net.trajano.swarm.gateway.grpc;
+
+import io.grpc.EquivalentAddressGroup;
+import io.grpc.NameResolver;
+import io.grpc.Status;
+import io.grpc.SynchronizationContext;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.ReactiveDiscoveryClient;
+
+/**
+ * Resolves a service ID to the addresses of all its instances known to discovery. The addresses
+ * are pushed again whenever discovery reports the service has changed so the channel updates its
+ * subchannels rather than being rebuilt.
+ */
+@Slf4j
+class DiscoveryNameResolver extends NameResolver {
+
+  private final ReactiveDiscoveryClient discoveryClient;
+
+  private final Consumer<DiscoveryNameResolver> onShutdown;
+
+  private final String serviceId;
+
+  /** The listener is only called from the channel's synchronization context. */
+  private final SynchronizationContext syncContext;
+
+  private volatile Listener2 listener;
+
+  DiscoveryNameResolver(
+      String serviceId,
+      ReactiveDiscoveryClient discoveryClient,
+      SynchronizationContext syncContext,
+      Consumer<DiscoveryNameResolver> onShutdown) {
+
+    this.serviceId = serviceId;
+    this.discoveryClient = discoveryClient;
+    this.syncContext = syncContext;
+    this.onShutdown = onShutdown;
+  }
+
+  private void notifyError(Status status) {
+
+    syncContext.execute(
+        () -> {
+          final var currentListener = listener;
+          if (currentListener != null) {
+            currentListener.onError(status);
+          }
+        });
+  }
+
+  @Override
+  public String getServiceAuthority() {
+
+    return serviceId;
+  }
+
+  String getServiceId() {
+
+    return serviceId;
+  }
+
+  /**
+   * Passes the instances to the channel.
+   *
+   * @param serviceInstances current instances of the service
+   */
+  void onServiceInstances(List<ServiceInstance> serviceInstances) {
+
+    if (serviceInstances.isEmpty()) {
+      notifyError(Status.UNAVAILABLE.withDescription("No instances of %s".formatted(serviceId)));
+      return;
+    }
+    log.debug("resolved {} to {}", serviceId, serviceInstances);
+    final var resolutionResult =
+        ResolutionResult.newBuilder()
+            .setAddresses(
+                serviceInstances.stream()
+                    .map(
+                        serviceInstance ->
+                            new EquivalentAddressGroup(
+                                new InetSocketAddress(
+                                    serviceInstance.getHost(), serviceInstance.getPort())))
+                    .toList())
+            .build();
+    syncContext.execute(
+        () -> {
+          final var currentListener = listener;
+          if (currentListener != null) {
+            currentListener.onResult(resolutionResult);
+          }
+        });
+  }
+
+  @Override
+  public void refresh() {
+
+    discoveryClient
+        .getInstances(serviceId)
+        .collectList()
+        .subscribe(this::onServiceInstances, e -> notifyError(Status.UNAVAILABLE.withCause(e)));
+  }
+
+  @Override
+  public void shutdown() {
+
+    listener = null;
+    onShutdown.accept(this);
+  }
+
+  @Override
+  public void start(Listener2 listener) {
+
+    this.listener = listener;
+    refresh();
+  }
+}
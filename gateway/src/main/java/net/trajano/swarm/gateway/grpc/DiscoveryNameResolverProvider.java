@@ -0,0 +1,114 @@
+package net.trajano.swarm.gateway.grpc;
+
+import io.grpc.NameResolver;
+import io.grpc.NameResolverProvider;
+import io.grpc.NameResolverRegistry;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.URI;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.RequiredArgsConstructor;
+import net.trajano.swarm.gateway.discovery.ServiceInstancesChangedEvent;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.cloud.client.discovery.ReactiveDiscoveryClient;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Provides {@link DiscoveryNameResolver}s for {@code discovery:///<serviceId>} targets. The
+ * provider is registered with the default registry while the application is running.
+ */
+@Component
+@RequiredArgsConstructor
+public class DiscoveryNameResolverProvider extends NameResolverProvider
+    implements InitializingBean, DisposableBean {
+
+  private static final String SCHEME = "discovery";
+
+  private final ReactiveDiscoveryClient discoveryClient;
+
+  private final Set<DiscoveryNameResolver> resolvers = ConcurrentHashMap.newKeySet();
+
+  @Override
+  public void afterPropertiesSet() {
+
+    NameResolverRegistry.getDefaultRegistry().register(this);
+  }
+
+  @Override
+  public void destroy() {
+
+    NameResolverRegistry.getDefaultRegistry().deregister(this);
+  }
+
+  @Override
+  public String getDefaultScheme() {
+
+    return SCHEME;
+  }
+
+  @Override
+  protected Collection<Class<? extends SocketAddress>> getProducedSocketAddressTypes() {
+
+    return List.of(InetSocketAddress.class);
+  }
+
+  @Override
+  protected boolean isAvailable() {
+
+    return true;
+  }
+
+  @Override
+  public NameResolver newNameResolver(URI targetUri, NameResolver.Args args) {
+
+    if (!SCHEME.equals(targetUri.getScheme())) {
+      return null;
+    }
+    final var resolver =
+        new DiscoveryNameResolver(
+            targetUri.getPath().substring(1),
+            discoveryClient,
+            args.getSynchronizationContext(),
+            resolvers::remove);
+    resolvers.add(resolver);
+    return resolver;
+  }
+
+  /**
+   * Pushes the new instances of the changed services to their resolvers.
+   *
+   * @param event event
+   */
+  @EventListener
+  public void onServiceInstancesChanged(ServiceInstancesChangedEvent event) {
+
+    resolvers.stream()
+        .filter(resolver -> event.getServiceIds().contains(resolver.getServiceId()))
+        .forEach(
+            resolver ->
+                resolver.onServiceInstances(event.getServiceInstances(resolver.getServiceId())));
+  }
+
+  /** Prioritized below the DNS resolver, the scheme is always explicit in the targets. */
+  @Override
+  protected int priority() {
+
+    return 4;
+  }
+
+  /**
+   * Builds the channel target for a service.
+   *
+   * @param serviceId service ID
+   * @return target
+   */
+  public String targetFor(String serviceId) {
+
+    return SCHEME + ":///" + serviceId;
+  }
+}
@@ -0,0 +1,38 @@
+package net.trajano.swarm.gateway.grpc;
+
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.DynamicMessage;
+import io.grpc.MethodDescriptor;
+
+/**
+ * Protobuf method descriptor along with the gRPC method descriptor and marshallers built from it,
+ * so they are only built once per method rather than on every request.
+ *
+ * @param protobufMethodDescriptor protobuf method descriptor, used to build the request message
+ * @param grpcMethodDescriptor gRPC method descriptor, used to make the call
+ * @param passthroughMethodDescriptor gRPC method descriptor that sends and receives the serialized
+ *     messages as is
+ */
+public record GrpcMethodDescriptors(
+    Descriptors.MethodDescriptor protobufMethodDescriptor,
+    MethodDescriptor<DynamicMessage, DynamicMessage> grpcMethodDescriptor,
+    MethodDescriptor<byte[], byte[]> passthroughMethodDescriptor) {
+
+  public GrpcMethodDescriptors(Descriptors.MethodDescriptor protobufMethodDescriptor) {
+
+    this(
+        protobufMethodDescriptor,
+        GrpcServerReflection.methodDescriptorFromProtobuf(protobufMethodDescriptor));
+  }
+
+  private GrpcMethodDescriptors(
+      Descriptors.MethodDescriptor protobufMethodDescriptor,
+      MethodDescriptor<DynamicMessage, DynamicMessage> grpcMethodDescriptor) {
+
+    this(
+        protobufMethodDescriptor,
+        grpcMethodDescriptor,
+        grpcMethodDescriptor.toBuilder(ByteArrayMarshaller.INSTANCE, ByteArrayMarshaller.INSTANCE)
+            .build());
+  }
+}
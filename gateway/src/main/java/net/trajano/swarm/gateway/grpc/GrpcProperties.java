@@ -0,0 +1,66 @@
+package net.trajano.swarm.gateway.grpc;
+
+import java.time.Duration;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "grpc")
+@Data
+public class GrpcProperties {
+
+  /**
+   * Maximum number of channels kept open to gRPC services. The least recently used channel is
+   * shut down when another is needed.
+   */
+  private long channelPoolMaximumSize = 256;
+
+  /** How long a channel may go unused before it is shut down. */
+  private Duration channelIdleTimeout = Duration.ofMinutes(10);
+
+  /**
+   * Load balancing policy a channel uses to spread calls across the instances of its service, e.g.
+   * {@code round_robin} or {@code pick_first}.
+   */
+  private String loadBalancingPolicy = "round_robin";
+
+  /** Maximum number of method descriptors kept across all gRPC services. */
+  private long methodDescriptorCacheMaximumSize = 1000;
+
+  /**
+   * How long a method descriptor obtained through reflection is kept before it is looked up again.
+   * Service updates seen by discovery invalidate the entries earlier.
+   */
+  private Duration methodDescriptorCacheExpiry = Duration.ofHours(1);
+
+  /**
+   * How long a server reflection lookup may take. The lookup is shared by the requests waiting for
+   * the method, so a lookup that does not complete would otherwise hold them all until restart.
+   */
+  private Duration methodDescriptorLookupTimeout = Duration.ofSeconds(10);
+
+  /** Maximum size of a JSON request body that is transcoded to protobuf. */
+  private int maxRequestSizeInBytes = 4 * 1024 * 1024;
+
+  /**
+   * Number of server streaming messages that may be held in the gateway waiting for the client.
+   * Can be overridden per route with the {@code grpc-stream-buffer-size} metadata.
+   */
+  private int streamBufferSize = 256;
+
+  /**
+   * What to do when the stream buffer is full. Can be overridden per route with the {@code
+   * grpc-stream-overflow-policy} metadata.
+   */
+  private StreamOverflowPolicy streamOverflowPolicy = StreamOverflowPolicy.BACKPRESSURE;
+
+  /**
+   * Server sent events that arrive within this window are flushed to the client together. Zero
+   * flushes every event as soon as it is written.
+   */
+  private Duration streamFlushWindow = Duration.ZERO;
+
+  /** Maximum number of server sent events flushed together. */
+  private int streamFlushMaxEvents = 64;
+}
@@ -0,0 +1,379 @@
+package net.trajano.swarm.gateway.grpc;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.DynamicMessage;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.util.JsonFormat;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Base64;
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Transcodes a JSON request body into a {@link DynamicMessage} using a streaming parser driven by
+ * the message descriptor. The well-known types in {@code google.protobuf} have special JSON
+ * representations and are delegated to {@link JsonFormat}.
+ */
+@Component
+@RequiredArgsConstructor
+public class JsonToProtobufTranscoder {
+
+  /**
+   * Deepest nesting of messages and JSON structures allowed, the same as the default recursion
+   * limit of {@link JsonFormat}. The parsing recurses per level so this keeps a small request from
+   * overflowing the stack.
+   */
+  static final int MAX_DEPTH = 100;
+
+  private static final BigInteger MAX_UINT64 =
+      BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+
+  /** The only message type where JSON {@code null} is not treated as the default value. */
+  private static final String VALUE_TYPE = "google.protobuf.Value";
+
+  private static final String WELL_KNOWN_TYPES_PACKAGE = "google.protobuf";
+
+  private final GrpcProperties grpcProperties;
+
+  private final JsonFactory jsonFactory = new JsonFactory();
+
+  private final JsonFormat.Parser wellKnownTypeParser = JsonFormat.parser();
+
+  private static InvalidProtocolBufferException invalidValue(
+      JsonParser parser, Descriptors.FieldDescriptor field) {
+
+    return new InvalidProtocolBufferException(
+        "Invalid value %s for %s field %s"
+            .formatted(parser.currentToken(), field.getType(), field.getFullName()));
+  }
+
+  private static Descriptors.FieldDescriptor findField(
+      Descriptors.Descriptor descriptor, String name) throws InvalidProtocolBufferException {
+
+    final var field = descriptor.findFieldByName(name);
+    if (field != null) {
+      return field;
+    }
+    for (final var candidate : descriptor.getFields()) {
+      if (candidate.getJsonName().equals(name)) {
+        return candidate;
+      }
+    }
+    throw new InvalidProtocolBufferException(
+        "Cannot find field: %s in message %s".formatted(name, descriptor.getFullName()));
+  }
+
+  private static boolean parseBoolean(JsonParser parser, Descriptors.FieldDescriptor field)
+      throws IOException {
+
+    return switch (parser.currentToken()) {
+      case VALUE_TRUE -> true;
+      case VALUE_FALSE -> false;
+      case VALUE_STRING -> switch (parser.getText()) {
+        case "true" -> true;
+        case "false" -> false;
+        default -> throw invalidValue(parser, field);
+      };
+      default -> throw invalidValue(parser, field);
+    };
+  }
+
+  private static ByteString parseBytes(JsonParser parser, Descriptors.FieldDescriptor field)
+      throws IOException {
+
+    if (parser.currentToken() != JsonToken.VALUE_STRING) {
+      throw invalidValue(parser, field);
+    }
+    final var text = parser.getText();
+    try {
+      return ByteString.copyFrom(Base64.getDecoder().decode(text));
+    } catch (IllegalArgumentException e) {
+      return ByteString.copyFrom(Base64.getUrlDecoder().decode(text));
+    }
+  }
+
+  private static double parseDouble(JsonParser parser, Descriptors.FieldDescriptor field)
+      throws IOException {
+
+    return switch (parser.currentToken()) {
+      case VALUE_NUMBER_INT, VALUE_NUMBER_FLOAT -> parser.getDoubleValue();
+      case VALUE_STRING -> switch (parser.getText()) {
+        case "NaN" -> Double.NaN;
+        case "Infinity" -> Double.POSITIVE_INFINITY;
+        case "-Infinity" -> Double.NEGATIVE_INFINITY;
+        default -> Double.parseDouble(parser.getText());
+      };
+      default -> throw invalidValue(parser, field);
+    };
+  }
+
+  private static Descriptors.EnumValueDescriptor parseEnum(
+      JsonParser parser, Descriptors.FieldDescriptor field) throws IOException {
+
+    final var enumType = field.getEnumType();
+    final Descriptors.EnumValueDescriptor value;
+    if (parser.currentToken() == JsonToken.VALUE_STRING) {
+      value = enumType.findValueByName(parser.getText());
+    } else if (parser.currentToken() == JsonToken.VALUE_NUMBER_INT) {
+      value = enumType.findValueByNumberCreatingIfUnknown(parser.getIntValue());
+    } else {
+      value = null;
+    }
+    if (value == null) {
+      throw invalidValue(parser, field);
+    }
+    return value;
+  }
+
+  private static Object parseMapKey(String key, Descriptors.FieldDescriptor keyField)
+      throws InvalidProtocolBufferException {
+
+    return switch (keyField.getType()) {
+      case STRING -> key;
+      case BOOL -> switch (key) {
+        case "true" -> true;
+        case "false" -> false;
+        default -> throw new InvalidProtocolBufferException("Invalid boolean map key " + key);
+      };
+      case INT32, SINT32, SFIXED32 -> Integer.parseInt(key);
+      case UINT32, FIXED32 -> Integer.parseUnsignedInt(key);
+      case INT64, SINT64, SFIXED64 -> Long.parseLong(key);
+      case UINT64, FIXED64 -> Long.parseUnsignedLong(key);
+      default -> throw new InvalidProtocolBufferException(
+          "Invalid map key type " + keyField.getType());
+    };
+  }
+
+  private static long parseLong(
+      JsonParser parser, Descriptors.FieldDescriptor field, long min, long max)
+      throws IOException {
+
+    final long value =
+        switch (parser.currentToken()) {
+          case VALUE_NUMBER_INT -> parser.getLongValue();
+          case VALUE_NUMBER_FLOAT, VALUE_STRING -> new BigDecimal(parser.getText())
+              .longValueExact();
+          default -> throw invalidValue(parser, field);
+        };
+    if (value < min || value > max) {
+      throw invalidValue(parser, field);
+    }
+    return value;
+  }
+
+  private static long parseUnsignedLong(JsonParser parser, Descriptors.FieldDescriptor field)
+      throws IOException {
+
+    final BigInteger value =
+        switch (parser.currentToken()) {
+          case VALUE_NUMBER_INT -> parser.getBigIntegerValue();
+          case VALUE_NUMBER_FLOAT, VALUE_STRING -> new BigDecimal(parser.getText())
+              .toBigIntegerExact();
+          default -> throw invalidValue(parser, field);
+        };
+    if (value.signum() < 0 || value.compareTo(MAX_UINT64) > 0) {
+      throw invalidValue(parser, field);
+    }
+    return value.longValue();
+  }
+
+  private static String parseString(JsonParser parser, Descriptors.FieldDescriptor field)
+      throws IOException {
+
+    if (parser.currentToken() != JsonToken.VALUE_STRING) {
+      throw invalidValue(parser, field);
+    }
+    return parser.getText();
+  }
+
+  private static boolean isWellKnownType(Descriptors.Descriptor descriptor) {
+
+    return WELL_KNOWN_TYPES_PACKAGE.equals(descriptor.getFile().getPackage());
+  }
+
+  /**
+   * Parses a JSON document into a message.
+   *
+   * @param inputStream JSON document, the encoding is detected by the parser
+   * @param descriptor message descriptor
+   * @return message
+   * @throws IOException malformed JSON or values that do not match the descriptor
+   */
+  public DynamicMessage parse(InputStream inputStream, Descriptors.Descriptor descriptor)
+      throws IOException {
+
+    try (final var parser = jsonFactory.createParser(inputStream)) {
+      parser.nextToken();
+      final var builder = DynamicMessage.newBuilder(descriptor);
+      mergeMessage(parser, builder, 0);
+      if (parser.nextToken() != null) {
+        throw new InvalidProtocolBufferException(
+            "Unexpected %s after the message".formatted(parser.currentToken()));
+      }
+      return builder.build();
+    } catch (IllegalArgumentException | ArithmeticException e) {
+      throw new InvalidProtocolBufferException(e.getMessage());
+    }
+  }
+
+  /**
+   * Provides the message from the request body. The body is joined without copying where the
+   * buffer factory supports composite buffers and released once parsed.
+   *
+   * @param dataBufferFlux request body
+   * @param descriptor message descriptor
+   * @return message. Fails with {@link HttpStatus#PAYLOAD_TOO_LARGE} if the body is larger than
+   *     {@link GrpcProperties#getMaxRequestSizeInBytes()} or {@link HttpStatus#BAD_REQUEST} if it
+   *     cannot be parsed.
+   */
+  public Mono<DynamicMessage> provideMessage(
+      Flux<DataBuffer> dataBufferFlux, Descriptors.Descriptor descriptor) {
+
+    return DataBufferUtils.join(dataBufferFlux, grpcProperties.getMaxRequestSizeInBytes())
+        .onErrorMap(
+            DataBufferLimitException.class,
+            e -> new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE, e.getMessage(), e))
+        .switchIfEmpty(
+            Mono.error(
+                () -> new ResponseStatusException(HttpStatus.BAD_REQUEST, "Missing request body")))
+        .handle(
+            (dataBuffer, sink) -> {
+              try (final var inputStream = dataBuffer.asInputStream(true)) {
+                sink.next(parse(inputStream, descriptor));
+              } catch (IOException e) {
+                sink.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e));
+              }
+            });
+  }
+
+  private static void checkDepth(int depth) throws InvalidProtocolBufferException {
+
+    if (depth > MAX_DEPTH) {
+      throw new InvalidProtocolBufferException(
+          "Message nesting exceeds %d levels".formatted(MAX_DEPTH));
+    }
+  }
+
+  private void mergeMessage(JsonParser parser, DynamicMessage.Builder builder, int depth)
+      throws IOException {
+
+    checkDepth(depth);
+    final var descriptor = builder.getDescriptorForType();
+    if (isWellKnownType(descriptor)) {
+      mergeWellKnownType(parser, builder, depth);
+      return;
+    }
+    if (parser.currentToken() != JsonToken.START_OBJECT) {
+      throw new InvalidProtocolBufferException(
+          "Expected an object for %s but got %s"
+              .formatted(descriptor.getFullName(), parser.currentToken()));
+    }
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      final var field = findField(descriptor, parser.currentName());
+      parser.nextToken();
+      if (parser.currentToken() == JsonToken.VALUE_NULL
+          && !(field.getJavaType() == Descriptors.FieldDescriptor.JavaType.MESSAGE
+              && VALUE_TYPE.equals(field.getMessageType().getFullName()))) {
+        continue;
+      }
+      if (field.isMapField()) {
+        mergeMapField(parser, builder, field, depth);
+      } else if (field.isRepeated()) {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+          throw invalidValue(parser, field);
+        }
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+          builder.addRepeatedField(field, parseValue(parser, field, depth));
+        }
+      } else {
+        builder.setField(field, parseValue(parser, field, depth));
+      }
+    }
+  }
+
+  private void mergeMapField(
+      JsonParser parser,
+      DynamicMessage.Builder builder,
+      Descriptors.FieldDescriptor field,
+      int depth)
+      throws IOException {
+
+    if (parser.currentToken() != JsonToken.START_OBJECT) {
+      throw invalidValue(parser, field);
+    }
+    final var entryDescriptor = field.getMessageType();
+    final var keyField = entryDescriptor.findFieldByNumber(1);
+    final var valueField = entryDescriptor.findFieldByNumber(2);
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      final var key = parseMapKey(parser.currentName(), keyField);
+      parser.nextToken();
+      builder.addRepeatedField(
+          field,
+          DynamicMessage.newBuilder(entryDescriptor)
+              .setField(keyField, key)
+              .setField(valueField, parseValue(parser, valueField, depth))
+              .build());
+    }
+  }
+
+  /**
+   * Copies the current JSON structure and lets {@link JsonFormat} handle the special
+   * representations of the well-known types. The structure is copied an event at a time so the
+   * nesting of a {@code Struct} or {@code ListValue} is checked before it is handed over.
+   */
+  private void mergeWellKnownType(JsonParser parser, DynamicMessage.Builder builder, int depth)
+      throws IOException {
+
+    final var writer = new StringWriter();
+    try (final var generator = jsonFactory.createGenerator(writer)) {
+      var nesting = 0;
+      do {
+        if (parser.currentToken().isStructStart()) {
+          checkDepth(depth + ++nesting);
+        } else if (parser.currentToken().isStructEnd()) {
+          --nesting;
+        }
+        generator.copyCurrentEvent(parser);
+      } while (nesting > 0 && parser.nextToken() != null);
+    }
+    wellKnownTypeParser.merge(writer.toString(), builder);
+  }
+
+  private Object parseValue(JsonParser parser, Descriptors.FieldDescriptor field, int depth)
+      throws IOException {
+
+    return switch (field.getType()) {
+      case INT32, SINT32, SFIXED32 -> (int)
+          parseLong(parser, field, Integer.MIN_VALUE, Integer.MAX_VALUE);
+      case UINT32, FIXED32 -> (int) parseLong(parser, field, 0, 0xFFFFFFFFL);
+      case INT64, SINT64, SFIXED64 -> parseLong(parser, field, Long.MIN_VALUE, Long.MAX_VALUE);
+      case UINT64, FIXED64 -> parseUnsignedLong(parser, field);
+      case FLOAT -> (float) parseDouble(parser, field);
+      case DOUBLE -> parseDouble(parser, field);
+      case BOOL -> parseBoolean(parser, field);
+      case STRING -> parseString(parser, field);
+      case BYTES -> parseBytes(parser, field);
+      case ENUM -> parseEnum(parser, field);
+      case MESSAGE, GROUP -> {
+        final var messageBuilder = DynamicMessage.newBuilder(field.getMessageType());
+        mergeMessage(parser, messageBuilder, depth + 1);
+        yield messageBuilder.build();
+      }
+    };
+  }
+}
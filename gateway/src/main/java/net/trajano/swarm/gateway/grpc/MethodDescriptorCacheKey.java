@@ -1,5 +1,10 @@
 package net.trajano.swarm.gateway.grpc;
 
-import java.net.URI;
-
-public record MethodDescriptorCacheKey(String serviceInstanceId, URI uri) {}
+/**
+ * Method descriptors are keyed by the service rather than the instance so replicas share the
+ * result of a single reflection round-trip.
+ *
+ * @param serviceId service ID
+ * @param path request path in the form {@code /Service/method}
+ */
+public record MethodDescriptorCacheKey(String serviceId, String path) {}
@@ -0,0 +1,85 @@
+package net.trajano.swarm.gateway.grpc;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.grpc.Channel;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+import net.trajano.swarm.gateway.discovery.ServiceInstancesChangedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/**
+ * Method descriptors shared by the gRPC filters. Entries are keyed by service ID and path so a
+ * reflection lookup done through one replica is reused for the others. Failed lookups are not
+ * kept.
+ */
+@Component
+@Slf4j
+public class MethodDescriptorRegistry {
+
+  private final AsyncCache<MethodDescriptorCacheKey, GrpcMethodDescriptors> cache;
+
+  private final Duration lookupTimeout;
+
+  public MethodDescriptorRegistry(GrpcProperties grpcProperties, MeterRegistry meterRegistry) {
+
+    lookupTimeout = grpcProperties.getMethodDescriptorLookupTimeout();
+    cache =
+        Caffeine.newBuilder()
+            .maximumSize(grpcProperties.getMethodDescriptorCacheMaximumSize())
+            .expireAfterWrite(grpcProperties.getMethodDescriptorCacheExpiry())
+            .recordStats()
+            .buildAsync();
+    CaffeineCacheMetrics.monitor(meterRegistry, cache, "grpcMethodDescriptors", List.of());
+  }
+
+  /**
+   * Removes the descriptors of the services that have changed as the new instances may be serving
+   * a different proto.
+   *
+   * @param event event
+   */
+  @EventListener
+  public void onServiceInstancesChanged(ServiceInstancesChangedEvent event) {
+
+    log.debug("invalidating method descriptors of {}", event.getServiceIds());
+    cache
+        .synchronous()
+        .asMap()
+        .keySet()
+        .removeIf(key -> event.getServiceIds().contains(key.serviceId()));
+  }
+
+  /**
+   * Provides the method descriptors for the request, using server reflection on the channel if
+   * they are not already known. Cancelling the subscription does not cancel the shared lookup as
+   * other requests may be waiting on it, instead the lookup fails after {@link
+   * GrpcProperties#getMethodDescriptorLookupTimeout()} so it is not kept.
+   *
+   * @param serviceId service ID
+   * @param uri request URI
+   * @param channel channel to the service instance handling the request
+   * @return method descriptors
+   */
+  public Mono<GrpcMethodDescriptors> provideMethodDescriptors(
+      String serviceId, URI uri, Channel channel) {
+
+    return Mono.fromFuture(
+        () ->
+            cache.get(
+                new MethodDescriptorCacheKey(serviceId, uri.getPath()),
+                (key, executor) ->
+                    new GrpcServerReflection(channel)
+                        .methodDescriptor(uri)
+                        .map(GrpcMethodDescriptors::new)
+                        .timeout(lookupTimeout)
+                        .toFuture()),
+        true);
+  }
+}
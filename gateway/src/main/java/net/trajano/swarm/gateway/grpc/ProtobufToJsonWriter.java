@@ -0,0 +1,171 @@
+package net.trajano.swarm.gateway.grpc;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.Message;
+import com.google.protobuf.util.JsonFormat;
+import java.io.IOException;
+import java.util.Base64;
+import java.util.List;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.stereotype.Component;
+
+/**
+ * Writes a message as JSON directly into a {@link DataBuffer} using a streaming generator driven
+ * by the message descriptor, so no intermediate {@link String} or {@code byte[]} is built. The
+ * output is equivalent to {@link JsonFormat#printer()} with insignificant whitespace omitted,
+ * though strings are escaped minimally. The well-known types in {@code google.protobuf} have
+ * special JSON representations and are delegated to {@link JsonFormat}.
+ */
+@Component
+public class ProtobufToJsonWriter {
+
+  private static final int MINIMUM_CAPACITY = 64;
+
+  private static final String NULL_VALUE_TYPE = "google.protobuf.NullValue";
+
+  private static final String WELL_KNOWN_TYPES_PACKAGE = "google.protobuf";
+
+  private final JsonFactory jsonFactory = new JsonFactory();
+
+  private final JsonFormat.Printer wellKnownTypePrinter =
+      JsonFormat.printer().omittingInsignificantWhitespace();
+
+  private static String mapKey(Descriptors.FieldDescriptor keyField, Object key) {
+
+    return switch (keyField.getType()) {
+      case UINT32, FIXED32 -> Integer.toUnsignedString((int) key);
+      case UINT64, FIXED64 -> Long.toUnsignedString((long) key);
+      default -> String.valueOf(key);
+    };
+  }
+
+  private static void writeFloatingPoint(double value, JsonGenerator generator)
+      throws IOException {
+
+    if (Double.isNaN(value)) {
+      generator.writeString("NaN");
+    } else if (Double.isInfinite(value)) {
+      generator.writeString(value > 0 ? "Infinity" : "-Infinity");
+    } else {
+      generator.writeNumber(value);
+    }
+  }
+
+  private static void writeFloatingPoint(float value, JsonGenerator generator)
+      throws IOException {
+
+    if (Float.isNaN(value) || Float.isInfinite(value)) {
+      writeFloatingPoint((double) value, generator);
+    } else {
+      generator.writeNumber(value);
+    }
+  }
+
+  /**
+   * Writes the message into a newly allocated buffer. The buffer is released if writing fails.
+   *
+   * @param message message
+   * @param bufferFactory buffer factory, usually from the response
+   * @return buffer containing the JSON
+   * @throws IOException failure writing the message
+   */
+  public DataBuffer write(Message message, DataBufferFactory bufferFactory) throws IOException {
+
+    // JSON is usually larger than the binary form, the buffer grows if this is not enough
+    final var dataBuffer =
+        bufferFactory.allocateBuffer(Math.max(MINIMUM_CAPACITY, message.getSerializedSize() * 2));
+    try {
+      writeTo(message, dataBuffer);
+      return dataBuffer;
+    } catch (IOException | RuntimeException e) {
+      DataBufferUtils.release(dataBuffer);
+      throw e;
+    }
+  }
+
+  /**
+   * Appends the message as JSON to the buffer.
+   *
+   * @param message message
+   * @param dataBuffer buffer to write to
+   * @throws IOException failure writing the message
+   */
+  public void writeTo(Message message, DataBuffer dataBuffer) throws IOException {
+
+    try (final var generator = jsonFactory.createGenerator(dataBuffer.asOutputStream())) {
+      writeMessage(message, generator);
+    }
+  }
+
+  private void writeField(Descriptors.FieldDescriptor field, Object value, JsonGenerator generator)
+      throws IOException {
+
+    if (field.isMapField()) {
+      final var keyField = field.getMessageType().findFieldByNumber(1);
+      final var valueField = field.getMessageType().findFieldByNumber(2);
+      generator.writeStartObject();
+      for (final var entry : (List<?>) value) {
+        final var entryMessage = (Message) entry;
+        generator.writeFieldName(mapKey(keyField, entryMessage.getField(keyField)));
+        writeValue(valueField, entryMessage.getField(valueField), generator);
+      }
+      generator.writeEndObject();
+    } else if (field.isRepeated()) {
+      generator.writeStartArray();
+      for (final var element : (List<?>) value) {
+        writeValue(field, element, generator);
+      }
+      generator.writeEndArray();
+    } else {
+      writeValue(field, value, generator);
+    }
+  }
+
+  private void writeMessage(Message message, JsonGenerator generator) throws IOException {
+
+    final var descriptor = message.getDescriptorForType();
+    if (WELL_KNOWN_TYPES_PACKAGE.equals(descriptor.getFile().getPackage())) {
+      generator.writeRawValue(wellKnownTypePrinter.print(message));
+      return;
+    }
+    generator.writeStartObject();
+    for (final var entry : message.getAllFields().entrySet()) {
+      generator.writeFieldName(entry.getKey().getJsonName());
+      writeField(entry.getKey(), entry.getValue(), generator);
+    }
+    generator.writeEndObject();
+  }
+
+  private void writeValue(Descriptors.FieldDescriptor field, Object value, JsonGenerator generator)
+      throws IOException {
+
+    switch (field.getType()) {
+      case INT32, SINT32, SFIXED32 -> generator.writeNumber((int) value);
+      case UINT32, FIXED32 -> generator.writeNumber(Integer.toUnsignedLong((int) value));
+      case INT64, SINT64, SFIXED64 -> generator.writeString(String.valueOf((long) value));
+      case UINT64, FIXED64 -> generator.writeString(Long.toUnsignedString((long) value));
+      case FLOAT -> writeFloatingPoint((float) value, generator);
+      case DOUBLE -> writeFloatingPoint((double) value, generator);
+      case BOOL -> generator.writeBoolean((boolean) value);
+      case STRING -> generator.writeString((String) value);
+      case BYTES -> generator.writeString(
+          Base64.getEncoder().encodeToString(((ByteString) value).toByteArray()));
+      case ENUM -> {
+        final var enumValue = (Descriptors.EnumValueDescriptor) value;
+        if (NULL_VALUE_TYPE.equals(enumValue.getType().getFullName())) {
+          generator.writeNull();
+        } else if (enumValue.getIndex() == -1) {
+          generator.writeNumber(enumValue.getNumber());
+        } else {
+          generator.writeString(enumValue.getName());
+        }
+      }
+      case MESSAGE, GROUP -> writeMessage((Message) value, generator);
+    }
+  }
+}
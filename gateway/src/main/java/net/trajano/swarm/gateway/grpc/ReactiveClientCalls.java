@@ -0,0 +1,246 @@
+package net.trajano.swarm.gateway.grpc;
+
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.MethodDescriptor;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientCalls;
+import io.grpc.stub.ClientResponseObserver;
+import io.grpc.stub.StreamObserver;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.reactivestreams.Subscription;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Bridges the asynchronous {@link ClientCalls} to Reactor publishers so no thread is parked while
+ * waiting for the backend to respond.
+ */
+public final class ReactiveClientCalls {
+
+  private ReactiveClientCalls() {}
+
+  /**
+   * Performs a unary call. The call is only started when the mono is subscribed to and cancelling
+   * the subscription (e.g. the HTTP client went away) will cancel the gRPC call.
+   *
+   * @param channel channel
+   * @param methodDescriptor method descriptor, expected to be {@link
+   *     MethodDescriptor.MethodType#UNARY}
+   * @param callOptions call options
+   * @param request request message
+   * @return response mono
+   * @param <ReqT> request type
+   * @param <RespT> response type
+   */
+  public static <ReqT, RespT> Mono<RespT> unaryCall(
+      Channel channel,
+      MethodDescriptor<ReqT, RespT> methodDescriptor,
+      CallOptions callOptions,
+      ReqT request) {
+
+    return Mono.create(
+        sink -> {
+          final var call = channel.newCall(methodDescriptor, callOptions);
+          sink.onCancel(() -> call.cancel("Cancelled by subscriber", null));
+          ClientCalls.asyncUnaryCall(
+              call,
+              request,
+              new StreamObserver<>() {
+                @Override
+                public void onCompleted() {
+                  // ignored by the sink if onNext had already emitted the value
+                  sink.success();
+                }
+
+                @Override
+                public void onError(Throwable t) {
+
+                  sink.error(t);
+                }
+
+                @Override
+                public void onNext(RespT value) {
+
+                  sink.success(value);
+                }
+              });
+        });
+  }
+
+  /**
+   * Performs a server streaming call. Automatic flow control is disabled so messages are only
+   * requested from the server as the subscriber demands them, a slow subscriber therefore slows
+   * down the server rather than having messages accumulate in memory. Cancelling the subscription
+   * cancels the call.
+   *
+   * @param channel channel
+   * @param methodDescriptor method descriptor, expected to be {@link
+   *     MethodDescriptor.MethodType#SERVER_STREAMING}
+   * @param callOptions call options
+   * @param request request message
+   * @return response flux
+   * @param <ReqT> request type
+   * @param <RespT> response type
+   */
+  public static <ReqT, RespT> Flux<RespT> serverStreamingCall(
+      Channel channel,
+      MethodDescriptor<ReqT, RespT> methodDescriptor,
+      CallOptions callOptions,
+      ReqT request) {
+
+    return Flux.create(
+        sink -> {
+          final var call = channel.newCall(methodDescriptor, callOptions);
+          ClientCalls.asyncServerStreamingCall(
+              call,
+              request,
+              new ClientResponseObserver<ReqT, RespT>() {
+                @Override
+                public void beforeStart(ClientCallStreamObserver<ReqT> requestStream) {
+
+                  requestStream.disableAutoRequestWithInitial(0);
+                }
+
+                @Override
+                public void onCompleted() {
+
+                  sink.complete();
+                }
+
+                @Override
+                public void onError(Throwable t) {
+
+                  sink.error(t);
+                }
+
+                @Override
+                public void onNext(RespT value) {
+
+                  sink.next(value);
+                }
+              });
+          // the call must be started before messages can be requested
+          sink.onRequest(n -> call.request((int) Math.min(n, Integer.MAX_VALUE)));
+          sink.onCancel(() -> call.cancel("Cancelled by subscriber", null));
+        });
+  }
+
+  /**
+   * Performs a client or bidirectional streaming call depending on the method type. Flow control
+   * is driven from both ends: responses are only requested from the server as the subscriber
+   * demands them, and the request publisher is only asked for the next message when the call is
+   * ready to send it. Cancelling the subscription cancels the call.
+   *
+   * @param channel channel
+   * @param methodDescriptor method descriptor, expected to be {@link
+   *     MethodDescriptor.MethodType#CLIENT_STREAMING} or {@link
+   *     MethodDescriptor.MethodType#BIDI_STREAMING}
+   * @param callOptions call options
+   * @param requestFlux request messages, completing it half-closes the call
+   * @return response flux
+   * @param <ReqT> request type
+   * @param <RespT> response type
+   */
+  public static <ReqT, RespT> Flux<RespT> streamingRequestCall(
+      Channel channel,
+      MethodDescriptor<ReqT, RespT> methodDescriptor,
+      CallOptions callOptions,
+      Flux<ReqT> requestFlux) {
+
+    return Flux.create(
+        sink -> {
+          final var call = channel.newCall(methodDescriptor, callOptions);
+          final var requestSubscriber = new ReadyGatedRequestSubscriber<ReqT>();
+          final var responseObserver =
+              new ClientResponseObserver<ReqT, RespT>() {
+                @Override
+                public void beforeStart(ClientCallStreamObserver<ReqT> requestStream) {
+
+                  requestStream.disableAutoRequestWithInitial(0);
+                  requestStream.setOnReadyHandler(requestSubscriber::requestIfReady);
+                  requestSubscriber.requestStream = requestStream;
+                }
+
+                @Override
+                public void onCompleted() {
+
+                  sink.complete();
+                }
+
+                @Override
+                public void onError(Throwable t) {
+
+                  sink.error(t);
+                }
+
+                @Override
+                public void onNext(RespT value) {
+
+                  sink.next(value);
+                }
+              };
+          if (methodDescriptor.getType() == MethodDescriptor.MethodType.CLIENT_STREAMING) {
+            ClientCalls.asyncClientStreamingCall(call, responseObserver);
+          } else {
+            ClientCalls.asyncBidiStreamingCall(call, responseObserver);
+          }
+          sink.onRequest(n -> call.request((int) Math.min(n, Integer.MAX_VALUE)));
+          sink.onCancel(() -> call.cancel("Cancelled by subscriber", null));
+          sink.onDispose(requestSubscriber::dispose);
+          requestFlux.subscribe(requestSubscriber);
+        });
+  }
+
+  /**
+   * Forwards request messages to the call one at a time, only requesting the next message when
+   * the call is ready to accept it so a fast client does not queue messages in the transport.
+   *
+   * @param <ReqT> request type
+   */
+  private static final class ReadyGatedRequestSubscriber<ReqT> extends BaseSubscriber<ReqT> {
+
+    /** Indicates a message has been requested and not yet received. */
+    private final AtomicBoolean requested = new AtomicBoolean();
+
+    private volatile ClientCallStreamObserver<ReqT> requestStream;
+
+    @Override
+    protected void hookOnComplete() {
+
+      requestStream.onCompleted();
+    }
+
+    @Override
+    protected void hookOnError(Throwable throwable) {
+
+      requestStream.onError(throwable);
+    }
+
+    @Override
+    protected void hookOnNext(ReqT value) {
+
+      requested.set(false);
+      requestStream.onNext(value);
+      requestIfReady();
+    }
+
+    @Override
+    protected void hookOnSubscribe(Subscription subscription) {
+
+      requestIfReady();
+    }
+
+    void requestIfReady() {
+
+      if (upstream() != null
+          && requestStream != null
+          && requestStream.isReady()
+          && !isDisposed()
+          && requested.compareAndSet(false, true)) {
+        request(1);
+      }
+    }
+  }
+}
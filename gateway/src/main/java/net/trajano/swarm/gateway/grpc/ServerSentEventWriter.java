@@ -0,0 +1,82 @@
+package net.trajano.swarm.gateway.grpc;
+
+import com.google.protobuf.Message;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+/**
+ * Encodes protobuf messages as server sent events. The field prefixes are encoded once and the
+ * JSON is written straight after them into a buffer from the response's factory, which is pooled
+ * on Netty, so no {@link String} is built per event.
+ */
+@Component
+@RequiredArgsConstructor
+public class ServerSentEventWriter {
+
+  private static final byte[] EVENT_SUFFIX = "\n\n".getBytes(StandardCharsets.UTF_8);
+
+  private static final byte[] MESSAGE_EVENT_PREFIX =
+      "event:message\ndata:".getBytes(StandardCharsets.UTF_8);
+
+  private final GrpcProperties grpcProperties;
+
+  private final ProtobufToJsonWriter protobufToJsonWriter;
+
+  /**
+   * Groups the events so each group is flushed once. Events arriving within {@link
+   * GrpcProperties#getStreamFlushWindow()} of the first event of a group are written together, up
+   * to {@link GrpcProperties#getStreamFlushMaxEvents()}. A zero window flushes every event.
+   *
+   * @param eventFlux encoded events
+   * @return flush groups for {@link
+   *     org.springframework.http.server.reactive.ServerHttpResponse#writeAndFlushWith}
+   */
+  public Flux<Flux<DataBuffer>> provideFlushGroups(Flux<DataBuffer> eventFlux) {
+
+    final Duration flushWindow = grpcProperties.getStreamFlushWindow();
+    if (flushWindow.isZero()) {
+      return eventFlux.map(Flux::just);
+    }
+    // the discard hooks are below the window so they are in the context of both the window
+    // operator and the subscribers of each window, buffers queued in either are released
+    return eventFlux
+        .windowTimeout(grpcProperties.getStreamFlushMaxEvents(), flushWindow, true)
+        .map(window -> window.doOnDiscard(DataBuffer.class, DataBufferUtils::release))
+        .doOnDiscard(DataBuffer.class, DataBufferUtils::release);
+  }
+
+  /**
+   * Writes the message as a {@code message} event. The JSON printed by {@link
+   * ProtobufToJsonWriter} has no line breaks so it fits in a single {@code data} line. The buffer
+   * is released if writing fails.
+   *
+   * @param message message
+   * @param bufferFactory buffer factory, usually from the response
+   * @return buffer containing the event
+   * @throws IOException failure writing the message
+   */
+  public DataBuffer writeMessageEvent(Message message, DataBufferFactory bufferFactory)
+      throws IOException {
+
+    // JSON is usually larger than the binary form, the buffer grows if this is not enough
+    final var dataBuffer =
+        bufferFactory.allocateBuffer(
+            MESSAGE_EVENT_PREFIX.length + message.getSerializedSize() * 2 + EVENT_SUFFIX.length);
+    try {
+      dataBuffer.write(MESSAGE_EVENT_PREFIX);
+      protobufToJsonWriter.writeTo(message, dataBuffer);
+      dataBuffer.write(EVENT_SUFFIX);
+      return dataBuffer;
+    } catch (IOException | RuntimeException e) {
+      DataBufferUtils.release(dataBuffer);
+      throw e;
+    }
+  }
+}
@@ -2,24 +2,19 @@ package net.trajano.swarm.gateway.grpc;
 
 import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.*;
 
-import com.google.protobuf.Descriptors;
 import com.google.protobuf.DynamicMessage;
-import com.google.protobuf.InvalidProtocolBufferException;
-import com.google.protobuf.util.JsonFormat;
 import io.grpc.CallOptions;
 import io.grpc.Channel;
 import io.grpc.MethodDescriptor;
-import io.grpc.StatusRuntimeException;
-import io.grpc.stub.ClientCalls;
-import io.grpc.stub.StreamObserver;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.SequenceInputStream;
 import java.net.URI;
-import java.nio.charset.StandardCharsets;
+import java.util.Locale;
 import java.util.Map;
-import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.jose4j.jwt.JwtClaims;
@@ -28,35 +23,58 @@ import org.springframework.cloud.client.loadbalancer.Response;
 import org.springframework.cloud.gateway.filter.GatewayFilterChain;
 import org.springframework.cloud.gateway.filter.GlobalFilter;
 import org.springframework.cloud.gateway.filter.NettyRoutingFilter;
+import org.springframework.cloud.gateway.route.Route;
 import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
 import org.springframework.core.Ordered;
-import org.springframework.core.io.buffer.DataBufferUtils;
-import org.springframework.core.io.buffer.PooledDataBuffer;
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
-import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.stereotype.Component;
 import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.BufferOverflowStrategy;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.SynchronousSink;
 import reactor.core.scheduler.Scheduler;
+import reactor.util.function.Tuple2;
 
-/** This is a global filter that routes Unary GRPC calls. */
+/**
+ * This is a global filter that routes server streaming GRPC calls as server sent events. Messages
+ * are requested from the backend as the client reads them, see {@link StreamOverflowPolicy} for how
+ * a slow client is handled.
+ */
 @Component
 @Slf4j
 @RequiredArgsConstructor
 public class ServerStreamingGrpcGlobalFilter implements GlobalFilter, Ordered {
+
+  /** Route metadata overriding {@link GrpcProperties#getStreamBufferSize()}. */
+  public static final String STREAM_BUFFER_SIZE_METADATA = "grpc-stream-buffer-size";
+
+  /** Route metadata overriding {@link GrpcProperties#getStreamOverflowPolicy()}. */
+  public static final String STREAM_OVERFLOW_POLICY_METADATA = "grpc-stream-overflow-policy";
+
   private final ChannelProvider channelProvider;
 
+  private final MethodDescriptorRegistry methodDescriptorRegistry;
+
+  private final JsonToProtobufTranscoder jsonToProtobufTranscoder;
+
+  private final ServerSentEventWriter serverSentEventWriter;
+
   private final Scheduler grpcScheduler;
 
-  private final JsonFormat.Parser jsonParser = JsonFormat.parser();
+  private final GrpcProperties grpcProperties;
+
+  private final MeterRegistry meterRegistry;
+
+  /** Dropped message counters keyed by route ID so they are only registered once. */
+  private final Map<String, Counter> droppedCounters = new ConcurrentHashMap<>();
 
-  /** Method descriptor cache. */
-  private final Map<MethodDescriptorCacheKey, Mono<Descriptors.MethodDescriptor>>
-      methodDescriptorCache = new WeakHashMap<>();
+  /** Stream lag timers keyed by route ID so they are only registered once. */
+  private final Map<String, Timer> lagTimers = new ConcurrentHashMap<>();
 
   private Flux<DynamicMessage> assembleAndSendMessage(
       ServerWebExchange exchange,
@@ -64,63 +82,69 @@ public class ServerStreamingGrpcGlobalFilter implements GlobalFilter, Ordered {
       DynamicMessage request,
       MethodDescriptor<DynamicMessage, DynamicMessage> grpcMethodDescriptor) {
 
-    try {
-
-      if (grpcMethodDescriptor.getType() != MethodDescriptor.MethodType.SERVER_STREAMING) {
-        return Flux.error(
-            () ->
-                new IllegalStateException(
-                    "Expected Streaming, but got %s for %s"
-                        .formatted(
-                            grpcMethodDescriptor.getType(),
-                            grpcMethodDescriptor.getFullMethodName())));
-      }
-
-      final var callOptions =
-          CallOptions.DEFAULT.withCallCredentials(
-              new JwtCallCredentials(
-                  ((JwtClaims) exchange.getRequiredAttribute("jwtClaims")).toJson()));
-
-      return Flux.create(
-          emitter -> {
-            final var call = managedChannel.newCall(grpcMethodDescriptor, callOptions);
-            ClientCalls.asyncServerStreamingCall(
-                call,
-                request,
-                new StreamObserver<>() {
-                  @Override
-                  public void onCompleted() {
-                    emitter.complete();
-                  }
-
-                  @Override
-                  public void onError(Throwable t) {
-                    emitter.error(t);
-                  }
-
-                  @Override
-                  public void onNext(DynamicMessage dynamicMessage) {
-                    emitter.next(dynamicMessage);
-                  }
-                });
-          });
-
-    } catch (StatusRuntimeException e) {
-      // Fix this later
-      return Flux.error(e);
+    if (grpcMethodDescriptor.getType() != MethodDescriptor.MethodType.SERVER_STREAMING) {
+      return Flux.error(
+          () ->
+              new IllegalStateException(
+                  "Expected Streaming, but got %s for %s"
+                      .formatted(
+                          grpcMethodDescriptor.getType(),
+                          grpcMethodDescriptor.getFullMethodName())));
     }
+
+    final var callOptions =
+        CallOptions.DEFAULT.withCallCredentials(
+            new JwtCallCredentials(
+                ((JwtClaims) exchange.getRequiredAttribute("jwtClaims")).toJson()));
+
+    return ReactiveClientCalls.serverStreamingCall(
+        managedChannel, grpcMethodDescriptor, callOptions, request);
   }
 
-  private Mono<DynamicMessage> assembleRequest(
-      final InputStream inputStream, final Descriptors.MethodDescriptor methodDescriptor) {
-    try (final var jsonReader = new InputStreamReader(inputStream)) {
-      var builder = DynamicMessage.newBuilder(methodDescriptor.getInputType());
-      jsonParser.merge(jsonReader, builder);
-      return Mono.just(builder.build());
-    } catch (IOException e) {
-      // Fix this later
-      return Mono.error(e);
-    }
+  /**
+   * Bounds the number of messages held for the client according to the route's overflow policy.
+   * Each message is timestamped when it leaves the call so the time spent in the buffer can be
+   * recorded as the stream lag.
+   *
+   * @param responseFlux messages from the call
+   * @param route route, may be null
+   * @return timestamped messages
+   */
+  private Flux<Tuple2<Long, DynamicMessage>> applyOverflowPolicy(
+      Flux<DynamicMessage> responseFlux, Route route) {
+
+    final var bufferSize = getStreamBufferSize(route);
+    final var droppedCounter = droppedCounter(route);
+    final var timestampedFlux = responseFlux.timestamp();
+    return switch (getStreamOverflowPolicy(route)) {
+      case BACKPRESSURE -> timestampedFlux.limitRate(bufferSize);
+      case DROP -> timestampedFlux.onBackpressureBuffer(
+          bufferSize, dropped -> droppedCounter.increment(), BufferOverflowStrategy.DROP_LATEST);
+      case LATEST -> timestampedFlux.onBackpressureBuffer(
+          bufferSize, dropped -> droppedCounter.increment(), BufferOverflowStrategy.DROP_OLDEST);
+    };
+  }
+
+  private Counter droppedCounter(Route route) {
+
+    return droppedCounters.computeIfAbsent(
+        route == null ? "" : route.getId(),
+        routeId ->
+            Counter.builder("gateway.grpc.stream.dropped")
+                .description("Server streaming messages dropped because the client was too slow")
+                .tag("route", routeId)
+                .register(meterRegistry));
+  }
+
+  private Timer lagTimer(Route route) {
+
+    return lagTimers.computeIfAbsent(
+        route == null ? "" : route.getId(),
+        routeId ->
+            Timer.builder("gateway.grpc.stream.lag")
+                .description("Time a server streaming message waits in the gateway for the client")
+                .tag("route", routeId)
+                .register(meterRegistry));
   }
 
   @Override
@@ -135,51 +159,37 @@ public class ServerStreamingGrpcGlobalFilter implements GlobalFilter, Ordered {
         exchange.getRequiredAttribute(GATEWAY_LOADBALANCER_RESPONSE_ATTR);
 
     final URI uri = exchange.getRequiredAttribute(GATEWAY_REQUEST_URL_ATTR);
-    final String serviceInstanceId = r.getServer().getInstanceId();
+    final Route route = exchange.getAttribute(GATEWAY_ROUTE_ATTR);
     final var managedChannel = channelProvider.obtainFor(r.getServer());
 
-    // use the uri to obtain the method descriptor rather than doing reflection.
-    final var methodDescriptorMono =
-        methodDescriptorCache.computeIfAbsent(
-            new MethodDescriptorCacheKey(serviceInstanceId, uri),
-            key -> new GrpcServerReflection(managedChannel).methodDescriptor(key.uri()).cache());
-
-    // Request input stream, note that this needs to be closed at the end.
-    final var requestInputStreamMono =
-        exchange
-            .getRequest()
-            .getBody()
-            .map(dataBuffer -> dataBuffer.asInputStream(true))
-            .reduce(SequenceInputStream::new)
-            .doOnDiscard(
-                SequenceInputStream.class,
-                sequenceInputStream -> {
-                  try {
-                    sequenceInputStream.close();
-                  } catch (IOException e) {
-                    // no-op
-                  }
-                })
-            .doOnDiscard(PooledDataBuffer.class, DataBufferUtils::release);
+    final var methodDescriptorsMono =
+        methodDescriptorRegistry.provideMethodDescriptors(
+            r.getServer().getServiceId(), uri, managedChannel);
 
     return chain
         .filter(exchange)
-        .then(Mono.zip(requestInputStreamMono, methodDescriptorMono))
+        .then(methodDescriptorsMono)
         .flatMap(
-            t -> {
-              final var inputStream = t.getT1();
-              final var methodDescriptor = t.getT2();
-              return Mono.zip(
-                  assembleRequest(inputStream, methodDescriptor),
-                  Mono.just(GrpcServerReflection.methodDescriptorFromProtobuf(methodDescriptor)));
-            })
+            methodDescriptors ->
+                Mono.zip(
+                    jsonToProtobufTranscoder.provideMessage(
+                        exchange.getRequest().getBody(),
+                        methodDescriptors.protobufMethodDescriptor().getInputType()),
+                    Mono.just(methodDescriptors.grpcMethodDescriptor())))
         .flatMap(
             t -> {
               final var request = t.getT1();
               final var grpcMethodDescriptor = t.getT2();
+              final var lagTimer = lagTimer(route);
+              final var bufferFactory = exchange.getResponse().bufferFactory();
 
-              var dataBufferStream =
-                  assembleAndSendMessage(exchange, managedChannel, request, grpcMethodDescriptor)
+              // handle is used rather than flatMap so the demand from the response is passed
+              // straight through to the call
+              final var dataBufferStream =
+                  applyOverflowPolicy(
+                          assembleAndSendMessage(
+                              exchange, managedChannel, request, grpcMethodDescriptor),
+                          route)
                       // send headers on first successful value
                       .doFirst(
                           () ->
@@ -187,28 +197,64 @@ public class ServerStreamingGrpcGlobalFilter implements GlobalFilter, Ordered {
                                   .getResponse()
                                   .getHeaders()
                                   .add(HttpHeaders.CONTENT_TYPE, MediaType.TEXT_EVENT_STREAM_VALUE))
-                      .flatMap(
-                          dynamicMessage -> {
+                      .handle(
+                          (Tuple2<Long, DynamicMessage> timestamped,
+                              SynchronousSink<DataBuffer> sink) -> {
+                            lagTimer.record(
+                                System.currentTimeMillis() - timestamped.getT1(),
+                                TimeUnit.MILLISECONDS);
                             try {
-                              return Mono.just(
-                                  JsonFormat.printer()
-                                      .omittingInsignificantWhitespace()
-                                      .print(dynamicMessage));
-                            } catch (InvalidProtocolBufferException e) {
-                              return Mono.error(e);
+                              sink.next(
+                                  serverSentEventWriter.writeMessageEvent(
+                                      timestamped.getT2(), bufferFactory));
+                            } catch (IOException e) {
+                              sink.error(e);
                             }
-                          })
-                      .map(json -> ServerSentEvent.builder(json).event("message").build())
-                      .map(ServerSentEventFunctions::getString)
-                      .map(s -> s.getBytes(StandardCharsets.UTF_8))
-                      .map(bytes -> exchange.getResponse().bufferFactory().wrap(bytes))
-                      .map(Flux::just);
-
-              return exchange.getResponse().writeAndFlushWith(dataBufferStream);
+                          });
+
+              return exchange
+                  .getResponse()
+                  .writeAndFlushWith(serverSentEventWriter.provideFlushGroups(dataBufferStream));
             })
         .subscribeOn(grpcScheduler);
   }
 
+  /**
+   * Determines the stream buffer size from the {@value #STREAM_BUFFER_SIZE_METADATA} route
+   * metadata falling back to {@link GrpcProperties#getStreamBufferSize()}.
+   *
+   * @param route route, may be null
+   * @return buffer size
+   */
+  private int getStreamBufferSize(Route route) {
+
+    final var bufferSizeAttr =
+        route == null ? null : route.getMetadata().get(STREAM_BUFFER_SIZE_METADATA);
+    if (bufferSizeAttr == null) {
+      return grpcProperties.getStreamBufferSize();
+    }
+    return bufferSizeAttr instanceof Number number
+        ? number.intValue()
+        : Integer.parseInt(bufferSizeAttr.toString());
+  }
+
+  /**
+   * Determines the overflow policy from the {@value #STREAM_OVERFLOW_POLICY_METADATA} route
+   * metadata falling back to {@link GrpcProperties#getStreamOverflowPolicy()}.
+   *
+   * @param route route, may be null
+   * @return overflow policy
+   */
+  private StreamOverflowPolicy getStreamOverflowPolicy(Route route) {
+
+    final var policyAttr =
+        route == null ? null : route.getMetadata().get(STREAM_OVERFLOW_POLICY_METADATA);
+    if (policyAttr == null) {
+      return grpcProperties.getStreamOverflowPolicy();
+    }
+    return StreamOverflowPolicy.valueOf(policyAttr.toString().toUpperCase(Locale.ROOT));
+  }
+
   /** Same level as Netty filter */
   @Override
   public int getOrder() {
@@ -0,0 +1,16 @@
+package net.trajano.swarm.gateway.grpc;
+
+/** What to do when a server streaming call produces messages faster than the client reads them. */
+public enum StreamOverflowPolicy {
+  /**
+   * Slow down the backend. Messages are only requested from the gRPC call as the client consumes
+   * them, at most the buffer size ahead.
+   */
+  BACKPRESSURE,
+
+  /** Keep reading from the backend and discard new messages while the buffer is full. */
+  DROP,
+
+  /** Keep reading from the backend and discard the oldest buffered message to make room. */
+  LATEST
+}
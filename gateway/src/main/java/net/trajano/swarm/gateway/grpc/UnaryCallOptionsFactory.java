@@ -0,0 +1,66 @@
+package net.trajano.swarm.gateway.grpc;
+
+import static org.springframework.cloud.gateway.support.RouteMetadataUtils.RESPONSE_TIMEOUT_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+import io.grpc.CallOptions;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import lombok.RequiredArgsConstructor;
+import org.jose4j.jwt.JwtClaims;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.cloud.gateway.filter.NettyRoutingFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+
+/** Builds the call options for unary calls made on behalf of an exchange. */
+@Component
+@RequiredArgsConstructor
+public class UnaryCallOptionsFactory {
+
+  private final HttpClientProperties httpClientProperties;
+
+  /**
+   * Creates the call options passing the JWT claims of the exchange with a deadline if one
+   * applies.
+   *
+   * @param exchange exchange
+   * @return call options
+   */
+  public CallOptions create(ServerWebExchange exchange) {
+
+    final var callOptions =
+        CallOptions.DEFAULT.withCallCredentials(
+            new JwtCallCredentials(
+                ((JwtClaims) exchange.getRequiredAttribute("jwtClaims")).toJson()));
+    final var deadline = getDeadline(exchange.getAttribute(GATEWAY_ROUTE_ATTR));
+    if (deadline == null) {
+      return callOptions;
+    }
+    return callOptions.withDeadlineAfter(deadline.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Determines the deadline of the call using the same rules as {@link NettyRoutingFilter} does for
+   * its response timeout. The {@code response-timeout} route metadata (in milliseconds) takes
+   * precedence over the {@code spring.cloud.gateway.httpclient.response-timeout} setting and a
+   * negative route value disables the deadline.
+   *
+   * @param route route, may be null
+   * @return deadline or null if there is none.
+   */
+  private Duration getDeadline(Route route) {
+
+    final var responseTimeoutAttr =
+        route == null ? null : route.getMetadata().get(RESPONSE_TIMEOUT_ATTR);
+    if (responseTimeoutAttr == null) {
+      return httpClientProperties.getResponseTimeout();
+    }
+    final long responseTimeout =
+        responseTimeoutAttr instanceof Number number
+            ? number.longValue()
+            : Long.parseLong(responseTimeoutAttr.toString());
+    return responseTimeout < 0 ? null : Duration.ofMillis(responseTimeout);
+  }
+}
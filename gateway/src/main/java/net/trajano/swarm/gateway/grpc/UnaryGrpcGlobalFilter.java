@@ -2,25 +2,13 @@ package net.trajano.swarm.gateway.grpc;
 
 import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.*;
 
-import com.google.protobuf.Descriptors;
 import com.google.protobuf.DynamicMessage;
-import com.google.protobuf.util.JsonFormat;
-import io.grpc.CallOptions;
 import io.grpc.Channel;
 import io.grpc.MethodDescriptor;
-import io.grpc.StatusRuntimeException;
-import io.grpc.stub.ClientCalls;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.SequenceInputStream;
 import java.net.URI;
-import java.nio.charset.StandardCharsets;
-import java.util.Map;
-import java.util.WeakHashMap;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.jose4j.jwt.JwtClaims;
 import org.springframework.cloud.client.ServiceInstance;
 import org.springframework.cloud.client.loadbalancer.Response;
 import org.springframework.cloud.gateway.filter.GatewayFilterChain;
@@ -28,8 +16,8 @@ import org.springframework.cloud.gateway.filter.GlobalFilter;
 import org.springframework.cloud.gateway.filter.NettyRoutingFilter;
 import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
 import org.springframework.core.Ordered;
-import org.springframework.core.io.buffer.DataBufferUtils;
-import org.springframework.core.io.buffer.PooledDataBuffer;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
@@ -46,65 +34,46 @@ import reactor.core.scheduler.Scheduler;
 public class UnaryGrpcGlobalFilter implements GlobalFilter, Ordered {
 
   private final ChannelProvider channelProvider;
+  private final MethodDescriptorRegistry methodDescriptorRegistry;
+  private final JsonToProtobufTranscoder jsonToProtobufTranscoder;
   private final Scheduler grpcScheduler;
-  private final JsonFormat.Parser jsonParser = JsonFormat.parser();
-
-  /** Method descriptor cache. */
-  private final Map<MethodDescriptorCacheKey, Mono<Descriptors.MethodDescriptor>>
-      methodDescriptorCache = new WeakHashMap<>();
-
-  private final JsonFormat.Printer jsonPrinter =
-      JsonFormat.printer().omittingInsignificantWhitespace();
-
-  private Mono<DynamicMessage> assembleRequest(
-      final InputStream inputStream, final Descriptors.MethodDescriptor methodDescriptor) {
-    try (final var jsonReader = new InputStreamReader(inputStream)) {
-      var builder = DynamicMessage.newBuilder(methodDescriptor.getInputType());
-      jsonParser.merge(jsonReader, builder);
-      return Mono.just(builder.build());
-    } catch (IOException e) {
-      // Fix this later
-      return Mono.error(e);
-    }
-  }
+  private final UnaryCallOptionsFactory unaryCallOptionsFactory;
+  private final ProtobufToJsonWriter protobufToJsonWriter;
 
+  /**
+   * Sends the message asynchronously. No scheduler thread is held while the backend processes the
+   * request and cancelling the HTTP exchange cancels the gRPC call.
+   *
+   * @param exchange exchange
+   * @param managedChannel channel
+   * @param request request message
+   * @param grpcMethodDescriptor method descriptor
+   * @return response message
+   */
   private Mono<DynamicMessage> assembleAndSendMessage(
       ServerWebExchange exchange,
       Channel managedChannel,
       DynamicMessage request,
       MethodDescriptor<DynamicMessage, DynamicMessage> grpcMethodDescriptor) {
 
-    try {
-
-      if (grpcMethodDescriptor.getType() != MethodDescriptor.MethodType.UNARY) {
-        return Mono.error(
-            () ->
-                new IllegalStateException(
-                    "Expected Unary, but got %s for %s"
-                        .formatted(
-                            grpcMethodDescriptor.getType(),
-                            grpcMethodDescriptor.getFullMethodName())));
-      }
-
-      final var callOptions =
-          CallOptions.DEFAULT.withCallCredentials(
-              new JwtCallCredentials(
-                  ((JwtClaims) exchange.getRequiredAttribute("jwtClaims")).toJson()));
-
-      final var call = managedChannel.newCall(grpcMethodDescriptor, callOptions);
-
-      final var dynamicMessage = ClientCalls.blockingUnaryCall(call, request);
-      // at this point build the GRPC call?
-      return Mono.just(dynamicMessage);
-    } catch (StatusRuntimeException e) {
-      // Fix this later
-      return Mono.error(e);
+    if (grpcMethodDescriptor.getType() != MethodDescriptor.MethodType.UNARY) {
+      return Mono.error(
+          () ->
+              new IllegalStateException(
+                  "Expected Unary, but got %s for %s"
+                      .formatted(
+                          grpcMethodDescriptor.getType(),
+                          grpcMethodDescriptor.getFullMethodName())));
     }
+
+    return ReactiveClientCalls.unaryCall(
+        managedChannel, grpcMethodDescriptor, unaryCallOptionsFactory.create(exchange), request);
   }
 
-  private Mono<byte[]> dynamicMessageToBytes(DynamicMessage dynamicMessage) {
+  private Mono<DataBuffer> dynamicMessageToDataBuffer(
+      DataBufferFactory bufferFactory, DynamicMessage dynamicMessage) {
     try {
-      return Mono.just(jsonPrinter.print(dynamicMessage).getBytes(StandardCharsets.UTF_8));
+      return Mono.just(protobufToJsonWriter.write(dynamicMessage, bufferFactory));
     } catch (IOException e) {
       return Mono.error(e);
     }
@@ -123,62 +92,40 @@ public class UnaryGrpcGlobalFilter implements GlobalFilter, Ordered {
         exchange.getRequiredAttribute(GATEWAY_LOADBALANCER_RESPONSE_ATTR);
 
     final URI uri = exchange.getRequiredAttribute(GATEWAY_REQUEST_URL_ATTR);
-    final String serviceInstanceId = r.getServer().getInstanceId();
     final var managedChannel = channelProvider.obtainFor(r.getServer());
 
-    // use the uri to obtain the method descriptor rather than doing reflection.
-    final var methodDescriptorMono =
-        methodDescriptorCache.computeIfAbsent(
-            new MethodDescriptorCacheKey(serviceInstanceId, uri),
-            key -> new GrpcServerReflection(managedChannel).methodDescriptor(key.uri()).cache());
-
-    // Request input stream, note that this needs to be closed at the end.
-    final var requestInputStreamMono =
-        exchange
-            .getRequest()
-            .getBody()
-            .map(dataBuffer -> dataBuffer.asInputStream(true))
-            .reduce(SequenceInputStream::new)
-            .doOnDiscard(
-                SequenceInputStream.class,
-                sequenceInputStream -> {
-                  try {
-                    sequenceInputStream.close();
-                  } catch (IOException e) {
-                    // no-op
-                  }
-                })
-            .doOnDiscard(PooledDataBuffer.class, DataBufferUtils::release);
+    final var methodDescriptorsMono =
+        methodDescriptorRegistry.provideMethodDescriptors(
+            r.getServer().getServiceId(), uri, managedChannel);
 
     return chain
         .filter(exchange)
-        .then(Mono.zip(requestInputStreamMono, methodDescriptorMono))
+        .then(methodDescriptorsMono)
         .flatMap(
-            t -> {
-              final var inputStream = t.getT1();
-              final var methodDescriptor = t.getT2();
-              return Mono.zip(
-                  assembleRequest(inputStream, methodDescriptor),
-                  Mono.just(GrpcServerReflection.methodDescriptorFromProtobuf(methodDescriptor)));
-            })
+            methodDescriptors ->
+                jsonToProtobufTranscoder
+                    .provideMessage(
+                        exchange.getRequest().getBody(),
+                        methodDescriptors.protobufMethodDescriptor().getInputType())
+                    .flatMap(
+                        request ->
+                            assembleAndSendMessage(
+                                exchange,
+                                managedChannel,
+                                request,
+                                methodDescriptors.grpcMethodDescriptor())))
         .flatMap(
-            t -> {
-              final var request = t.getT1();
-              final var grpcMethodDescriptor = t.getT2();
-              return assembleAndSendMessage(
-                  exchange, managedChannel, request, grpcMethodDescriptor);
-            })
-        .flatMap(this::dynamicMessageToBytes)
+            dynamicMessage ->
+                dynamicMessageToDataBuffer(exchange.getResponse().bufferFactory(), dynamicMessage))
         .flatMap(
-            messageBytes -> {
+            buffer -> {
               final var exchangeResponse = exchange.getResponse();
-              var buffer = exchangeResponse.bufferFactory().wrap(messageBytes);
               exchangeResponse
                   .getHeaders()
                   .add(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
               exchangeResponse
                   .getHeaders()
-                  .add(HttpHeaders.CONTENT_LENGTH, String.valueOf(messageBytes.length));
+                  .add(HttpHeaders.CONTENT_LENGTH, String.valueOf(buffer.readableByteCount()));
 
               return exchangeResponse.writeWith(Mono.just(buffer));
             })
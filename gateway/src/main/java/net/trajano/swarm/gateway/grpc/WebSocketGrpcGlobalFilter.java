@@ -0,0 +1,228 @@
+package net.trajano.swarm.gateway.grpc;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.*;
+
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.DynamicMessage;
+import io.grpc.CallOptions;
+import io.grpc.MethodDescriptor;
+import io.grpc.StatusRuntimeException;
+import java.io.IOException;
+import java.net.URI;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.jose4j.jwt.JwtClaims;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.WebsocketRoutingFilter;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.socket.CloseStatus;
+import org.springframework.web.reactive.socket.WebSocketMessage;
+import org.springframework.web.reactive.socket.WebSocketSession;
+import org.springframework.web.reactive.socket.server.WebSocketService;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SynchronousSink;
+
+/**
+ * This is a global filter that routes client streaming and bidirectional streaming GRPC calls over
+ * a WebSocket. Each text frame received is a JSON request message and each response message is
+ * sent back as a JSON text frame. Closing the socket from the client half-closes the call.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class WebSocketGrpcGlobalFilter implements GlobalFilter, Ordered {
+
+  /** Maximum length of a close reason, the close frame payload is limited to 125 bytes. */
+  private static final int MAX_CLOSE_REASON_LENGTH = 120;
+
+  private final ChannelProvider channelProvider;
+
+  private final MethodDescriptorRegistry methodDescriptorRegistry;
+
+  private final JsonToProtobufTranscoder jsonToProtobufTranscoder;
+
+  private final ProtobufToJsonWriter protobufToJsonWriter;
+
+  private final WebSocketService webSocketService;
+
+  private static String closeReason(String description) {
+
+    if (description == null) {
+      return null;
+    }
+    return description.length() > MAX_CLOSE_REASON_LENGTH
+        ? description.substring(0, MAX_CLOSE_REASON_LENGTH)
+        : description;
+  }
+
+  @Override
+  public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+
+    if (!isAccepted(exchange)) {
+      return chain.filter(exchange);
+    }
+
+    ServerWebExchangeUtils.setAlreadyRouted(exchange);
+
+    final Response<ServiceInstance> r =
+        exchange.getRequiredAttribute(GATEWAY_LOADBALANCER_RESPONSE_ATTR);
+
+    final URI uri = exchange.getRequiredAttribute(GATEWAY_REQUEST_URL_ATTR);
+    final var managedChannel = channelProvider.obtainFor(r.getServer());
+
+    // streams are long-lived so no deadline is applied
+    final var callOptions =
+        CallOptions.DEFAULT.withCallCredentials(
+            new JwtCallCredentials(
+                ((JwtClaims) exchange.getRequiredAttribute("jwtClaims")).toJson()));
+
+    return chain
+        .filter(exchange)
+        .then(
+            methodDescriptorRegistry.provideMethodDescriptors(
+                r.getServer().getServiceId(), uri, managedChannel))
+        .flatMap(
+            methodDescriptors -> {
+              final var grpcMethodDescriptor = methodDescriptors.grpcMethodDescriptor();
+              if (grpcMethodDescriptor.getType() != MethodDescriptor.MethodType.CLIENT_STREAMING
+                  && grpcMethodDescriptor.getType()
+                      != MethodDescriptor.MethodType.BIDI_STREAMING) {
+                return Mono.error(
+                    () ->
+                        new IllegalStateException(
+                            "Expected client or bidirectional streaming, but got %s for %s"
+                                .formatted(
+                                    grpcMethodDescriptor.getType(),
+                                    grpcMethodDescriptor.getFullMethodName())));
+              }
+              final var inputType = methodDescriptors.protobufMethodDescriptor().getInputType();
+              return webSocketService.handleRequest(
+                  exchange,
+                  session ->
+                      handleSession(
+                          session,
+                          ReactiveClientCalls.streamingRequestCall(
+                              managedChannel,
+                              grpcMethodDescriptor,
+                              callOptions,
+                              provideRequests(session, inputType))));
+            });
+  }
+
+  /** Runs before {@link WebsocketRoutingFilter} which would otherwise proxy the upgrade. */
+  @Override
+  public int getOrder() {
+
+    return Ordered.LOWEST_PRECEDENCE - 2;
+  }
+
+  /**
+   * Determines the close status from the failure of the call. If the client sent a frame that
+   * could not be parsed the call is cancelled with the parse failure as the cause.
+   *
+   * @param throwable failure
+   * @return close status
+   */
+  private static CloseStatus closeStatusFor(Throwable throwable) {
+
+    if (throwable instanceof StatusRuntimeException e && e.getCause() instanceof IOException) {
+      return CloseStatus.BAD_DATA.withReason(closeReason(e.getCause().getMessage()));
+    } else if (throwable instanceof StatusRuntimeException e) {
+      return CloseStatus.SERVER_ERROR.withReason(
+          closeReason(e.getStatus().getCode() + ": " + e.getStatus().getDescription()));
+    } else {
+      return CloseStatus.SERVER_ERROR;
+    }
+  }
+
+  /**
+   * Sends the responses back to the client and closes the socket with the status of the call.
+   *
+   * @param session session
+   * @param responseFlux responses
+   * @return completion
+   */
+  private Mono<Void> handleSession(WebSocketSession session, Flux<DynamicMessage> responseFlux) {
+
+    return session
+        .send(
+            responseFlux.handle(
+                (DynamicMessage dynamicMessage, SynchronousSink<WebSocketMessage> sink) -> {
+                  try {
+                    sink.next(
+                        new WebSocketMessage(
+                            WebSocketMessage.Type.TEXT,
+                            protobufToJsonWriter.write(dynamicMessage, session.bufferFactory())));
+                  } catch (IOException e) {
+                    sink.error(e);
+                  }
+                }))
+        .then(Mono.defer(() -> session.close(CloseStatus.NORMAL)))
+        .onErrorResume(e -> session.close(closeStatusFor(e)));
+  }
+
+  /**
+   * The exchange is accepted if all the following conditions hold true:
+   *
+   * <ul>
+   *   <li>{@link
+   *       org.springframework.cloud.gateway.support.ServerWebExchangeUtils#GATEWAY_SCHEME_PREFIX_ATTR}
+   *       is {@code grpc}. That is set by the {@link GrpcGatewayFilterFactory}.
+   *   <li>{@link ServerHttpRequest#getMethod()} is {@link HttpMethod#GET}
+   *   <li>{@link ServerHttpRequest#getPath()} } contains exactly two non-separator segments
+   *   <li>{@link HttpHeaders#UPGRADE} is {@code websocket}
+   * </ul>
+   *
+   * @param exchange exchange
+   * @return true if accepted
+   */
+  private boolean isAccepted(ServerWebExchange exchange) {
+
+    return ("grpc".equals(exchange.getAttribute(GATEWAY_SCHEME_PREFIX_ATTR)))
+        && exchange.getRequest().getMethod() == HttpMethod.GET
+        && ((URI) exchange.getRequiredAttribute(GATEWAY_REQUEST_URL_ATTR))
+            .getPath()
+            .matches("/\\w+/\\w+")
+        && "websocket".equalsIgnoreCase(exchange.getRequest().getHeaders().getUpgrade());
+  }
+
+  /**
+   * Provides the request messages from the text frames received on the session.
+   *
+   * @param session session
+   * @param inputType request message type
+   * @return request messages
+   */
+  private Flux<DynamicMessage> provideRequests(
+      WebSocketSession session, Descriptors.Descriptor inputType) {
+
+    return session
+        .receive()
+        .filter(message -> message.getType() == WebSocketMessage.Type.TEXT)
+        .handle(
+            (WebSocketMessage message, SynchronousSink<DynamicMessage> sink) ->
+                mapWebSocketMessageToDynamicMessage(message, inputType, sink));
+  }
+
+  private void mapWebSocketMessageToDynamicMessage(
+      WebSocketMessage message,
+      Descriptors.Descriptor inputType,
+      SynchronousSink<DynamicMessage> sink) {
+
+    try (final var inputStream = message.getPayload().asInputStream()) {
+      sink.next(jsonToProtobufTranscoder.parse(inputStream, inputType));
+    } catch (IOException e) {
+      sink.error(e);
+    }
+  }
+}
@@ -0,0 +1,36 @@
+package net.trajano.swarm.gateway.jwks;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.RequiredArgsConstructor;
+import net.trajano.swarm.gateway.auth.claims.CryptoProvider;
+import net.trajano.swarm.gateway.auth.claims.SigningKey;
+import org.jose4j.jwk.JsonWebKeySet;
+import org.springframework.stereotype.Component;
+
+/**
+ * Decoded signing keys for the key sets provided by {@link JwksProvider#getSigningKey(int)}. The
+ * provider hands out the same {@link JsonWebKeySet} instances until the key block rolls over, so
+ * each set is decoded once. Sets are held weakly and compared by identity, the entry goes away
+ * when the provider drops the set.
+ */
+@Component
+@RequiredArgsConstructor
+public class SigningKeyRegistry {
+
+  private final CryptoProvider cryptoProvider;
+
+  private final Cache<JsonWebKeySet, SigningKey> signingKeys =
+      Caffeine.newBuilder().weakKeys().build();
+
+  /**
+   * Obtains the decoded signing key for the key set.
+   *
+   * @param jwks key set from {@link JwksProvider#getSigningKey(int)}
+   * @return signing key
+   */
+  public SigningKey signingKeyFor(JsonWebKeySet jwks) {
+
+    return signingKeys.get(jwks, k -> SigningKey.fromJwks(k, cryptoProvider));
+  }
+}
@@ -28,6 +28,8 @@ public class CoreRoutes {
 
   private final CorsConfigurer corsConfigurer;
 
+  private final EncodedGatewayResponses encodedGatewayResponses;
+
   @Value("${gateway.root-html-redirect-uri:#{null}}")
   private URI rootHtmlRedirectUri;
 
@@ -69,9 +71,8 @@ public class CoreRoutes {
     return route(
         path("/clientError"),
         request ->
-            ServerResponse.status(HttpStatus.BAD_REQUEST)
-                .contentType(MediaType.APPLICATION_JSON)
-                .bodyValue(GatewayResponse.builder().error("client_error").ok(false).build()));
+            encodedGatewayResponses.provideErrorServerResponse(
+                HttpStatus.BAD_REQUEST, EncodedGatewayResponses.CLIENT_ERROR));
   }
 
   RouterFunction<ServerResponse> corsRequest() {
@@ -132,10 +133,8 @@ public class CoreRoutes {
     return route(
         path("/methodNotAllowed").and(request -> "forward".equals(request.uri().getScheme())),
         request ->
-            ServerResponse.status(HttpStatus.METHOD_NOT_ALLOWED)
-                .contentType(MediaType.APPLICATION_JSON)
-                .bodyValue(
-                    GatewayResponse.builder().error("method_not_allowed").ok(false).build()));
+            encodedGatewayResponses.provideErrorServerResponse(
+                HttpStatus.METHOD_NOT_ALLOWED, EncodedGatewayResponses.METHOD_NOT_ALLOWED));
   }
 
   @Bean
@@ -168,7 +167,7 @@ public class CoreRoutes {
                 .header(HttpHeaders.ACCESS_CONTROL_ALLOW_METHODS, "GET,HEAD")
                 .header(HttpHeaders.ACCESS_CONTROL_MAX_AGE, "86400")
                 .contentType(MediaType.APPLICATION_JSON)
-                .bodyValue(GatewayResponse.builder().ok(true).build()));
+                .body(encodedGatewayResponses.okBody()));
   }
 
   @Bean
@@ -177,9 +176,7 @@ public class CoreRoutes {
     return route(
         path("/unavailable"),
         request ->
-            ServerResponse.status(HttpStatus.SERVICE_UNAVAILABLE)
-                .contentType(MediaType.APPLICATION_JSON)
-                .bodyValue(
-                    GatewayResponse.builder().error("service_unavailable").ok(false).build()));
+            encodedGatewayResponses.provideErrorServerResponse(
+                HttpStatus.SERVICE_UNAVAILABLE, EncodedGatewayResponses.SERVICE_UNAVAILABLE));
   }
 }
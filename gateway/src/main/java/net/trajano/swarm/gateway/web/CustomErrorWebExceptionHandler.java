@@ -1,23 +1,31 @@
 package net.trajano.swarm.gateway.web;
 
 import brave.Tracing;
+import net.trajano.swarm.gateway.PenaltyScheduler;
 import org.springframework.boot.autoconfigure.web.WebProperties;
 import org.springframework.boot.autoconfigure.web.reactive.error.AbstractErrorWebExceptionHandler;
 import org.springframework.boot.web.error.ErrorAttributeOptions;
 import org.springframework.boot.web.reactive.error.ErrorAttributes;
 import org.springframework.context.ApplicationContext;
 import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpStatusCode;
 import org.springframework.http.MediaType;
 import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.server.*;
+import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Mono;
+import reactor.netty.Connection;
+import reactor.netty.http.server.HttpServerResponse;
 
 @Component
 @Order(-2)
 public class CustomErrorWebExceptionHandler extends AbstractErrorWebExceptionHandler {
 
+  private final EncodedGatewayResponses encodedGatewayResponses;
+
   private final Tracing tracing;
 
   /**
@@ -26,18 +34,41 @@ public class CustomErrorWebExceptionHandler extends AbstractErrorWebExceptionHan
    * @param errorAttributes the error attributes
    * @param applicationContext the application context
    * @param tracing tracing
+   * @param encodedGatewayResponses encoded gateway responses
    * @since 2.4.0
    */
   public CustomErrorWebExceptionHandler(
       ErrorAttributes errorAttributes,
       ApplicationContext applicationContext,
       ServerCodecConfigurer serverCodecConfigurer,
-      Tracing tracing) {
+      Tracing tracing,
+      EncodedGatewayResponses encodedGatewayResponses) {
 
     super(errorAttributes, new WebProperties.Resources(), applicationContext);
     super.setMessageWriters(serverCodecConfigurer.getWriters());
     super.setMessageReaders(serverCodecConfigurer.getReaders());
     this.tracing = tracing;
+    this.encodedGatewayResponses = encodedGatewayResponses;
+  }
+
+  /**
+   * Drops the connection if the request was rejected because too many penalties are pending,
+   * otherwise renders the error response.
+   *
+   * @param exchange exchange
+   * @param throwable error
+   * @return completion
+   */
+  @Override
+  public Mono<Void> handle(ServerWebExchange exchange, Throwable throwable) {
+
+    if (PenaltyScheduler.isRejection(throwable)
+        && ServerHttpResponseDecorator.getNativeResponse(exchange.getResponse())
+            instanceof HttpServerResponse nativeResponse) {
+      nativeResponse.withConnection(Connection::dispose);
+      return Mono.empty();
+    }
+    return super.handle(exchange, throwable);
   }
 
   @Override
@@ -63,16 +94,11 @@ public class CustomErrorWebExceptionHandler extends AbstractErrorWebExceptionHan
                           "" + request.uri() + " " + request.path() + " " + request.attributes())
                       .build()));
     } else if (errorStatus >= 400 && errorStatus < 500) {
-      return ServerResponse.status(errorStatus)
-          .contentType(MediaType.APPLICATION_JSON)
-          .body(
-              BodyInserters.fromValue(
-                  GatewayResponse.builder().ok(false).error("client_error").build()));
-
+      return encodedGatewayResponses.provideErrorServerResponse(
+          HttpStatusCode.valueOf(errorStatus), EncodedGatewayResponses.CLIENT_ERROR);
     } else {
-      return ServerResponse.status(errorStatus)
-          .contentType(MediaType.APPLICATION_JSON)
-          .body(BodyInserters.fromValue(GatewayResponse.builder().ok(false).build()));
+      return encodedGatewayResponses.provideErrorServerResponse(
+          HttpStatusCode.valueOf(errorStatus), null);
     }
   }
 }
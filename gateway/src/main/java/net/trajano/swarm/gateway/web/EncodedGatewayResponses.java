@@ -0,0 +1,154 @@
+package net.trajano.swarm.gateway.web;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.http.ReactiveHttpOutputMessage;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.BodyInserter;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+
+/**
+ * {@link GatewayResponse} bodies that do not vary, encoded to JSON once. Each response wraps the
+ * encoded bytes in a data buffer without copying them, so rejecting a request does not serialize
+ * anything.
+ */
+@Component
+public class EncodedGatewayResponses {
+
+  public static final String CLIENT_ERROR = "client_error";
+
+  public static final String INVALID_CLIENT = "invalid_client";
+
+  public static final String INVALID_TOKEN = "invalid_token";
+
+  public static final String METHOD_NOT_ALLOWED = "method_not_allowed";
+
+  public static final String MISSING_TOKEN = "missing_token";
+
+  public static final String SERVICE_UNAVAILABLE = "service_unavailable";
+
+  public static final String TOO_MANY_REQUESTS = "too_many_requests";
+
+  /** Encoded bodies keyed by error code. The arrays must not be modified. */
+  private final Map<String, byte[]> errorBodies;
+
+  /** Challenges keyed by scheme, realm and error code. */
+  private final Map<String, String> challenges = new ConcurrentHashMap<>();
+
+  /** Body of a failure without an error code. */
+  private final byte[] failedBody;
+
+  private final byte[] okBody;
+
+  public EncodedGatewayResponses(ObjectMapper objectMapper) {
+
+    errorBodies =
+        Map.of(
+            CLIENT_ERROR, encode(objectMapper, CLIENT_ERROR),
+            INVALID_CLIENT, encode(objectMapper, INVALID_CLIENT),
+            INVALID_TOKEN, encode(objectMapper, INVALID_TOKEN),
+            METHOD_NOT_ALLOWED, encode(objectMapper, METHOD_NOT_ALLOWED),
+            MISSING_TOKEN, encode(objectMapper, MISSING_TOKEN),
+            SERVICE_UNAVAILABLE, encode(objectMapper, SERVICE_UNAVAILABLE),
+            TOO_MANY_REQUESTS, encode(objectMapper, TOO_MANY_REQUESTS));
+    failedBody = encode(objectMapper, GatewayResponse.builder().ok(false).build());
+    okBody = encode(objectMapper, GatewayResponse.builder().ok(true).build());
+  }
+
+  private static byte[] encode(ObjectMapper objectMapper, String error) {
+
+    return encode(objectMapper, GatewayResponse.builder().ok(false).error(error).build());
+  }
+
+  private static byte[] encode(ObjectMapper objectMapper, GatewayResponse gatewayResponse) {
+
+    try {
+      return objectMapper.writeValueAsBytes(gatewayResponse);
+    } catch (JsonProcessingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static BodyInserter<byte[], ReactiveHttpOutputMessage> inserter(byte[] body) {
+
+    return (outputMessage, context) ->
+        outputMessage.writeWith(Mono.fromSupplier(() -> outputMessage.bufferFactory().wrap(body)));
+  }
+
+  private byte[] errorBody(String error) {
+
+    if (error == null) {
+      return failedBody;
+    }
+    final var body = errorBodies.get(error);
+    if (body == null) {
+      throw new IllegalArgumentException("no encoded response for %s".formatted(error));
+    }
+    return body;
+  }
+
+  /**
+   * Provides the {@code WWW-Authenticate} value, rendered once per scheme, realm and error.
+   *
+   * @param scheme authentication scheme
+   * @param realm realm
+   * @param error error code, null to leave it out
+   * @return challenge
+   */
+  public String challenge(String scheme, String realm, String error) {
+
+    return challenges.computeIfAbsent(
+        scheme + ' ' + realm + ' ' + error,
+        k -> {
+          if (error == null) {
+            return "%s realm=\"%s\"".formatted(scheme, realm);
+          }
+          return "%s realm=\"%s\", error=\"%s\"".formatted(scheme, realm, error);
+        });
+  }
+
+  /**
+   * Provides a server response with the failure body.
+   *
+   * @param status status code
+   * @param error error code, null for a failure without one
+   * @return server response
+   */
+  public Mono<ServerResponse> provideErrorServerResponse(HttpStatusCode status, String error) {
+
+    return ServerResponse.status(status)
+        .contentType(MediaType.APPLICATION_JSON)
+        .body(inserter(errorBody(error)));
+  }
+
+  /**
+   * Provides the body of an OK response.
+   *
+   * @return body inserter
+   */
+  public BodyInserter<byte[], ReactiveHttpOutputMessage> okBody() {
+
+    return inserter(okBody);
+  }
+
+  /**
+   * Writes the failure body to the response. The status is expected to be set already.
+   *
+   * @param response server response
+   * @param error error code
+   * @return completion
+   */
+  public Mono<Void> writeError(ServerHttpResponse response, String error) {
+
+    final var body = errorBody(error);
+    response.getHeaders().set(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
+    return response.writeWith(Mono.fromSupplier(() -> response.bufferFactory().wrap(body)));
+  }
+}
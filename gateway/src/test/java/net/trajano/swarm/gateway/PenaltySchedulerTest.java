@@ -0,0 +1,66 @@
+package net.trajano.swarm.gateway;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+class PenaltySchedulerTest {
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+  private final PenaltyScheduler penaltyScheduler =
+      new PenaltyScheduler(
+          Duration.ofMillis(10), 2, Schedulers.newParallel("penalty-test"), meterRegistry);
+
+  @AfterEach
+  void dispose() {
+
+    penaltyScheduler.dispose();
+  }
+
+  @Test
+  void delays() {
+
+    final var start = System.nanoTime();
+    StepVerifier.create(Mono.just("a").delayElement(Duration.ofMillis(100), penaltyScheduler))
+        .expectNext("a")
+        .verifyComplete();
+
+    assertThat(Duration.ofNanos(System.nanoTime() - start)).isGreaterThan(Duration.ofMillis(90));
+    assertThat(meterRegistry.get("gateway.penalty.pending").gauge().value()).isZero();
+  }
+
+  @Test
+  void rejectsPastMaximumPending() {
+
+    final var pending1 = Mono.delay(Duration.ofSeconds(10), penaltyScheduler).subscribe();
+    final var pending2 = Mono.delay(Duration.ofSeconds(10), penaltyScheduler).subscribe();
+
+    assertThat(meterRegistry.get("gateway.penalty.pending").gauge().value()).isEqualTo(2.0);
+    StepVerifier.create(Mono.just("a").delayElement(Duration.ofSeconds(10), penaltyScheduler))
+        .expectErrorMatches(PenaltyScheduler::isRejection)
+        .verify(Duration.ofSeconds(1));
+    assertThat(meterRegistry.get("gateway.penalty.rejected").counter().count()).isEqualTo(1.0);
+
+    pending1.dispose();
+    pending2.dispose();
+  }
+
+  @Test
+  void cancelledDelayDoesNotRun() {
+
+    StepVerifier.create(Mono.just("a").delayElement(Duration.ofMillis(50), penaltyScheduler))
+        .thenCancel()
+        .verify();
+
+    StepVerifier.create(Mono.just("b").delayElement(Duration.ofMillis(50), penaltyScheduler))
+        .expectNext("b")
+        .verifyComplete();
+  }
+}
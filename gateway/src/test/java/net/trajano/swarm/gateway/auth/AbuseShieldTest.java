@@ -0,0 +1,132 @@
+package net.trajano.swarm.gateway.auth;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.net.InetSocketAddress;
+import net.trajano.swarm.gateway.common.AuthProperties;
+import net.trajano.swarm.gateway.redis.RedisKeyBlocks;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+
+class AbuseShieldTest {
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+  private static MockServerWebExchange exchangeFrom(String address) {
+
+    return MockServerWebExchange.from(
+        MockServerHttpRequest.get("/whoami").remoteAddress(new InetSocketAddress(address, 12345)));
+  }
+
+  private static MockServerWebExchange exchangeForwardedFor(String address) {
+
+    return MockServerWebExchange.from(
+        MockServerHttpRequest.get("/whoami")
+            .remoteAddress(new InetSocketAddress("10.0.0.254", 12345))
+            .header("X-Forwarded-For", "192.0.2.1, " + address));
+  }
+
+  private double count(String name, String source) {
+
+    return meterRegistry.get(name).tag("source", source).counter().count();
+  }
+
+  private AbuseShield abuseShield(AuthProperties authProperties) {
+
+    return new AbuseShield(
+        authProperties,
+        new RedisKeyBlocks(authProperties),
+        new StaticListableBeanFactory().getBeanProvider(ReactiveStringRedisTemplate.class),
+        meterRegistry);
+  }
+
+  private AuthProperties authProperties() {
+
+    final var authProperties = new AuthProperties();
+    authProperties.setAbuseShieldEnabled(true);
+    authProperties.setAbuseShieldAddressFailureThreshold(3);
+    authProperties.setAbuseShieldClientFailureThreshold(5);
+    authProperties.setAbuseShieldSlots(1024);
+    authProperties.setAbuseShieldTrustedProxies(1);
+    return authProperties;
+  }
+
+  @Test
+  void disabled() {
+
+    final var authProperties = authProperties();
+    authProperties.setAbuseShieldEnabled(false);
+    final var abuseShield = abuseShield(authProperties);
+
+    for (var i = 0; i < 10; ++i) {
+      abuseShield.recordFailure(exchangeFrom("10.0.0.1"), "client");
+    }
+
+    assertThat(abuseShield.shed(exchangeFrom("10.0.0.1"), "client")).isFalse();
+  }
+
+  @Test
+  void shedsAddress() {
+
+    final var abuseShield = abuseShield(authProperties());
+
+    for (var i = 0; i < 2; ++i) {
+      abuseShield.recordFailure(exchangeFrom("10.0.0.1"), null);
+    }
+    assertThat(abuseShield.shed(exchangeFrom("10.0.0.1"), null)).isFalse();
+
+    abuseShield.recordFailure(exchangeFrom("10.0.0.1"), null);
+    assertThat(abuseShield.shed(exchangeFrom("10.0.0.1"), null)).isTrue();
+    assertThat(abuseShield.shed(exchangeFrom("10.0.0.2"), null)).isFalse();
+
+    assertThat(count("gateway.abuse.failures", "address")).isEqualTo(3.0);
+    assertThat(count("gateway.abuse.shed", "address")).isEqualTo(1.0);
+  }
+
+  @Test
+  void shedsForwardedAddress() {
+
+    final var abuseShield = abuseShield(authProperties());
+
+    for (var i = 0; i < 3; ++i) {
+      abuseShield.recordFailure(exchangeForwardedFor("10.0.0.1"), null);
+    }
+
+    assertThat(abuseShield.shed(exchangeForwardedFor("10.0.0.1"), null)).isTrue();
+    assertThat(abuseShield.shed(exchangeForwardedFor("10.0.0.2"), null)).isFalse();
+    assertThat(abuseShield.shed(exchangeFrom("10.0.0.254"), null)).isFalse();
+  }
+
+  @Test
+  void ignoresForwardedAddressWithoutTrustedProxies() {
+
+    final var authProperties = authProperties();
+    authProperties.setAbuseShieldTrustedProxies(0);
+    final var abuseShield = abuseShield(authProperties);
+
+    for (var i = 0; i < 3; ++i) {
+      abuseShield.recordFailure(exchangeForwardedFor("10.0.0." + i), null);
+    }
+
+    assertThat(abuseShield.shed(exchangeForwardedFor("10.0.0.9"), null)).isTrue();
+    assertThat(abuseShield.shed(exchangeFrom("10.0.0.254"), null)).isTrue();
+  }
+
+  @Test
+  void shedsClient() {
+
+    final var abuseShield = abuseShield(authProperties());
+
+    for (var i = 0; i < 5; ++i) {
+      abuseShield.recordFailure(exchangeFrom("10.0.0." + i), "bad");
+    }
+
+    assertThat(abuseShield.shed(exchangeFrom("10.0.0.10"), "bad")).isTrue();
+    assertThat(abuseShield.shed(exchangeFrom("10.0.0.10"), "good")).isFalse();
+    assertThat(count("gateway.abuse.shed", "client")).isEqualTo(1.0);
+  }
+}
@@ -0,0 +1,188 @@
+package net.trajano.swarm.gateway.auth;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import net.trajano.swarm.gateway.PenaltyScheduler;
+import net.trajano.swarm.gateway.auth.claims.ClaimsService;
+import net.trajano.swarm.gateway.auth.claims.ExpiredTokenException;
+import net.trajano.swarm.gateway.common.AuthProperties;
+import net.trajano.swarm.gateway.redis.RedisKeyBlocks;
+import net.trajano.swarm.gateway.web.EncodedGatewayResponses;
+import org.jose4j.jwt.JwtClaims;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.cloud.client.discovery.ReactiveDiscoveryClient;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+class ProtectedResourceGatewayFilterFactoryTest {
+
+  private static final GatewayFilterChain CHAIN = exchange -> Mono.empty();
+
+  private final AuthProperties authProperties = new AuthProperties();
+
+  private final ClaimsService claimsService = mock(ClaimsService.class);
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+  private final PenaltyScheduler penaltyScheduler =
+      new PenaltyScheduler(
+          Duration.ofMillis(10), 1, Schedulers.newParallel("penalty-test"), meterRegistry);
+
+  private static MockServerWebExchange exchangeWithToken(String token) {
+
+    return MockServerWebExchange.from(
+        MockServerHttpRequest.get("/whoami")
+            .remoteAddress(new InetSocketAddress("10.0.0.1", 12345))
+            .header(HttpHeaders.AUTHORIZATION, "Bearer " + token));
+  }
+
+  private void enableAbuseShield() {
+
+    authProperties.setAbuseShieldEnabled(true);
+    authProperties.setAbuseShieldAddressFailureThreshold(2);
+    authProperties.setPenaltyDelayInMillis(0);
+  }
+
+  private HttpStatus filterStatus(GatewayFilter filter, String token) {
+
+    final var exchange = exchangeWithToken(token);
+    StepVerifier.create(filter.filter(exchange, CHAIN)).verifyComplete();
+    return (HttpStatus) exchange.getResponse().getStatusCode();
+  }
+
+  @AfterEach
+  void dispose() {
+
+    penaltyScheduler.dispose();
+  }
+
+  private GatewayFilter filter() {
+
+    final var config = new ProtectedResourceGatewayFilterFactory.Config();
+    config.setServiceId("whoami");
+    config.setServiceProtected(true);
+
+    return new ProtectedResourceGatewayFilterFactory(
+            mock(ReactiveDiscoveryClient.class),
+            authProperties,
+            claimsService,
+            mock(IdentityService.class, CALLS_REAL_METHODS),
+            meterRegistry.counter("succeeded"),
+            new EncodedGatewayResponses(new ObjectMapper()),
+            new AbuseShield(
+                authProperties,
+                new RedisKeyBlocks(authProperties),
+                new StaticListableBeanFactory().getBeanProvider(ReactiveStringRedisTemplate.class),
+                meterRegistry),
+            penaltyScheduler)
+        .apply(config);
+  }
+
+  @Test
+  void badTokensTripAbuseShield() {
+
+    enableAbuseShield();
+    when(claimsService.getClaims("bad"))
+        .thenReturn(Mono.error(new SecurityException("bad signature")));
+    final var filter = filter();
+
+    assertThat(filterStatus(filter, "bad")).isEqualTo(HttpStatus.UNAUTHORIZED);
+    assertThat(filterStatus(filter, "bad")).isEqualTo(HttpStatus.UNAUTHORIZED);
+    assertThat(filterStatus(filter, "bad")).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+  }
+
+  @Test
+  void expiredTokensDoNotTripAbuseShield() {
+
+    enableAbuseShield();
+    when(claimsService.getClaims("expired"))
+        .thenReturn(Mono.error(new ExpiredTokenException(null)));
+    final var filter = filter();
+
+    for (var i = 0; i < 5; ++i) {
+      assertThat(filterStatus(filter, "expired")).isEqualTo(HttpStatus.UNAUTHORIZED);
+    }
+  }
+
+  @Test
+  void verifiedTokensAreNotShed() {
+
+    enableAbuseShield();
+    when(claimsService.getClaims("bad"))
+        .thenReturn(Mono.error(new SecurityException("bad signature")));
+    when(claimsService.getVerifiedClaims("good")).thenReturn(new JwtClaims());
+    final var filter = filter();
+
+    filterStatus(filter, "bad");
+    filterStatus(filter, "bad");
+    assertThat(filterStatus(filter, "bad")).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+    assertThat(filterStatus(filter, "good")).isNull();
+  }
+
+  @Test
+  void invalidTokenIsPenalized() {
+
+    authProperties.setPenaltyDelayInMillis(100);
+    when(claimsService.getClaims("bad"))
+        .thenReturn(Mono.error(new SecurityException("bad signature")));
+    final var exchange = exchangeWithToken("bad");
+
+    final var start = System.nanoTime();
+    StepVerifier.create(filter().filter(exchange, CHAIN)).verifyComplete();
+
+    assertThat(Duration.ofNanos(System.nanoTime() - start)).isGreaterThan(Duration.ofMillis(90));
+    assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.UNAUTHORIZED);
+    assertThat(exchange.getResponse().getBodyAsString().block())
+        .contains(EncodedGatewayResponses.INVALID_TOKEN)
+        .doesNotContain("bad signature");
+  }
+
+  @Test
+  void expiredTokenIsNotPenalized() {
+
+    authProperties.setPenaltyDelayInMillis(10000);
+    when(claimsService.getClaims("expired"))
+        .thenReturn(Mono.error(new ExpiredTokenException(null)));
+    final var pending = Mono.delay(Duration.ofSeconds(10), penaltyScheduler).subscribe();
+    final var exchange = exchangeWithToken("expired");
+
+    // the penalty scheduler is full so a penalty would be rejected
+    StepVerifier.create(filter().filter(exchange, CHAIN))
+        .expectComplete()
+        .verify(Duration.ofSeconds(1));
+    assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.UNAUTHORIZED);
+
+    pending.dispose();
+  }
+
+  @Test
+  void penaltyPastMaximumPendingIsRejected() {
+
+    when(claimsService.getClaims("bad"))
+        .thenReturn(Mono.error(new SecurityException("bad signature")));
+    final var pending = Mono.delay(Duration.ofSeconds(10), penaltyScheduler).subscribe();
+
+    StepVerifier.create(filter().filter(exchangeWithToken("bad"), CHAIN))
+        .expectErrorMatches(PenaltyScheduler::isRejection)
+        .verify(Duration.ofSeconds(1));
+
+    pending.dispose();
+  }
+}
@@ -0,0 +1,61 @@
+package net.trajano.swarm.gateway.auth.claims;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.UUID;
+import org.jose4j.jwk.EcJwkGenerator;
+import org.jose4j.jwk.JsonWebKey;
+import org.jose4j.jwk.JsonWebKeySet;
+import org.jose4j.jwk.OctetSequenceJsonWebKey;
+import org.jose4j.jws.JsonWebSignature;
+import org.jose4j.keys.EllipticCurves;
+import org.jose4j.keys.HmacKey;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.NullSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class SigningKeyTest {
+
+  private static JsonWebKeySet buildJwks() throws Exception {
+
+    final var jwk = EcJwkGenerator.generateJwk(EllipticCurves.P256);
+    jwk.setKeyId(UUID.randomUUID().toString());
+    return new JsonWebKeySet(
+        JsonWebKey.Factory.newJwk(jwk.toParams(JsonWebKey.OutputControlLevel.PUBLIC_ONLY)),
+        new OctetSequenceJsonWebKey(new HmacKey(jwk.getPrivateKey().getEncoded())));
+  }
+
+  @ParameterizedTest
+  @NullSource
+  @ValueSource(strings = {"SunEC", "BC"})
+  void signedTokenVerifies(String providerName) throws Exception {
+
+    final var cryptoProvider = new CryptoProvider(providerName);
+    final var signingKey = SigningKey.fromJwks(buildJwks(), cryptoProvider);
+
+    final var jws = new JsonWebSignature();
+    jws.setProviderContext(cryptoProvider.providerContext());
+    jws.setCompactSerialization(signingKey.sign("{\"sub\":\"test\"}"));
+    jws.setKey(signingKey.verificationJwk().getKey());
+
+    assertThat(jws.verifySignature()).isTrue();
+    assertThat(jws.getKeyIdHeaderValue()).isEqualTo(signingKey.kid());
+    assertThat(jws.getPayload()).isEqualTo("{\"sub\":\"test\"}");
+  }
+
+  @ParameterizedTest
+  @NullSource
+  @ValueSource(strings = {"SunEC", "BC"})
+  void refreshTokenOnlyHasKeyId(String providerName) throws Exception {
+
+    final var signingKey = SigningKey.fromJwks(buildJwks(), new CryptoProvider(providerName));
+    final var refreshToken = signingKey.refreshSign("{\"jti\":\"test\"}");
+
+    assertThat(refreshToken).startsWith(signingKey.kid() + ".");
+    final var jws = new JsonWebSignature();
+    jws.setCompactSerialization(
+        signingKey.encodedHeader() + refreshToken.substring(refreshToken.indexOf('.')));
+    jws.setKey(signingKey.verificationJwk().getKey());
+    assertThat(jws.verifySignature()).isTrue();
+  }
+}
@@ -4,6 +4,7 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.*;
 
 import net.trajano.swarm.gateway.SchedulerConfiguration;
+import net.trajano.swarm.gateway.auth.AbuseShield;
 import net.trajano.swarm.gateway.auth.IdentityService;
 import net.trajano.swarm.gateway.auth.IdentityServiceResponse;
 import net.trajano.swarm.gateway.auth.OAuthTokenResponse;
@@ -36,6 +37,8 @@ import reactor.core.publisher.Mono;
     })
 @WebFluxTest(controllers = SimpleAuthController.class)
 class SimpleAuthControllerTest {
+  @MockBean private AbuseShield abuseShield;
+
   @MockBean private ClaimsService claimsService;
 
   @MockBean private IdentityService identityService;
@@ -6,12 +6,16 @@ import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Base64;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.Deflater;
 import net.trajano.swarm.gateway.auth.claims.ZLibStringCompression;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
 
 class ZLibStringCompressionTest {
 
@@ -55,6 +59,56 @@ class ZLibStringCompressionTest {
     assertThat(ZLibStringCompression.decompress(compress, 0)).isEmpty();
   }
 
+  @ParameterizedTest
+  @ValueSource(ints = {Deflater.DEFAULT_COMPRESSION, 0, 1, 6, 9})
+  void compressDecompressLevelsAndDictionary(int level) {
+
+    final var jws = "eyJraWQiOiJhYmMiLCJhbGciOiJFUzI1NiJ9.eyJzdWIiOiJ1c2VyIn0.c2ln";
+    for (final var presetDictionary : new boolean[] {false, true}) {
+      final var compressed = ZLibStringCompression.compress(jws, level, presetDictionary);
+      assertThat(ZLibStringCompression.isCompressed(compressed)).isTrue();
+      assertThat(ZLibStringCompression.decompressIfNeeded(compressed, 4096)).isEqualTo(jws);
+    }
+  }
+
+  @Test
+  void dictionaryCompressesTokensSmaller() {
+
+    final var jws =
+        "eyJraWQiOiI1ZjE5YzM2Yi1hNmM1LTRlODAtOWNkYy0zZDY1Y2E3ZDJmMGMiLCJhbGciOiJFUzI1NiJ9"
+            + ".eyJzdWIiOiJ1c2VyIiwiaXNzIjoiaHR0cDovL2xvY2FsaG9zdCIsImp0aSI6IjEyMyJ9.c2ln";
+    assertThat(ZLibStringCompression.compressToBytes(jws, Deflater.BEST_COMPRESSION, true))
+        .hasSizeLessThan(ZLibStringCompression.compressToBytes(jws).length);
+  }
+
+  @Test
+  void uncompressedTokensPassThrough() {
+
+    final var jws = "eyJraWQiOiJhYmMiLCJhbGciOiJFUzI1NiJ9.eyJzdWIiOiJ1c2VyIn0.c2ln";
+    assertThat(ZLibStringCompression.isCompressed(jws)).isFalse();
+    assertThat(ZLibStringCompression.decompressIfNeeded(jws, 10)).isSameAs(jws);
+  }
+
+  @Test
+  void truncatedCompression() {
+
+    final var compressed = ZLibStringCompression.compressToBytes("FOOZAAFOOZAA");
+    final var truncated = Arrays.copyOf(compressed, compressed.length - 4);
+    assertThatThrownBy(() -> ZLibStringCompression.decompressUtf8(truncated, 300))
+        .isInstanceOf(UncheckedIOException.class);
+  }
+
+  @Test
+  void bombTestWithDictionary() {
+
+    final var compressed =
+        ZLibStringCompression.compressToBytes(" ".repeat(1024 * 1024), 1, true);
+
+    assertThatThrownBy(() -> ZLibStringCompression.decompressUtf8(compressed, 20480))
+        .isInstanceOf(UncheckedIOException.class)
+        .hasMessageContaining("Decompressing past limit 20480 bytes");
+  }
+
   /** Test scenario when there's an attempted compression bomb */
   @Test
   void bombTest() {
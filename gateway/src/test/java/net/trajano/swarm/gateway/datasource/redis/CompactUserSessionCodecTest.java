@@ -0,0 +1,91 @@
+package net.trajano.swarm.gateway.datasource.redis;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.UUID;
+import net.trajano.swarm.gateway.common.AuthProperties;
+import net.trajano.swarm.gateway.redis.UserSession;
+import org.jose4j.jwk.EcJwkGenerator;
+import org.jose4j.jwk.EllipticCurveJsonWebKey;
+import org.jose4j.jwk.JsonWebKey;
+import org.jose4j.jwk.RsaJwkGenerator;
+import org.jose4j.jwt.JwtClaims;
+import org.jose4j.keys.EllipticCurves;
+import org.junit.jupiter.api.Test;
+
+class CompactUserSessionCodecTest {
+
+  private final CompactUserSessionCodec codec = new CompactUserSessionCodec(new AuthProperties());
+
+  private static UserSession userSession(JsonWebKey verificationJwk) {
+
+    final var secretClaims = new JwtClaims();
+    secretClaims.setSubject("user");
+    secretClaims.setClaim("secret", "value");
+    final var now = Instant.ofEpochSecond(Instant.now().getEpochSecond());
+    return UserSession.builder()
+        .jwtId(UUID.randomUUID())
+        .secretClaims(secretClaims)
+        .issuedOn(now)
+        .verificationJwk(verificationJwk)
+        .accessToken("access.token.sig")
+        .refreshToken("kid.refresh.sig")
+        .accessTokenExpiresAt(now.plusSeconds(120))
+        .accessTokenIssuedOn(now)
+        .clientId("client")
+        .ttl(1200L)
+        .build();
+  }
+
+  @Test
+  void roundTripP256() throws Exception {
+
+    final var jwk = EcJwkGenerator.generateJwk(EllipticCurves.P256);
+    jwk.setKeyId("kid");
+    final var userSession = userSession(jwk);
+
+    final var decoded =
+        codec.decode(userSession.getJwtId(), codec.encode(userSession), userSession.getTtl());
+
+    assertThat(decoded.getIssuedOn()).isEqualTo(userSession.getIssuedOn());
+    assertThat(decoded.getAccessTokenExpiresAt()).isEqualTo(userSession.getAccessTokenExpiresAt());
+    assertThat(decoded.getAccessTokenIssuedOn()).isEqualTo(userSession.getAccessTokenIssuedOn());
+    assertThat(decoded.getAccessToken()).isEqualTo(userSession.getAccessToken());
+    assertThat(decoded.getRefreshToken()).isEqualTo(userSession.getRefreshToken());
+    assertThat(decoded.getClientId()).isEqualTo("client");
+    assertThat(decoded.getTtl()).isEqualTo(1200L);
+    assertThat(decoded.getSecretClaims().getClaimsMap())
+        .isEqualTo(userSession.getSecretClaims().getClaimsMap());
+    assertThat(decoded.getVerificationJwk()).isInstanceOf(EllipticCurveJsonWebKey.class);
+    assertThat(decoded.getVerificationJwk().getKeyId()).isEqualTo("kid");
+    assertThat(decoded.getVerificationJwk().getKey()).isEqualTo(jwk.getPublicKey());
+  }
+
+  @Test
+  void roundTripOtherKey() throws Exception {
+
+    final var jwk = RsaJwkGenerator.generateJwk(2048);
+    jwk.setKeyId("rsa");
+    final var userSession = userSession(jwk);
+
+    final var decoded =
+        codec.decode(userSession.getJwtId(), codec.encode(userSession), userSession.getTtl());
+
+    assertThat(decoded.getVerificationJwk().getKeyId()).isEqualTo("rsa");
+    assertThat(decoded.getVerificationJwk().getKey()).isEqualTo(jwk.getPublicKey());
+  }
+
+  @Test
+  void truncated() throws Exception {
+
+    final var jwk = EcJwkGenerator.generateJwk(EllipticCurves.P256);
+    jwk.setKeyId("kid");
+    final var encoded = codec.encode(userSession(jwk));
+
+    assertThatThrownBy(() -> codec.decode(UUID.randomUUID(), Arrays.copyOf(encoded, 40), 1L))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+}
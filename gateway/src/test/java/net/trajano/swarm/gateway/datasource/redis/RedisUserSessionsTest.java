@@ -0,0 +1,71 @@
+package net.trajano.swarm.gateway.datasource.redis;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import net.trajano.swarm.gateway.common.AuthProperties;
+import net.trajano.swarm.gateway.redis.RedisKeyBlocks;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisElementReader;
+import org.springframework.data.redis.serializer.RedisElementWriter;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+class RedisUserSessionsTest {
+
+  private final AuthProperties authProperties = new AuthProperties();
+
+  private final RedisKeyBlocks redisKeyBlocks = new RedisKeyBlocks(authProperties);
+
+  private RedisUserSessions redisUserSessions(List<String> reply) {
+
+    final var redisTemplate =
+        new ReactiveStringRedisTemplate(new LettuceConnectionFactory()) {
+
+          @Override
+          @SuppressWarnings("unchecked")
+          public <T> Flux<T> execute(
+              RedisScript<T> script,
+              List<String> keys,
+              List<?> args,
+              RedisElementWriter<?> argsWriter,
+              RedisElementReader<T> resultReader) {
+
+            return Flux.fromIterable(reply)
+                .map(value -> (T) value.getBytes(StandardCharsets.UTF_8));
+          }
+        };
+    return new RedisUserSessions(
+        authProperties,
+        new CompactUserSessionCodec(authProperties),
+        redisTemplate,
+        redisKeyBlocks,
+        new UserSessionNearCache(authProperties, null, redisKeyBlocks, new SimpleMeterRegistry()),
+        new SimpleMeterRegistry());
+  }
+
+  @Test
+  void missingSession() {
+
+    final var reply = new ArrayList<String>();
+    reply.add("-2");
+    for (var i = 0; i < 8; ++i) {
+      reply.add("");
+    }
+
+    StepVerifier.create(redisUserSessions(reply).findById(UUID.randomUUID().toString()))
+        .verifyComplete();
+  }
+
+  @Test
+  void missingCompactSession() {
+
+    StepVerifier.create(redisUserSessions(List.of("-2", "")).findById(UUID.randomUUID().toString()))
+        .verifyComplete();
+  }
+}
@@ -0,0 +1,91 @@
+package net.trajano.swarm.gateway.datasource.redis;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.trajano.swarm.gateway.common.AuthProperties;
+import net.trajano.swarm.gateway.redis.RedisKeyBlocks;
+import net.trajano.swarm.gateway.web.GatewayResponse;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+class RefreshCoalescerTest {
+
+  private final AuthProperties authProperties = new AuthProperties();
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+  private final RefreshCoalescer refreshCoalescer =
+      new RefreshCoalescer(authProperties, new RedisKeyBlocks(authProperties), null, meterRegistry);
+
+  private final AtomicInteger refreshes = new AtomicInteger();
+
+  private Mono<GatewayResponse> refresh() {
+
+    refreshes.incrementAndGet();
+    return Mono.delay(Duration.ofMillis(100))
+        .map(i -> GatewayResponse.builder().ok(true).build());
+  }
+
+  @Test
+  void concurrentRefreshesShareOne() {
+
+    StepVerifier.create(
+            Mono.zip(
+                refreshCoalescer.provideRefresh("a", this::refresh),
+                refreshCoalescer.provideRefresh("a", this::refresh)))
+        .assertNext(t -> assertThat(t.getT1()).isSameAs(t.getT2()))
+        .verifyComplete();
+
+    assertThat(refreshes).hasValue(1);
+    assertThat(
+            meterRegistry.get("gateway.refresh.coalesced").tag("scope", "local").counter().count())
+        .isEqualTo(1.0);
+  }
+
+  @Test
+  void callerAfterRefreshCompletesGetsItsResult() {
+
+    StepVerifier.create(
+            refreshCoalescer
+                .provideRefresh("a", this::refresh)
+                .flatMap(
+                    first ->
+                        refreshCoalescer
+                            .provideRefresh("a", this::refresh)
+                            .zipWith(Mono.just(first))))
+        .assertNext(t -> assertThat(t.getT1()).isSameAs(t.getT2()))
+        .verifyComplete();
+
+    assertThat(refreshes).hasValue(1);
+  }
+
+  @Test
+  void differentSessionsAreNotShared() {
+
+    StepVerifier.create(
+            Mono.zip(
+                refreshCoalescer.provideRefresh("a", this::refresh),
+                refreshCoalescer.provideRefresh("b", this::refresh)))
+        .expectNextCount(1)
+        .verifyComplete();
+
+    assertThat(refreshes).hasValue(2);
+  }
+
+  @Test
+  void sequentialRefreshesAreNotShared() {
+
+    StepVerifier.create(refreshCoalescer.provideRefresh("a", this::refresh))
+        .expectNextCount(1)
+        .verifyComplete();
+    StepVerifier.create(refreshCoalescer.provideRefresh("a", this::refresh))
+        .expectNextCount(1)
+        .verifyComplete();
+
+    assertThat(refreshes).hasValue(2);
+  }
+}
@@ -0,0 +1,46 @@
+package net.trajano.swarm.gateway.datasource.redis;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.UUID;
+import net.trajano.swarm.gateway.common.AuthProperties;
+import net.trajano.swarm.gateway.redis.RedisKeyBlocks;
+import net.trajano.swarm.gateway.redis.UserSession;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+
+class UserSessionNearCacheTest {
+
+  @Test
+  void startsDisabledWhileRedisIsUnreachable() {
+
+    final var authProperties = new AuthProperties();
+    final var connectionFactory =
+        new LettuceConnectionFactory(new RedisStandaloneConfiguration("localhost", 1));
+    connectionFactory.afterPropertiesSet();
+    final var nearCache =
+        new UserSessionNearCache(
+            authProperties,
+            connectionFactory,
+            new RedisKeyBlocks(authProperties),
+            new SimpleMeterRegistry());
+
+    try {
+      assertThatCode(nearCache::afterPropertiesSet).doesNotThrowAnyException();
+
+      final var jwtId = UUID.randomUUID();
+      final var cacheKey = jwtId.toString();
+      nearCache.putIfNotInvalidated(
+          cacheKey,
+          UserSession.builder().jwtId(jwtId).build(),
+          nearCache.invalidationCount(cacheKey));
+      assertThat(nearCache.getIfPresent(cacheKey)).isNull();
+    } finally {
+      nearCache.destroy();
+      connectionFactory.destroy();
+    }
+  }
+}
@@ -0,0 +1,70 @@
+package net.trajano.swarm.gateway.datasource.redis;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.trajano.swarm.gateway.common.AuthProperties;
+import net.trajano.swarm.gateway.redis.RedisKeyBlocks;
+import org.jose4j.jwt.JwtClaims;
+import org.jose4j.jwt.NumericDate;
+import org.junit.jupiter.api.Test;
+
+class VerifiedTokenCacheTest {
+
+  private final AuthProperties authProperties = new AuthProperties();
+
+  private final VerifiedTokenCache verifiedTokenCache =
+      new VerifiedTokenCache(
+          authProperties, null, new RedisKeyBlocks(authProperties), new SimpleMeterRegistry());
+
+  private static JwtClaims claims(String jwtId, long expiresInSeconds) {
+
+    final var claims = new JwtClaims();
+    claims.setJwtId(jwtId);
+    final var expirationTime = NumericDate.now();
+    expirationTime.addSeconds(expiresInSeconds);
+    claims.setExpirationTime(expirationTime);
+    return claims;
+  }
+
+  private void put(String accessToken, JwtClaims jwtClaims) throws Exception {
+
+    verifiedTokenCache.putIfNotInvalidated(
+        accessToken, jwtClaims, verifiedTokenCache.invalidationCount(jwtClaims.getJwtId()));
+  }
+
+  @Test
+  void cached() throws Exception {
+
+    final var claims = claims("a", 60);
+    put("token", claims);
+    assertThat(verifiedTokenCache.getIfPresent("token")).isSameAs(claims);
+    assertThat(verifiedTokenCache.getIfPresent("other")).isNull();
+  }
+
+  @Test
+  void expired() throws Exception {
+
+    put("token", claims("a", -1));
+    assertThat(verifiedTokenCache.getIfPresent("token")).isNull();
+  }
+
+  @Test
+  void revoked() throws Exception {
+
+    put("token-a", claims("a", 60));
+    put("token-b", claims("b", 60));
+    verifiedTokenCache.revoke("a");
+    assertThat(verifiedTokenCache.getIfPresent("token-a")).isNull();
+    assertThat(verifiedTokenCache.getIfPresent("token-b")).isNotNull();
+  }
+
+  @Test
+  void revokedWhileLookedUp() {
+
+    final var invalidationCount = verifiedTokenCache.invalidationCount("a");
+    verifiedTokenCache.revoke("a");
+    verifiedTokenCache.putIfNotInvalidated("token-a", claims("a", 60), invalidationCount);
+    assertThat(verifiedTokenCache.getIfPresent("token-a")).isNull();
+  }
+}
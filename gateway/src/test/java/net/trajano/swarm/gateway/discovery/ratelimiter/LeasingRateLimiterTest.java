@@ -0,0 +1,158 @@
+package net.trajano.swarm.gateway.discovery.ratelimiter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.ratelimit.RateLimiter;
+import org.springframework.cloud.gateway.filter.ratelimit.RedisRateLimiter;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+class LeasingRateLimiterTest {
+
+  private static final String ROUTE_ID = "route";
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+  /** Tokens left in the bucket, it is not replenished. */
+  private final AtomicLong redisTokens = new AtomicLong(20);
+
+  private final AtomicInteger scriptCalls = new AtomicInteger();
+
+  private final RateLimiterProperties rateLimiterProperties = new RateLimiterProperties();
+
+  private final ReactiveStringRedisTemplate redisTemplate =
+      new ReactiveStringRedisTemplate(new LettuceConnectionFactory()) {
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> Flux<T> execute(RedisScript<T> script, List<String> keys, List<?> args) {
+
+          scriptCalls.incrementAndGet();
+          final var requested = Long.parseLong(args.get(3).toString());
+          final var left = redisTokens.get();
+          if (left < requested) {
+            return Flux.just((T) List.of(0L, left));
+          }
+          return Flux.just((T) List.of(1L, redisTokens.addAndGet(-requested)));
+        }
+      };
+
+  @SuppressWarnings("unchecked")
+  private final RedisScript<List<Long>> script =
+      (RedisScript<List<Long>>) (RedisScript<?>) RedisScript.of("return {1, 1}", List.class);
+
+  private RedisRateLimiter redisRateLimiter;
+
+  private void assertAllowed(RateLimiter<?> rateLimiter, boolean allowed) {
+
+    StepVerifier.create(rateLimiter.isAllowed(ROUTE_ID, "key"))
+        .assertNext(response -> assertThat(response.isAllowed()).isEqualTo(allowed))
+        .verifyComplete();
+  }
+
+  @Test
+  void gatewaysShareTheBucket() {
+
+    final var gateways = new ArrayList<LeasingRateLimiter>();
+    for (var i = 0; i < 4; ++i) {
+      gateways.add(
+          new LeasingRateLimiter(
+              redisRateLimiter, redisTemplate, script, rateLimiterProperties, meterRegistry));
+    }
+
+    // every gateway leases a batch which empties the bucket
+    for (final var gateway : gateways) {
+      assertAllowed(gateway, true);
+    }
+    assertThat(redisTokens).hasValue(0);
+
+    // tokens leased by the other gateways are not available to this one
+    final var first = gateways.get(0);
+    for (var i = 0; i < 4; ++i) {
+      assertAllowed(first, true);
+    }
+    assertAllowed(first, false);
+
+    // the rest of the bucket is spread across the other gateways and never exceeded
+    var allowed = 0;
+    for (var i = 0; i < 40; ++i) {
+      final var response = gateways.get(i % gateways.size()).isAllowed(ROUTE_ID, "key").block();
+      if (response.isAllowed()) {
+        ++allowed;
+      }
+    }
+    assertThat(allowed).isEqualTo(12);
+  }
+
+  @Test
+  void leasesInBatches() {
+
+    final var rateLimiter =
+        new LeasingRateLimiter(
+            redisRateLimiter, redisTemplate, script, rateLimiterProperties, meterRegistry);
+
+    for (var i = 0; i < 20; ++i) {
+      assertAllowed(rateLimiter, true);
+    }
+    assertThat(scriptCalls).hasValue(4);
+
+    // lease is denied then the request is passed through
+    assertAllowed(rateLimiter, false);
+    assertThat(scriptCalls).hasValue(6);
+
+    // passed through without attempting another lease
+    assertAllowed(rateLimiter, false);
+    assertThat(scriptCalls).hasValue(7);
+
+    assertThat(meterRegistry.get("gateway.ratelimiter.local").counter().count()).isEqualTo(16.0);
+  }
+
+  @Test
+  void keepsTokensLeftFromLease() {
+
+    redisRateLimiter.getConfig().get(ROUTE_ID).setRequestedTokens(2);
+    final var rateLimiter =
+        new LeasingRateLimiter(
+            redisRateLimiter, redisTemplate, script, rateLimiterProperties, meterRegistry);
+
+    for (var i = 0; i < 10; ++i) {
+      assertAllowed(rateLimiter, true);
+    }
+    assertThat(redisTokens).hasValue(0);
+    assertAllowed(rateLimiter, false);
+  }
+
+  @Test
+  void passesThroughWhenLeaseIsTooSmall() {
+
+    rateLimiterProperties.setMaximumLeasedTokens(1);
+    final var rateLimiter =
+        new LeasingRateLimiter(
+            redisRateLimiter, redisTemplate, script, rateLimiterProperties, meterRegistry);
+
+    for (var i = 0; i < 3; ++i) {
+      assertAllowed(rateLimiter, true);
+    }
+    assertThat(scriptCalls).hasValue(3);
+    assertThat(redisTokens).hasValue(17);
+  }
+
+  @BeforeEach
+  void setRedisRateLimiter() {
+
+    redisRateLimiter = new RedisRateLimiter(redisTemplate, script, null);
+    redisRateLimiter
+        .getConfig()
+        .put(ROUTE_ID, new RedisRateLimiter.Config().setReplenishRate(10).setBurstCapacity(20));
+  }
+}
@@ -0,0 +1,227 @@
+package net.trajano.swarm.gateway.grpc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.google.protobuf.DescriptorProtos;
+import com.google.protobuf.DescriptorProtos.FieldDescriptorProto;
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.DynamicMessage;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Struct;
+import com.google.protobuf.Timestamp;
+import com.google.protobuf.util.JsonFormat;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+class JsonToProtobufTranscoderTest {
+
+  private static final String SAMPLE_JSON =
+      """
+      {
+        "name": "parent",
+        "count": -3,
+        "big": "18446744073709551615",
+        "tags": ["x", "y"],
+        "child": {"name": "child", "count": "4"},
+        "attrs": {"k": "5", "l": 6},
+        "data": "AQI=",
+        "color": "BLUE",
+        "when": "2020-01-01T00:00:00Z",
+        "displayName": "Parent",
+        "ratio": "NaN"
+      }
+      """;
+
+  private static Descriptors.Descriptor sampleDescriptor;
+
+  private final JsonToProtobufTranscoder transcoder =
+      new JsonToProtobufTranscoder(new GrpcProperties());
+
+  private static FieldDescriptorProto.Builder field(
+      String name, int number, FieldDescriptorProto.Type type) {
+
+    return FieldDescriptorProto.newBuilder()
+        .setName(name)
+        .setNumber(number)
+        .setType(type)
+        .setLabel(FieldDescriptorProto.Label.LABEL_OPTIONAL);
+  }
+
+  @BeforeAll
+  static void buildDescriptor() throws Exception {
+
+    final var proto =
+        DescriptorProtos.FileDescriptorProto.newBuilder()
+            .setName("sample.proto")
+            .setPackage("sample")
+            .setSyntax("proto3")
+            .addDependency(Timestamp.getDescriptor().getFile().getName())
+            .addDependency(Struct.getDescriptor().getFile().getName())
+            .addEnumType(
+                DescriptorProtos.EnumDescriptorProto.newBuilder()
+                    .setName("Color")
+                    .addValue(
+                        DescriptorProtos.EnumValueDescriptorProto.newBuilder()
+                            .setName("RED")
+                            .setNumber(0))
+                    .addValue(
+                        DescriptorProtos.EnumValueDescriptorProto.newBuilder()
+                            .setName("BLUE")
+                            .setNumber(1)))
+            .addMessageType(
+                DescriptorProtos.DescriptorProto.newBuilder()
+                    .setName("Sample")
+                    .addNestedType(
+                        DescriptorProtos.DescriptorProto.newBuilder()
+                            .setName("AttrsEntry")
+                            .setOptions(
+                                DescriptorProtos.MessageOptions.newBuilder().setMapEntry(true))
+                            .addField(field("key", 1, FieldDescriptorProto.Type.TYPE_STRING))
+                            .addField(field("value", 2, FieldDescriptorProto.Type.TYPE_INT64)))
+                    .addField(field("name", 1, FieldDescriptorProto.Type.TYPE_STRING))
+                    .addField(field("count", 2, FieldDescriptorProto.Type.TYPE_INT32))
+                    .addField(field("big", 3, FieldDescriptorProto.Type.TYPE_UINT64))
+                    .addField(
+                        field("tags", 4, FieldDescriptorProto.Type.TYPE_STRING)
+                            .setLabel(FieldDescriptorProto.Label.LABEL_REPEATED))
+                    .addField(
+                        field("child", 5, FieldDescriptorProto.Type.TYPE_MESSAGE)
+                            .setTypeName(".sample.Sample"))
+                    .addField(
+                        field("attrs", 6, FieldDescriptorProto.Type.TYPE_MESSAGE)
+                            .setLabel(FieldDescriptorProto.Label.LABEL_REPEATED)
+                            .setTypeName(".sample.Sample.AttrsEntry"))
+                    .addField(field("data", 7, FieldDescriptorProto.Type.TYPE_BYTES))
+                    .addField(
+                        field("color", 8, FieldDescriptorProto.Type.TYPE_ENUM)
+                            .setTypeName(".sample.Color"))
+                    .addField(
+                        field("when", 9, FieldDescriptorProto.Type.TYPE_MESSAGE)
+                            .setTypeName(".google.protobuf.Timestamp"))
+                    .addField(field("display_name", 10, FieldDescriptorProto.Type.TYPE_STRING))
+                    .addField(field("ratio", 11, FieldDescriptorProto.Type.TYPE_DOUBLE))
+                    .addField(
+                        field("meta", 12, FieldDescriptorProto.Type.TYPE_MESSAGE)
+                            .setTypeName(".google.protobuf.Struct")))
+            .build();
+    sampleDescriptor =
+        Descriptors.FileDescriptor.buildFrom(
+                proto,
+                new Descriptors.FileDescriptor[] {
+                  Timestamp.getDescriptor().getFile(), Struct.getDescriptor().getFile()
+                })
+            .findMessageTypeByName("Sample");
+  }
+
+  private static String nested(String prefix, int depth, String innermost) {
+
+    return prefix.repeat(depth) + innermost + "}".repeat(depth);
+  }
+
+  private void assertBadRequest(String json) {
+
+    final var bufferFactory = DefaultDataBufferFactory.sharedInstance;
+
+    StepVerifier.create(
+            transcoder.provideMessage(
+                Flux.just(bufferFactory.wrap(json.getBytes(StandardCharsets.UTF_8))),
+                sampleDescriptor))
+        .expectErrorSatisfies(
+            e ->
+                assertThat(((ResponseStatusException) e).getStatusCode())
+                    .isEqualTo(HttpStatus.BAD_REQUEST))
+        .verify();
+  }
+
+  @Test
+  void deeplyNestedMessage() throws Exception {
+
+    final var withinLimit =
+        "{" + nested("\"child\":{", JsonToProtobufTranscoder.MAX_DEPTH, "") + "}";
+    assertThat(
+            transcoder.parse(
+                new ByteArrayInputStream(withinLimit.getBytes(StandardCharsets.UTF_8)),
+                sampleDescriptor))
+        .isNotNull();
+
+    assertBadRequest("{" + nested("\"child\":{", 100000, "") + "}");
+  }
+
+  @Test
+  void deeplyNestedStruct() {
+
+    assertBadRequest("{\"meta\":" + nested("{\"a\":", 100000, "1") + "}");
+    assertBadRequest("{\"meta\":{\"a\":" + "[".repeat(100000) + "]".repeat(100000) + "}}");
+  }
+
+  @Test
+  void matchesJsonFormat() throws Exception {
+
+    final var expected = DynamicMessage.newBuilder(sampleDescriptor);
+    JsonFormat.parser().merge(SAMPLE_JSON, expected);
+
+    final var actual =
+        transcoder.parse(
+            new ByteArrayInputStream(SAMPLE_JSON.getBytes(StandardCharsets.UTF_8)),
+            sampleDescriptor);
+
+    assertThat(actual).isEqualTo(expected.build());
+  }
+
+  @Test
+  void outOfRange() {
+
+    assertThatThrownBy(
+            () ->
+                transcoder.parse(
+                    new ByteArrayInputStream(
+                        "{\"count\": 2147483648}".getBytes(StandardCharsets.UTF_8)),
+                    sampleDescriptor))
+        .isInstanceOf(InvalidProtocolBufferException.class);
+  }
+
+  @Test
+  void tooLarge() {
+
+    final var properties = new GrpcProperties();
+    properties.setMaxRequestSizeInBytes(10);
+    final var bufferFactory = DefaultDataBufferFactory.sharedInstance;
+
+    StepVerifier.create(
+            new JsonToProtobufTranscoder(properties)
+                .provideMessage(
+                    Flux.just(
+                        bufferFactory.wrap("{\"name\":".getBytes(StandardCharsets.UTF_8)),
+                        bufferFactory.wrap("\"too long\"}".getBytes(StandardCharsets.UTF_8))),
+                    sampleDescriptor))
+        .expectErrorSatisfies(
+            e ->
+                assertThat(((ResponseStatusException) e).getStatusCode())
+                    .isEqualTo(HttpStatus.PAYLOAD_TOO_LARGE))
+        .verify();
+  }
+
+  @Test
+  void unknownField() {
+
+    final var bufferFactory = DefaultDataBufferFactory.sharedInstance;
+
+    StepVerifier.create(
+            transcoder.provideMessage(
+                Flux.just(bufferFactory.wrap("{\"nope\":1}".getBytes(StandardCharsets.UTF_8))),
+                sampleDescriptor))
+        .expectErrorSatisfies(
+            e ->
+                assertThat(((ResponseStatusException) e).getStatusCode())
+                    .isEqualTo(HttpStatus.BAD_REQUEST))
+        .verify();
+  }
+}
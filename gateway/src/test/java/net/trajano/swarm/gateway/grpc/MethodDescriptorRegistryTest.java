@@ -0,0 +1,116 @@
+package net.trajano.swarm.gateway.grpc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import reactor.test.StepVerifier;
+
+class MethodDescriptorRegistryTest {
+
+  /** Number of calls started, the calls never get a response. */
+  private final AtomicInteger calls = new AtomicInteger();
+
+  private final Channel channel =
+      new Channel() {
+
+        @Override
+        public String authority() {
+
+          return "test";
+        }
+
+        @Override
+        public <Q, R> ClientCall<Q, R> newCall(
+            MethodDescriptor<Q, R> methodDescriptor, CallOptions callOptions) {
+
+          calls.incrementAndGet();
+          return new ClientCall<>() {
+
+            @Override
+            public void cancel(String message, Throwable cause) {
+              // no-op
+            }
+
+            @Override
+            public void halfClose() {
+              // no-op
+            }
+
+            @Override
+            public void request(int numMessages) {
+              // no-op
+            }
+
+            @Override
+            public void sendMessage(Q message) {
+              // no-op
+            }
+
+            @Override
+            public void start(Listener<R> responseListener, Metadata headers) {
+              // no-op
+            }
+          };
+        }
+      };
+
+  private final MethodDescriptorRegistry registry =
+      new MethodDescriptorRegistry(new GrpcProperties(), new SimpleMeterRegistry());
+
+  @Test
+  void cancelledSubscriberDoesNotCancelSharedLookup() {
+
+    final var uri = URI.create("http://echo/echo.Echo/Echo");
+
+    final var cancelled = registry.provideMethodDescriptors("echo", uri, channel).subscribe();
+    final var concurrent =
+        StepVerifier.create(registry.provideMethodDescriptors("echo", uri, channel))
+            .expectSubscription()
+            .expectNoEvent(Duration.ofMillis(100))
+            .thenCancel()
+            .verifyLater();
+    final var callsStarted = calls.get();
+    assertThat(callsStarted).isPositive();
+
+    cancelled.dispose();
+    concurrent.verify(Duration.ofSeconds(1));
+
+    // the lookup is still in the cache so it is not started again
+    StepVerifier.create(registry.provideMethodDescriptors("echo", uri, channel))
+        .expectSubscription()
+        .thenCancel()
+        .verify();
+    assertThat(calls).hasValue(callsStarted);
+  }
+
+  @Test
+  void stuckLookupTimesOutAndIsNotKept() {
+
+    final var grpcProperties = new GrpcProperties();
+    grpcProperties.setMethodDescriptorLookupTimeout(Duration.ofMillis(100));
+    final var timingOutRegistry =
+        new MethodDescriptorRegistry(grpcProperties, new SimpleMeterRegistry());
+    final var uri = URI.create("http://echo/echo.Echo/Echo");
+
+    StepVerifier.create(timingOutRegistry.provideMethodDescriptors("echo", uri, channel))
+        .expectError(TimeoutException.class)
+        .verify(Duration.ofSeconds(1));
+    final var callsStarted = calls.get();
+
+    // the failed lookup was evicted so the next request starts another
+    StepVerifier.create(timingOutRegistry.provideMethodDescriptors("echo", uri, channel))
+        .expectError(TimeoutException.class)
+        .verify(Duration.ofSeconds(1));
+    assertThat(calls.get()).isGreaterThan(callsStarted);
+  }
+}
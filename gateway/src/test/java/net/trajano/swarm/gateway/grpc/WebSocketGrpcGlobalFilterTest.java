@@ -0,0 +1,254 @@
+package net.trajano.swarm.gateway.grpc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_LOADBALANCER_RESPONSE_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_SCHEME_PREFIX_ATTR;
+
+import com.google.protobuf.DescriptorProtos;
+import com.google.protobuf.DescriptorProtos.FieldDescriptorProto;
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.DynamicMessage;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.ServerCalls;
+import io.grpc.stub.StreamObserver;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import org.jose4j.jwt.JwtClaims;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Publisher;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.loadbalancer.DefaultResponse;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.reactive.socket.CloseStatus;
+import org.springframework.web.reactive.socket.WebSocketHandler;
+import org.springframework.web.reactive.socket.WebSocketMessage;
+import org.springframework.web.reactive.socket.WebSocketSession;
+import org.springframework.web.reactive.socket.server.WebSocketService;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+class WebSocketGrpcGlobalFilterTest {
+
+  private static final GatewayFilterChain CHAIN = exchange -> Mono.empty();
+
+  private final Descriptors.MethodDescriptor chatMethod =
+      buildFileDescriptor().findServiceByName("Chat").findMethodByName("chat");
+
+  /** Close status sent to the client. */
+  private final AtomicReference<CloseStatus> closeStatus = new AtomicReference<>();
+
+  /** Set when the server sees the client half-close the call. */
+  private final AtomicBoolean halfClosed = new AtomicBoolean();
+
+  /** Text frames sent to the client. */
+  private final List<String> sent = new CopyOnWriteArrayList<>();
+
+  private ManagedChannel channel;
+
+  private Server server;
+
+  private static FieldDescriptorProto.Builder field(
+      String name, int number, FieldDescriptorProto.Type type) {
+
+    return FieldDescriptorProto.newBuilder()
+        .setName(name)
+        .setNumber(number)
+        .setType(type)
+        .setLabel(FieldDescriptorProto.Label.LABEL_OPTIONAL);
+  }
+
+  private static Descriptors.FileDescriptor buildFileDescriptor() {
+
+    final var proto =
+        DescriptorProtos.FileDescriptorProto.newBuilder()
+            .setName("chat.proto")
+            .setSyntax("proto3")
+            .addMessageType(
+                DescriptorProtos.DescriptorProto.newBuilder()
+                    .setName("ChatMessage")
+                    .addField(field("message", 1, FieldDescriptorProto.Type.TYPE_STRING)))
+            .addService(
+                DescriptorProtos.ServiceDescriptorProto.newBuilder()
+                    .setName("Chat")
+                    .addMethod(
+                        DescriptorProtos.MethodDescriptorProto.newBuilder()
+                            .setName("chat")
+                            .setInputType(".ChatMessage")
+                            .setOutputType(".ChatMessage")
+                            .setClientStreaming(true)
+                            .setServerStreaming(true)))
+            .build();
+    try {
+      return Descriptors.FileDescriptor.buildFrom(proto, new Descriptors.FileDescriptor[0]);
+    } catch (Descriptors.DescriptorValidationException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static WebSocketMessage textFrame(String text) {
+
+    return new WebSocketMessage(
+        WebSocketMessage.Type.TEXT,
+        DefaultDataBufferFactory.sharedInstance.wrap(text.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  private static MockServerWebExchange upgradeExchange() {
+
+    final var exchange =
+        MockServerWebExchange.from(
+            MockServerHttpRequest.get("/Chat/chat").header(HttpHeaders.UPGRADE, "websocket"));
+    exchange.getAttributes().put(GATEWAY_SCHEME_PREFIX_ATTR, "grpc");
+    exchange.getAttributes().put(GATEWAY_REQUEST_URL_ATTR, URI.create("grpc://chat/Chat/chat"));
+    exchange
+        .getAttributes()
+        .put(
+            GATEWAY_LOADBALANCER_RESPONSE_ATTR,
+            new DefaultResponse(
+                new DefaultServiceInstance("chat-1", "chat", "localhost", 50000, false)));
+    exchange.getAttributes().put("jwtClaims", new JwtClaims());
+    return exchange;
+  }
+
+  @AfterEach
+  void shutdownServer() throws InterruptedException {
+
+    channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+    server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+  }
+
+  /** Starts a server that echoes every message and completes when the client half-closes. */
+  @BeforeEach
+  void startServer() throws IOException {
+
+    final var grpcMethodDescriptor = GrpcServerReflection.methodDescriptorFromProtobuf(chatMethod);
+    final var name = InProcessServerBuilder.generateName();
+    server =
+        InProcessServerBuilder.forName(name)
+            .directExecutor()
+            .addService(
+                ServerServiceDefinition.builder("Chat")
+                    .addMethod(
+                        grpcMethodDescriptor,
+                        ServerCalls.asyncBidiStreamingCall(
+                            responseObserver ->
+                                new StreamObserver<DynamicMessage>() {
+
+                                  @Override
+                                  public void onCompleted() {
+
+                                    halfClosed.set(true);
+                                    responseObserver.onCompleted();
+                                  }
+
+                                  @Override
+                                  public void onError(Throwable t) {
+                                    // cancelled by the client
+                                  }
+
+                                  @Override
+                                  public void onNext(DynamicMessage value) {
+
+                                    responseObserver.onNext(value);
+                                  }
+                                }))
+                    .build())
+            .build()
+            .start();
+    channel = InProcessChannelBuilder.forName(name).directExecutor().build();
+  }
+
+  private Mono<Void> filter(Flux<WebSocketMessage> received) {
+
+    final var session = mock(WebSocketSession.class);
+    when(session.bufferFactory()).thenReturn(DefaultDataBufferFactory.sharedInstance);
+    when(session.receive()).thenReturn(received);
+    when(session.send(any()))
+        .thenAnswer(
+            invocation ->
+                Flux.from(invocation.<Publisher<WebSocketMessage>>getArgument(0))
+                    .doOnNext(message -> sent.add(message.getPayloadAsText()))
+                    .then());
+    when(session.close(any()))
+        .thenAnswer(
+            invocation -> {
+              closeStatus.set(invocation.getArgument(0));
+              return Mono.empty();
+            });
+
+    final var webSocketService = mock(WebSocketService.class);
+    when(webSocketService.handleRequest(any(), any()))
+        .thenAnswer(invocation -> invocation.<WebSocketHandler>getArgument(1).handle(session));
+
+    final var channelProvider = mock(ChannelProvider.class);
+    when(channelProvider.obtainFor(any())).thenReturn(channel);
+
+    final var methodDescriptorRegistry = mock(MethodDescriptorRegistry.class);
+    when(methodDescriptorRegistry.provideMethodDescriptors(anyString(), any(), any()))
+        .thenReturn(Mono.just(new GrpcMethodDescriptors(chatMethod)));
+
+    return new WebSocketGrpcGlobalFilter(
+            channelProvider,
+            methodDescriptorRegistry,
+            new JsonToProtobufTranscoder(new GrpcProperties()),
+            new ProtobufToJsonWriter(),
+            webSocketService)
+        .filter(upgradeExchange(), CHAIN);
+  }
+
+  @Test
+  void bidirectionalStream() {
+
+    final var received =
+        Flux.just(textFrame("{\"message\":\"hello\"}"), textFrame("{\"message\":\"world\"}"));
+
+    StepVerifier.create(filter(received)).expectComplete().verify(Duration.ofSeconds(5));
+
+    assertThat(sent).containsExactly("{\"message\":\"hello\"}", "{\"message\":\"world\"}");
+    assertThat(closeStatus.get()).isEqualTo(CloseStatus.NORMAL);
+  }
+
+  @Test
+  void clientCloseHalfClosesCall() {
+
+    StepVerifier.create(filter(Flux.empty())).expectComplete().verify(Duration.ofSeconds(5));
+
+    assertThat(halfClosed).isTrue();
+    assertThat(sent).isEmpty();
+    assertThat(closeStatus.get()).isEqualTo(CloseStatus.NORMAL);
+  }
+
+  @Test
+  void unparseableFrameClosesWithBadData() {
+
+    StepVerifier.create(filter(Flux.just(textFrame("{\"message\":"))))
+        .expectComplete()
+        .verify(Duration.ofSeconds(5));
+
+    assertThat(halfClosed).isFalse();
+    assertThat(sent).isEmpty();
+    assertThat(closeStatus.get().getCode()).isEqualTo(CloseStatus.BAD_DATA.getCode());
+  }
+}
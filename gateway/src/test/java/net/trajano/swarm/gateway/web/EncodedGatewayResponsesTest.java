@@ -0,0 +1,61 @@
+package net.trajano.swarm.gateway.web;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.server.reactive.MockServerHttpResponse;
+import reactor.test.StepVerifier;
+
+class EncodedGatewayResponsesTest {
+
+  private final EncodedGatewayResponses encodedGatewayResponses =
+      new EncodedGatewayResponses(new ObjectMapper());
+
+  @Test
+  void challenge() {
+
+    assertThat(encodedGatewayResponses.challenge("Bearer", "JWT", "invalid_token"))
+        .isEqualTo("Bearer realm=\"JWT\", error=\"invalid_token\"")
+        .isSameAs(encodedGatewayResponses.challenge("Bearer", "JWT", "invalid_token"));
+    assertThat(encodedGatewayResponses.challenge("Basic", "JWT", null))
+        .isEqualTo("Basic realm=\"JWT\"");
+  }
+
+  @Test
+  void unknownError() {
+
+    final var response = new MockServerHttpResponse();
+    assertThatThrownBy(() -> encodedGatewayResponses.writeError(response, "unknown"))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  void writeError() {
+
+    final var response = new MockServerHttpResponse();
+    response.setStatusCode(HttpStatus.UNAUTHORIZED);
+
+    StepVerifier.create(
+            encodedGatewayResponses.writeError(response, EncodedGatewayResponses.INVALID_CLIENT))
+        .verifyComplete();
+
+    assertThat(response.getHeaders().getContentType()).isEqualTo(MediaType.APPLICATION_JSON);
+    StepVerifier.create(response.getBodyAsString())
+        .expectNext("{\"ok\":false,\"error\":\"invalid_client\"}")
+        .verifyComplete();
+  }
+
+  @Test
+  void writeFailure() {
+
+    final var response = new MockServerHttpResponse();
+
+    StepVerifier.create(encodedGatewayResponses.writeError(response, null)).verifyComplete();
+
+    StepVerifier.create(response.getBodyAsString()).expectNext("{\"ok\":false}").verifyComplete();
+  }
+}